@@ -0,0 +1,201 @@
+package group.worldstandard.pudel.bench;
+
+import com.sedmelluq.discord.lavaplayer.container.MediaContainer;
+import com.sedmelluq.discord.lavaplayer.container.MediaContainerDescriptor;
+import com.sedmelluq.discord.lavaplayer.player.AudioPlayer;
+import com.sedmelluq.discord.lavaplayer.player.AudioPlayerManager;
+import com.sedmelluq.discord.lavaplayer.player.DefaultAudioPlayerManager;
+import com.sedmelluq.discord.lavaplayer.source.http.HttpAudioSourceManager;
+import com.sedmelluq.discord.lavaplayer.source.http.HttpAudioTrack;
+import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
+import com.sedmelluq.discord.lavaplayer.track.AudioTrackInfo;
+import group.worldstandard.pudel.api.PluginContext;
+import group.worldstandard.pudel.api.database.PluginRepository;
+import group.worldstandard.pudel.plugin.audio.TrackScheduler;
+import group.worldstandard.pudel.plugin.entity.GuildDailyStat;
+import group.worldstandard.pudel.plugin.entity.HistoryEntry;
+import group.worldstandard.pudel.plugin.entity.ListenerDailyStat;
+import group.worldstandard.pudel.plugin.entity.QueueEntry;
+import group.worldstandard.pudel.plugin.entity.TrackDailyStat;
+import group.worldstandard.pudel.plugin.metrics.MusicMetrics;
+import group.worldstandard.pudel.plugin.node.NodePool;
+import group.worldstandard.pudel.plugin.search.TitleIndex;
+import group.worldstandard.pudel.plugin.stats.ListeningStats;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/**
+ * Shared setup for the music benchmarks: repositories, a player manager that can encode and
+ * decode tracks, and stand-ins for the parts of Pudel and LavaPlayer that would otherwise do I/O.
+ */
+public final class BenchFixtures {
+
+    public static final long GUILD_ID = 100_000_000_000_000_001L;
+    public static final long TRACK_MS = 3 * 60_000 + 30_000;
+
+    /** Discards every task; production runs this work off the playback path, so it is not measured. */
+    public static final ExecutorService DISCARD = new AbstractExecutorService() {
+        @Override public void execute(Runnable command) {}
+        @Override public void shutdown() {}
+        @Override public List<Runnable> shutdownNow() { return List.of(); }
+        @Override public boolean isShutdown() { return false; }
+        @Override public boolean isTerminated() { return false; }
+        @Override public boolean awaitTermination(long timeout, TimeUnit unit) { return true; }
+    };
+
+    public final InMemoryRepository<QueueEntry> queue = new InMemoryRepository<>(QueueEntry.class);
+    public final InMemoryRepository<HistoryEntry> history = new InMemoryRepository<>(HistoryEntry.class);
+    public final DefaultAudioPlayerManager playerManager = new DefaultAudioPlayerManager();
+    public final HttpAudioSourceManager httpSource = new HttpAudioSourceManager();
+    public final MusicMetrics metrics = new MusicMetrics();
+    public final PluginRepository<QueueEntry> queueRepo;
+    public final PluginRepository<HistoryEntry> historyRepo;
+    private final boolean instrumented;
+
+    public BenchFixtures() {
+        this(false);
+    }
+
+    /**
+     * @param instrumented whether repository calls are timed into {@link #metrics}, as in the
+     *                     plugin; the proxy adds its own overhead, so benchmarks leave it off
+     */
+    public BenchFixtures(boolean instrumented) {
+        playerManager.registerSourceManager(httpSource);
+        this.instrumented = instrumented;
+        this.queueRepo = repository("music_queue", queue);
+        this.historyRepo = repository("music_history", history);
+    }
+
+    private <T> PluginRepository<T> repository(String table, InMemoryRepository<T> rows) {
+        return instrumented ? metrics.instrument(table, rows.repository()) : rows.repository();
+    }
+
+    /** Scheduler dependencies without a cipher fallback, Opus cache, guild leases or audio nodes, with background work discarded. */
+    public TrackScheduler.Dependencies dependencies(PluginContext context) {
+        return dependencies(context, DISCARD);
+    }
+
+    public TrackScheduler.Dependencies dependencies(PluginContext context, ExecutorService background) {
+        return dependencies(context, background, null);
+    }
+
+    /** As {@link #dependencies(PluginContext, ExecutorService)}, playing on {@code audioNodes} when not {@code null}. */
+    public TrackScheduler.Dependencies dependencies(PluginContext context, ExecutorService background, NodePool audioNodes) {
+        InMemoryRepository<TrackDailyStat> trackStats = new InMemoryRepository<>(TrackDailyStat.class);
+        InMemoryRepository<ListenerDailyStat> listenerStats = new InMemoryRepository<>(ListenerDailyStat.class);
+        InMemoryRepository<GuildDailyStat> guildStats = new InMemoryRepository<>(GuildDailyStat.class);
+        return new TrackScheduler.Dependencies(context, playerManager, null, null, background,
+                new TitleIndex(historyRepo, background),
+                new ListeningStats(context, repository("music_stats_track_daily", trackStats),
+                        repository("music_stats_listener_daily", listenerStats),
+                        repository("music_stats_guild_daily", guildStats), background),
+                metrics, null, audioNodes, queueRepo, historyRepo);
+    }
+
+    /** An HTTP MP3 track that is only ever encoded and decoded, never played. */
+    public AudioTrack track(int n) {
+        String uri = "http://127.0.0.1/track/" + n + ".mp3";
+        AudioTrackInfo info = new AudioTrackInfo("Benchmark track number " + n + " (extended mix)",
+                "Artist " + (n % 97), TRACK_MS, uri, false, uri);
+        return new HttpAudioTrack(info, new MediaContainerDescriptor(MediaContainer.MP3.probe, null), httpSource);
+    }
+
+    /** Queues {@code size} QUEUE rows straight into the repository, as a recovered queue would be. */
+    public void fillQueue(TrackScheduler scheduler, int size) throws IOException {
+        String blob = scheduler.encodeTrack(track(0));
+        for (int i = 0; i < size; i++) {
+            QueueEntry entry = new QueueEntry();
+            entry.setGuildId(GUILD_ID);
+            entry.setUserId(1_000L + i % 7);
+            entry.setStatus("QUEUE");
+            entry.setTitle("Benchmark track number " + i + " (extended mix)");
+            entry.setTrackBlob(blob);
+            entry.setDurationMs(TRACK_MS);
+            entry.setIsLooped(false);
+            queue.save(entry);
+        }
+        scheduler.invalidateQueue();
+    }
+
+    public void fillHistory(int size) {
+        long now = System.currentTimeMillis() / 1000;
+        for (int i = 0; i < size; i++) {
+            HistoryEntry entry = new HistoryEntry();
+            entry.setGuildId(GUILD_ID);
+            entry.setUserId(1_000L + i % 7);
+            entry.setTrackTitle("Benchmark track number " + i + " (extended mix)");
+            entry.setTrackUrl("http://127.0.0.1/track/" + i + ".mp3");
+            entry.setPlayedAt(now - size + i);
+            history.save(entry);
+        }
+    }
+
+    // ==================== STAND-INS ====================
+
+    /** A context whose logging goes nowhere; any other call fails loudly. */
+    public static PluginContext silentContext() {
+        return context((_, _) -> {});
+    }
+
+    /** A context that passes each log call's level and message to {@code log}; any other call fails loudly. */
+    public static PluginContext context(BiConsumer<String, String> log) {
+        return (PluginContext) Proxy.newProxyInstance(PluginContext.class.getClassLoader(),
+                new Class<?>[]{PluginContext.class}, (proxy, method, args) -> switch (method.getName()) {
+                    case "log" -> {
+                        log.accept(String.valueOf(args[0]), args.length > 1 ? String.valueOf(args[1]) : "");
+                        yield null;
+                    }
+                    case "toString" -> "BenchContext";
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == args[0];
+                    default -> throw new UnsupportedOperationException("PluginContext." + method.getName());
+                });
+    }
+
+    /**
+     * A player that only remembers the track it was asked to start. The real player would hand
+     * the track to a playback thread, which would fetch it and call back into the scheduler.
+     */
+    public static AudioPlayer idlePlayer() {
+        AudioTrack[] playing = new AudioTrack[1];
+        return (AudioPlayer) Proxy.newProxyInstance(AudioPlayer.class.getClassLoader(),
+                new Class<?>[]{AudioPlayer.class}, (proxy, method, args) -> switch (method.getName()) {
+                    case "startTrack" -> {
+                        boolean noInterrupt = (Boolean) args[1];
+                        if (noInterrupt && playing[0] != null) yield false;
+                        playing[0] = (AudioTrack) args[0];
+                        yield true;
+                    }
+                    case "playTrack" -> { playing[0] = (AudioTrack) args[0]; yield null; }
+                    case "stopTrack", "destroy" -> { playing[0] = null; yield null; }
+                    case "getPlayingTrack" -> playing[0];
+                    case "isPaused" -> false;
+                    case "getVolume" -> 100;
+                    case "toString" -> "IdlePlayer";
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == args[0];
+                    default -> method.getReturnType() == boolean.class ? false : null;
+                });
+    }
+
+    /** Delegates to {@code manager} but creates {@link #idlePlayer() idle players}. */
+    public static AudioPlayerManager withIdlePlayers(AudioPlayerManager manager) {
+        return (AudioPlayerManager) Proxy.newProxyInstance(AudioPlayerManager.class.getClassLoader(),
+                new Class<?>[]{AudioPlayerManager.class}, (proxy, method, args) -> {
+                    if (method.getName().equals("createPlayer")) return idlePlayer();
+                    try {
+                        return method.invoke(manager, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                });
+    }
+}
@@ -0,0 +1,277 @@
+package group.worldstandard.pudel.bench;
+
+import group.worldstandard.pudel.api.database.PluginRepository;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Heap-backed stand-in for a Pudel {@link PluginRepository}, so plugin code can be measured
+ * without a database.
+ *
+ * <p>Rows are kept by ID, and also by {@code guild_id} where the entity has one, since every plugin
+ * table indexes that column. A query scans its guild's rows, or the whole table, in ID order;
+ * compare numbers between revisions rather than reading them as database latency. Saved entities
+ * are stored as they are, so a row changed without {@code save} is changed here too. The
+ * repository and its query builders are dynamic proxies, as the plugin only sees the interfaces.
+ */
+public class InMemoryRepository<T> {
+
+    private final Class<T> type;
+    private final Map<String, Field> columns = new HashMap<>();
+    private final Field idField;
+    private final Field guildField;
+    private final NavigableMap<Long, T> rows = new ConcurrentSkipListMap<>();
+    private final Map<Long, NavigableMap<Long, T>> byGuild = new ConcurrentHashMap<>();
+    private final Map<Long, Long> guildOfRow = new ConcurrentHashMap<>();
+    private final AtomicLong nextId = new AtomicLong(1);
+
+    public InMemoryRepository(Class<T> type) {
+        this.type = type;
+        for (Field field : type.getDeclaredFields()) {
+            field.setAccessible(true);
+            columns.put(snakeCase(field.getName()), field);
+        }
+        this.idField = Objects.requireNonNull(columns.get("id"), type.getSimpleName() + " has no id field");
+        this.guildField = columns.get("guild_id");
+    }
+
+    /** The repository as the plugin sees it. */
+    @SuppressWarnings("unchecked")
+    public PluginRepository<T> repository() {
+        return (PluginRepository<T>) Proxy.newProxyInstance(PluginRepository.class.getClassLoader(),
+                new Class<?>[]{PluginRepository.class}, new RepositoryHandler());
+    }
+
+    public int size() { return rows.size(); }
+    public long lastId() { return rows.isEmpty() ? 0 : rows.lastKey(); }
+    public void clear() {
+        rows.clear();
+        byGuild.clear();
+        guildOfRow.clear();
+    }
+
+    public T save(T entity) {
+        Long id = (Long) get(entity, idField);
+        if (id == null) {
+            id = nextId.getAndIncrement();
+            set(entity, idField, id);
+        }
+        rows.put(id, entity);
+        if (guildField != null) {
+            Long guild = (Long) get(entity, guildField);
+            Long previous = guild != null ? guildOfRow.put(id, guild) : guildOfRow.remove(id);
+            if (previous != null && !previous.equals(guild)) unindex(previous, id);
+            if (guild != null) byGuild.computeIfAbsent(guild, _ -> new ConcurrentSkipListMap<>()).put(id, entity);
+        }
+        return entity;
+    }
+
+    public boolean delete(long id) {
+        Long guild = guildOfRow.remove(id);
+        if (guild != null) unindex(guild, id);
+        return rows.remove(id) != null;
+    }
+
+    private void unindex(long guild, long id) {
+        NavigableMap<Long, T> bucket = byGuild.get(guild);
+        if (bucket != null) bucket.remove(id);
+    }
+
+    // ==================== PROXIES ====================
+
+    private final class RepositoryHandler implements InvocationHandler {
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            return switch (method.getName()) {
+                case "query" -> Proxy.newProxyInstance(method.getReturnType().getClassLoader(),
+                        new Class<?>[]{method.getReturnType()}, new QueryHandler());
+                case "save" -> result(method, save(type.cast(args[0])));
+                case "saveAll" -> {
+                    for (Object entity : (Iterable<?>) args[0]) save(type.cast(entity));
+                    yield result(method, args[0]);
+                }
+                case "findById" -> result(method, rows.get(((Number) args[0]).longValue()));
+                case "findBy" -> result(method, new Query().where((String) args[0], args[1]).list());
+                case "findAll" -> result(method, new ArrayList<>(rows.values()));
+                case "deleteById" -> result(method, delete(((Number) args[0]).longValue()) ? 1 : 0);
+                case "deleteBy" -> {
+                    List<T> matching = new Query().where((String) args[0], args[1]).list();
+                    matching.forEach(row -> delete((Long) get(row, idField)));
+                    yield result(method, matching.size());
+                }
+                case "count" -> result(method, rows.size());
+                case "existsById" -> result(method, rows.containsKey(((Number) args[0]).longValue()));
+                case "toString" -> "InMemoryRepository[" + type.getSimpleName() + "]";
+                case "hashCode" -> System.identityHashCode(proxy);
+                case "equals" -> proxy == args[0];
+                default -> throw new UnsupportedOperationException("InMemoryRepository." + method.getName());
+            };
+        }
+    }
+
+    private final class QueryHandler implements InvocationHandler {
+        private final Query query = new Query();
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            switch (method.getName()) {
+                case "where" -> query.where((String) args[0], args[1]);
+                case "orderBy" -> query.orderBy((String) args[0], false);
+                case "orderByDesc" -> query.orderBy((String) args[0], true);
+                case "limit" -> query.limit = ((Number) args[0]).intValue();
+                case "offset" -> query.offset = ((Number) args[0]).intValue();
+                case "list" -> { return query.list(); }
+                case "count" -> { return result(method, query.count()); }
+                case "first", "findFirst" -> {
+                    query.limit = 1;
+                    return result(method, query.list().stream().findFirst().orElse(null));
+                }
+                case "toString" -> { return "InMemoryQuery[" + type.getSimpleName() + "]"; }
+                case "hashCode" -> { return System.identityHashCode(proxy); }
+                case "equals" -> { return proxy == args[0]; }
+                default -> throw new UnsupportedOperationException("InMemoryRepository.query()." + method.getName());
+            }
+            return proxy;
+        }
+    }
+
+    /** Adapts a value to whatever the interface method declares, e.g. an Optional or a long count. */
+    private static Object result(Method method, Object value) {
+        Class<?> returns = method.getReturnType();
+        if (returns == void.class) return null;
+        if (returns == Optional.class) return Optional.ofNullable(value);
+        if (value instanceof Number n) {
+            if (returns == long.class || returns == Long.class) return n.longValue();
+            if (returns == int.class || returns == Integer.class) return n.intValue();
+            if (returns == boolean.class || returns == Boolean.class) return n.longValue() > 0;
+        }
+        if (value instanceof Collection<?> c && (returns == boolean.class || returns == Boolean.class)) return !c.isEmpty();
+        return value;
+    }
+
+    // ==================== QUERIES ====================
+
+    private final class Query {
+        private final List<Map.Entry<Field, Object>> filters = new ArrayList<>();
+        private Long guild;
+        private Comparator<T> order;
+        private boolean descendingIds = false;
+        private int limit = Integer.MAX_VALUE;
+        private int offset = 0;
+
+        Query where(String column, Object value) {
+            Field field = column(column);
+            if (field == guildField && value instanceof Number n) guild = n.longValue();
+            filters.add(Map.entry(field, value));
+            return this;
+        }
+
+        void orderBy(String column, boolean descending) {
+            Field field = column(column);
+            if (field == idField && order == null) {
+                descendingIds = descending;
+                return;
+            }
+            Comparator<T> next = Comparator.<T, Comparable<Object>>comparing(row -> comparable(get(row, field)),
+                    Comparator.nullsFirst(Comparator.naturalOrder()));
+            if (descending) next = next.reversed();
+            order = order == null ? next : order.thenComparing(next);
+        }
+
+        List<T> list() {
+            Collection<T> source = table();
+            List<T> out = new ArrayList<>();
+            if (order == null) {
+                // Already in the requested order, so the scan can stop at the limit
+                int skip = offset;
+                for (T row : source) {
+                    if (!matches(row)) continue;
+                    if (skip > 0) { skip--; continue; }
+                    if (out.size() >= limit) break;
+                    out.add(row);
+                }
+                return out;
+            }
+            for (T row : source) if (matches(row)) out.add(row);
+            out.sort(order);
+            int from = Math.min(offset, out.size());
+            int to = (int) Math.min((long) from + limit, out.size());
+            return new ArrayList<>(out.subList(from, to));
+        }
+
+        long count() {
+            long n = 0;
+            for (T row : table()) if (matches(row)) n++;
+            return n;
+        }
+
+        private Collection<T> table() {
+            NavigableMap<Long, T> table = guild != null ? byGuild.getOrDefault(guild, Collections.emptyNavigableMap()) : rows;
+            return descendingIds ? table.descendingMap().values() : table.values();
+        }
+
+        private boolean matches(T row) {
+            for (Map.Entry<Field, Object> filter : filters) {
+                if (!same(get(row, filter.getKey()), filter.getValue())) return false;
+            }
+            return true;
+        }
+    }
+
+    private Field column(String name) {
+        Field field = columns.get(name);
+        if (field == null) throw new IllegalArgumentException(type.getSimpleName() + " has no column " + name);
+        return field;
+    }
+
+    private static boolean same(Object stored, Object wanted) {
+        if (stored instanceof Number a && wanted instanceof Number b) return a.longValue() == b.longValue();
+        return Objects.equals(stored, wanted);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Comparable<Object> comparable(Object value) {
+        return (Comparable<Object>) value;
+    }
+
+    private static Object get(Object entity, Field field) {
+        try {
+            return field.get(entity);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void set(Object entity, Field field, Object value) {
+        try {
+            field.set(entity, value);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String snakeCase(String name) {
+        StringBuilder sb = new StringBuilder();
+        for (char c : name.toCharArray()) {
+            if (Character.isUpperCase(c)) sb.append('_').append(Character.toLowerCase(c));
+            else sb.append(c);
+        }
+        return sb.toString();
+    }
+}
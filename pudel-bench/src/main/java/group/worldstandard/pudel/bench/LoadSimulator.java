@@ -0,0 +1,395 @@
+package group.worldstandard.pudel.bench;
+
+import com.sedmelluq.discord.lavaplayer.player.AudioLoadResultHandler;
+import com.sedmelluq.discord.lavaplayer.player.AudioPlayer;
+import com.sedmelluq.discord.lavaplayer.player.AudioPlayerManager;
+import com.sedmelluq.discord.lavaplayer.player.DefaultAudioPlayerManager;
+import com.sedmelluq.discord.lavaplayer.player.event.AudioEventAdapter;
+import com.sedmelluq.discord.lavaplayer.source.http.HttpAudioSourceManager;
+import com.sedmelluq.discord.lavaplayer.tools.FriendlyException;
+import com.sedmelluq.discord.lavaplayer.track.AudioPlaylist;
+import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
+import group.worldstandard.pudel.api.PluginContext;
+import group.worldstandard.pudel.plugin.ToneServer;
+import group.worldstandard.pudel.plugin.audio.GuildMusicManager;
+import group.worldstandard.pudel.plugin.audio.TrackScheduler;
+import group.worldstandard.pudel.plugin.entity.SavedPlaylist;
+import group.worldstandard.pudel.plugin.metrics.LatencySampler;
+import group.worldstandard.pudel.plugin.metrics.MusicMetrics;
+import group.worldstandard.pudel.plugin.node.AudioNode;
+import group.worldstandard.pudel.plugin.node.NodePool;
+import group.worldstandard.pudel.plugin.session.MusicSession;
+import group.worldstandard.pudel.plugin.view.MusicViewBuilder;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Headless load test of the music plugin: many synthetic guilds playing real audio at once.
+ *
+ * <p>Each guild gets the plugin's {@link GuildMusicManager} with a real LavaPlayer player. Tracks
+ * are WAV tones loaded over HTTP from a local {@link ToneServer}, and a pool of sender threads
+ * pulls every guild's {@code AudioSendHandler} on a 20 ms cadence, as JDA's audio connections do.
+ * Synthetic users press the Music Box buttons at random: queueing, skipping, pausing, loop,
+ * shuffle and fair queue toggles, queue shuffles and queue/history renders.
+ *
+ * <p>Reports throughput, frames that were due but not ready, late send ticks, GC and allocation
+ * rates, and the latency of every repository operation. Repositories are
+ * {@link InMemoryRepository} stand-ins timed through {@link MusicMetrics}.
+ *
+ * <p>With {@code --nodes}, that many {@link AudioNode}s are started in-process on loopback ports
+ * and every guild plays through them, so the frames JDA would send cross the node protocol.
+ *
+ * <pre>
+ * java -cp pudel-bench/target/benchmarks.jar group.worldstandard.pudel.bench.LoadSimulator --guilds=2000 --seconds=120
+ * </pre>
+ */
+public final class LoadSimulator {
+
+    private static final long FRAME_NANOS = TimeUnit.MILLISECONDS.toNanos(20);
+    private static final long GUILD_BASE = 900_000_000_000_000_000L;
+
+    /** What a synthetic user does, weighted by how often. */
+    private enum Action {
+        QUEUE(35), SKIP(12), QUEUE_VIEW(20), HISTORY_VIEW(8), PAUSE(5), LOOP(5), SHUFFLE(5), FAIR_QUEUE(5), REINDEX(5);
+
+        final int weight;
+
+        Action(int weight) { this.weight = weight; }
+
+        static final int TOTAL = Arrays.stream(values()).mapToInt(a -> a.weight).sum();
+
+        static Action pick() {
+            int roll = ThreadLocalRandom.current().nextInt(TOTAL);
+            for (Action a : values()) {
+                roll -= a.weight;
+                if (roll < 0) return a;
+            }
+            return QUEUE;
+        }
+    }
+
+    /**
+     * @param guilds           synthetic guilds, each with its own player
+     * @param seconds          how long to run
+     * @param actionsPerMinute button presses per guild per minute, on average
+     * @param trackSeconds     length of the generated tracks
+     * @param queueDepth       tracks queued per guild before the run starts
+     * @param senders          threads pulling audio, like JDA's per-connection send loops
+     * @param reportSeconds    interval between progress lines
+     * @param nodes            local audio nodes to play on, or {@code 0} to play in-process
+     */
+    public record Options(int guilds, int seconds, double actionsPerMinute, int trackSeconds,
+                          int queueDepth, int senders, int reportSeconds, int nodes) {
+
+        static Options parse(String[] args) {
+            Map<String, String> values = new HashMap<>();
+            for (String arg : args) {
+                if (!arg.startsWith("--") || !arg.contains("=")) throw new IllegalArgumentException("Expected --name=value: " + arg);
+                values.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+            }
+            return new Options(
+                    Integer.parseInt(values.getOrDefault("guilds", "500")),
+                    Integer.parseInt(values.getOrDefault("seconds", "60")),
+                    Double.parseDouble(values.getOrDefault("actions-per-minute", "4")),
+                    Integer.parseInt(values.getOrDefault("track-seconds", "30")),
+                    Integer.parseInt(values.getOrDefault("queue-depth", "5")),
+                    Integer.parseInt(values.getOrDefault("senders", Integer.toString(Math.max(2, Runtime.getRuntime().availableProcessors() / 2)))),
+                    Integer.parseInt(values.getOrDefault("report-seconds", "10")),
+                    Integer.parseInt(values.getOrDefault("nodes", "0")));
+        }
+    }
+
+    /** One guild's voice connection: pulls a frame per tick and notices frames that were due but missing. */
+    private final class Sink {
+        final GuildMusicManager mgr;
+        AudioTrack streaming;
+
+        Sink(GuildMusicManager mgr) { this.mgr = mgr; }
+
+        void pull() {
+            AudioTrack playing = mgr.player.getPlayingTrack();
+            if (mgr.sendHandler.canProvide()) {
+                ByteBuffer frame = mgr.sendHandler.provide20MsAudio();
+                bytesSent.add(frame.remaining());
+                streaming = playing;
+            } else if (playing != null && playing == streaming && !mgr.player.isPaused()) {
+                framesMissed.increment();
+            } else {
+                streaming = null;
+            }
+        }
+    }
+
+    private final Options options;
+    private final ToneServer tones;
+    private final BenchFixtures fixtures = new BenchFixtures(true);
+    private final ExecutorService background = Executors.newSingleThreadExecutor(Thread.ofPlatform()
+            .name("sim-background").daemon(true).priority(Thread.MIN_PRIORITY).factory());
+    private final ScheduledExecutorService users;
+    private final Map<Long, GuildMusicManager> players = new ConcurrentHashMap<>();
+    private final MusicViewBuilder views;
+    private final List<AudioNode> nodes = new ArrayList<>();
+    private final List<AudioPlayerManager> nodeManagers = new ArrayList<>();
+    private final NodePool audioNodes;
+    private final AtomicLong trackSeq = new AtomicLong();
+    private volatile boolean running = true;
+
+    private final Map<Action, LatencySampler> actionMicros = new EnumMap<>(Action.class);
+    private final Map<Action, LongAdder> actionCounts = new EnumMap<>(Action.class);
+    private final LongAdder tracksStarted = new LongAdder();
+    private final LongAdder framesMissed = new LongAdder();
+    private final LongAdder bytesSent = new LongAdder();
+    private final LongAdder lateTicks = new LongAdder();
+    private final AtomicLong worstLatenessNanos = new AtomicLong();
+    private final LongAdder errors = new LongAdder();
+
+    private LoadSimulator(Options options) throws Exception {
+        this.options = options;
+        this.tones = new ToneServer(options.trackSeconds());
+        this.users = Executors.newScheduledThreadPool(Math.max(2, Runtime.getRuntime().availableProcessors()),
+                Thread.ofPlatform().name("sim-user-", 0).daemon(true).factory());
+        for (Action a : Action.values()) {
+            actionMicros.put(a, new LatencySampler(4096));
+            actionCounts.put(a, new LongAdder());
+        }
+
+        PluginContext context = BenchFixtures.context((level, _) -> {
+            if (level.equals("error") || level.equals("warn")) errors.increment();
+        });
+        this.audioNodes = options.nodes() > 0 ? startNodes(context) : null;
+        TrackScheduler.Dependencies deps = fixtures.dependencies(context, background, audioNodes);
+        for (int i = 0; i < options.guilds(); i++) {
+            long guildId = GUILD_BASE + i;
+            GuildMusicManager mgr = new GuildMusicManager(fixtures.playerManager, guildId, deps);
+            mgr.scheduler.loopMode = 1;
+            mgr.player.addListener(new AudioEventAdapter() {
+                @Override public void onTrackStart(AudioPlayer player, AudioTrack track) { tracksStarted.increment(); }
+            });
+            players.put(guildId, mgr);
+        }
+
+        InMemoryRepository<SavedPlaylist> playlists = new InMemoryRepository<>(SavedPlaylist.class);
+        this.views = new MusicViewBuilder("sim:", "sim-menu:", fixtures.queueRepo, fixtures.historyRepo,
+                playlists.repository(), id -> players.get(id).stateVersion.get(), players::get);
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = Options.parse(args);
+        System.out.printf("Simulating %d guilds for %d s, %.1f actions per guild per minute, %d s tracks, %d senders, %s%n",
+                options.guilds(), options.seconds(), options.actionsPerMinute(), options.trackSeconds(), options.senders(),
+                options.nodes() > 0 ? options.nodes() + " audio nodes" : "in-process playback");
+        new LoadSimulator(options).run();
+    }
+
+    private void run() throws InterruptedException {
+        for (GuildMusicManager mgr : players.values()) {
+            for (int i = 0; i < options.queueDepth(); i++) load(mgr, 1L);
+            scheduleNext(mgr.guildId);
+        }
+
+        long start = System.nanoTime();
+        long end = start + TimeUnit.SECONDS.toNanos(options.seconds());
+        List<Thread> senders = startSenders(end);
+
+        Snapshot first = Snapshot.take(this);
+        Snapshot last = first;
+        for (long t = options.reportSeconds(); t <= options.seconds(); t += options.reportSeconds()) {
+            long wake = start + TimeUnit.SECONDS.toNanos(t);
+            LockSupport.parkNanos(wake - System.nanoTime());
+            Snapshot now = Snapshot.take(this);
+            System.out.println("[%4ds] %s".formatted(t, now.since(last)));
+            last = now;
+        }
+
+        running = false;
+        for (Thread sender : senders) sender.join();
+        users.shutdownNow();
+        report(Snapshot.take(this).since(first));
+
+        players.values().forEach(m -> m.player.destroy());
+        if (audioNodes != null) audioNodes.close();
+        for (AudioNode node : nodes) node.close();
+        nodeManagers.forEach(AudioPlayerManager::shutdown);
+        fixtures.playerManager.shutdown();
+        background.shutdownNow();
+        tones.close();
+    }
+
+    // ==================== AUDIO NODES ====================
+
+    /** Starts the local nodes, each decoding with its own HTTP source, and connects to all of them. */
+    private NodePool startNodes(PluginContext context) throws Exception {
+        List<InetSocketAddress> addresses = new ArrayList<>();
+        for (int i = 0; i < options.nodes(); i++) {
+            DefaultAudioPlayerManager manager = new DefaultAudioPlayerManager();
+            manager.registerSourceManager(new HttpAudioSourceManager());
+            nodeManagers.add(manager);
+            AudioNode node = AudioNode.local(manager, "sim-node-" + i);
+            nodes.add(node);
+            addresses.add(node.getAddress());
+        }
+        NodePool pool = new NodePool(context, addresses, "", users);
+        pool.connectAll();
+        if (pool.getConnected() != options.nodes()) throw new IllegalStateException(pool.describe());
+        return pool;
+    }
+
+    // ==================== AUDIO SINK ====================
+
+    private List<Thread> startSenders(long endNanos) {
+        List<List<Sink>> slices = new ArrayList<>();
+        for (int i = 0; i < options.senders(); i++) slices.add(new ArrayList<>());
+        int n = 0;
+        for (GuildMusicManager mgr : players.values()) slices.get(n++ % slices.size()).add(new Sink(mgr));
+
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < slices.size(); i++) {
+            List<Sink> slice = slices.get(i);
+            threads.add(Thread.ofPlatform().name("sim-sender-" + i).priority(Thread.MAX_PRIORITY)
+                    .start(() -> send(slice, endNanos)));
+        }
+        return threads;
+    }
+
+    /** Pulls every sink once per 20 ms; a tick that starts more than a frame late is counted. */
+    private void send(List<Sink> sinks, long endNanos) {
+        long due = System.nanoTime();
+        while (running && due < endNanos) {
+            long lateness = System.nanoTime() - due;
+            if (lateness > FRAME_NANOS) {
+                lateTicks.increment();
+                worstLatenessNanos.accumulateAndGet(lateness, Math::max);
+                due = System.nanoTime(); // Skip ahead rather than bursting, as a real connection would
+            }
+            for (Sink sink : sinks) sink.pull();
+            due += FRAME_NANOS;
+            LockSupport.parkNanos(due - System.nanoTime());
+        }
+    }
+
+    // ==================== USERS ====================
+
+    private void scheduleNext(long guildId) {
+        if (!running) return;
+        double meanMillis = 60_000 / Math.max(0.01, options.actionsPerMinute());
+        long delay = (long) (-Math.log(1 - ThreadLocalRandom.current().nextDouble()) * meanMillis);
+        try {
+            users.schedule(() -> {
+                act(guildId, Action.pick());
+                scheduleNext(guildId);
+            }, delay, TimeUnit.MILLISECONDS);
+        } catch (RuntimeException _) {
+            // Shutting down
+        }
+    }
+
+    private void act(long guildId, Action action) {
+        GuildMusicManager mgr = players.get(guildId);
+        long userId = 1_000L + ThreadLocalRandom.current().nextInt(8);
+        long start = System.nanoTime();
+        try {
+            switch (action) {
+                case QUEUE -> load(mgr, userId);
+                case SKIP -> mgr.scheduler.nextTrack();
+                case QUEUE_VIEW -> views.buildQueueView(session(guildId, userId));
+                case HISTORY_VIEW -> views.buildHistoryView(session(guildId, userId));
+                case PAUSE -> mgr.player.setPaused(!mgr.player.isPaused());
+                case LOOP -> mgr.scheduler.cycleLoopMode();
+                case SHUFFLE -> mgr.scheduler.toggleShuffle();
+                case FAIR_QUEUE -> mgr.scheduler.toggleFairQueue();
+                case REINDEX -> mgr.scheduler.reindexQueue();
+            }
+            // Every button except the views re-renders subscribers at a new state version
+            if (action != Action.QUEUE_VIEW && action != Action.HISTORY_VIEW) mgr.stateVersion.incrementAndGet();
+        } catch (RuntimeException e) {
+            errors.increment();
+        }
+        actionMicros.get(action).record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+        actionCounts.get(action).increment();
+    }
+
+    private MusicSession session(long guildId, long userId) {
+        MusicSession session = new MusicSession(userId, guildId);
+        session.page = ThreadLocalRandom.current().nextInt(3);
+        return session;
+    }
+
+    private void load(GuildMusicManager mgr, long userId) {
+        fixtures.playerManager.loadItemOrdered(mgr, tones.url(trackSeq.incrementAndGet()),
+                fixtures.metrics.timedLoad(new AudioLoadResultHandler() {
+                    @Override public void trackLoaded(AudioTrack track) { mgr.scheduler.queue(track, userId); }
+                    @Override public void playlistLoaded(AudioPlaylist playlist) { mgr.scheduler.queueAll(playlist.getTracks(), userId); }
+                    @Override public void noMatches() { errors.increment(); }
+                    @Override public void loadFailed(FriendlyException exception) { errors.increment(); }
+                }));
+    }
+
+    // ==================== REPORTING ====================
+
+    private record Snapshot(long atNanos, long actions, long tracks, long framesSent, long framesMissed, long bytes,
+                            long lateTicks, long gcCount, long gcMillis, long allocated, long errors) {
+
+        static Snapshot take(LoadSimulator sim) {
+            long gcCount = 0, gcMillis = 0;
+            for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+                gcCount += Math.max(0, gc.getCollectionCount());
+                gcMillis += Math.max(0, gc.getCollectionTime());
+            }
+            long allocated = ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean threads
+                    && threads.isThreadAllocatedMemoryEnabled() ? threads.getTotalThreadAllocatedBytes() : 0;
+            return new Snapshot(System.nanoTime(), sim.actionCounts.values().stream().mapToLong(LongAdder::sum).sum(),
+                    sim.tracksStarted.sum(), sim.fixtures.metrics.framesSent.sum(), sim.framesMissed.sum(),
+                    sim.bytesSent.sum(), sim.lateTicks.sum(), gcCount, gcMillis, allocated, sim.errors.sum());
+        }
+
+        /** Rates and counts between {@code earlier} and this snapshot. */
+        String since(Snapshot earlier) {
+            double secs = Math.max(1e-3, (atNanos - earlier.atNanos) / 1e9);
+            return "%7.1f actions/s  %6.1f tracks/s  %8.0f frames/s (%.1f KB/s)  %d missed  %d late ticks  %d GCs, %d ms  %.1f MB/s allocated  %d errors"
+                    .formatted((actions - earlier.actions) / secs, (tracks - earlier.tracks) / secs,
+                            (framesSent - earlier.framesSent) / secs, (bytes - earlier.bytes) / secs / 1024,
+                            framesMissed - earlier.framesMissed, lateTicks - earlier.lateTicks,
+                            gcCount - earlier.gcCount, gcMillis - earlier.gcMillis,
+                            (allocated - earlier.allocated) / secs / (1024 * 1024), errors - earlier.errors);
+        }
+    }
+
+    private void report(String totals) {
+        MusicMetrics metrics = fixtures.metrics;
+        System.out.println();
+        System.out.println("Whole run: " + totals);
+        System.out.printf("Worst late tick: %.1f ms; heap in use: %d MB%n", worstLatenessNanos.get() / 1e6,
+                ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed() / (1024 * 1024));
+
+        System.out.println("\nActions (µs):");
+        for (Action a : Action.values()) System.out.println("  " + actionMicros.get(a).describe(a.name(), "µs"));
+        System.out.println("  " + metrics.getNextTrackMicros().describe("nextTrack", "µs"));
+
+        System.out.println("\nTrack loads (ms):");
+        metrics.getLoadLatency().forEach((source, s) -> System.out.println("  " + s.describe(source)));
+        metrics.getLoadFailures().forEach((reason, n) -> System.out.println("  failed, " + reason + ": " + n));
+
+        System.out.println("\nRepository operations (µs):");
+        metrics.getDbOperations().forEach(e -> System.out.println("  " + e.getValue().getMicros().describe(e.getKey(), "µs")));
+
+        if (audioNodes != null) System.out.println("\n" + audioNodes.describe());
+    }
+}
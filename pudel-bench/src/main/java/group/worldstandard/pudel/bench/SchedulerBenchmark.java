@@ -0,0 +1,81 @@
+package group.worldstandard.pudel.bench;
+
+import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
+import group.worldstandard.pudel.plugin.audio.TrackScheduler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link TrackScheduler} operations against a guild whose queue holds {@code queueSize} tracks.
+ *
+ * <p>The queue loops, so {@code nextTrack} keeps finding tracks; once per lap it also pays for
+ * recycling the played rows, as a looping guild does. {@code queue} deletes the row it added so
+ * the queue keeps its size.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SchedulerBenchmark {
+
+    @Param({"10", "1000", "100000"})
+    public int queueSize;
+
+    private BenchFixtures fixtures;
+    private TrackScheduler scheduler;
+    private AudioTrack track;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        fixtures = new BenchFixtures();
+        scheduler = new TrackScheduler(BenchFixtures.idlePlayer(), BenchFixtures.GUILD_ID,
+                fixtures.dependencies(BenchFixtures.silentContext()), new AtomicLong());
+        scheduler.loopMode = 1;
+        fixtures.fillQueue(scheduler, queueSize);
+        track = fixtures.track(1);
+        scheduler.nextTrack();
+    }
+
+    /** History grows by a row per track; drop it so later iterations don't carry earlier ones. */
+    @Setup(Level.Iteration)
+    public void trimHistory() {
+        fixtures.history.clear();
+    }
+
+    @Benchmark
+    public long nextTrack() {
+        scheduler.nextTrack();
+        return fixtures.queue.lastId();
+    }
+
+    @Benchmark
+    public long queue() {
+        scheduler.queue(track, 1_000L);
+        long id = fixtures.queue.lastId();
+        fixtures.queue.delete(id);
+        return id;
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public long reindexQueue() {
+        scheduler.reindexQueue();
+        return fixtures.queue.lastId();
+    }
+}
@@ -0,0 +1,54 @@
+package group.worldstandard.pudel.bench;
+
+import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
+import group.worldstandard.pudel.plugin.audio.TrackScheduler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The base64 track blobs every queue row is stored as. Their cost does not depend on queue size,
+ * but {@code nextTrack} decodes one per track and {@code queue} encodes one per track.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TrackCodecBenchmark {
+
+    private TrackScheduler scheduler;
+    private AudioTrack track;
+    private String blob;
+
+    @Setup
+    public void setUp() throws IOException {
+        BenchFixtures fixtures = new BenchFixtures();
+        scheduler = new TrackScheduler(BenchFixtures.idlePlayer(), BenchFixtures.GUILD_ID,
+                fixtures.dependencies(BenchFixtures.silentContext()), new AtomicLong());
+        track = fixtures.track(1);
+        blob = scheduler.encodeTrack(track);
+    }
+
+    @Benchmark
+    public String encodeTrack() throws IOException {
+        return scheduler.encodeTrack(track);
+    }
+
+    @Benchmark
+    public AudioTrack decodeTrack() throws IOException {
+        return scheduler.decodeTrack(blob);
+    }
+}
@@ -0,0 +1,77 @@
+package group.worldstandard.pudel.bench;
+
+import group.worldstandard.pudel.plugin.audio.GuildMusicManager;
+import group.worldstandard.pudel.plugin.entity.SavedPlaylist;
+import group.worldstandard.pudel.plugin.session.MusicSession;
+import group.worldstandard.pudel.plugin.view.MusicViewBuilder;
+import net.dv8tion.jda.api.components.container.Container;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Queue and history renders of a guild with {@code size} queued tracks and as many history rows,
+ * with a track playing so the queue view computes start times.
+ *
+ * <p>The {@code render} benchmarks bypass the per-version render cache, as the first render after
+ * every queue change does; {@code cachedQueueView} is the cost of a hit.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ViewBenchmark {
+
+    @Param({"10", "1000", "100000"})
+    public int size;
+
+    private MusicViewBuilder uncached;
+    private MusicViewBuilder cached;
+    private MusicSession session;
+
+    @Setup
+    public void setUp() throws IOException {
+        BenchFixtures fixtures = new BenchFixtures();
+        GuildMusicManager mgr = new GuildMusicManager(BenchFixtures.withIdlePlayers(fixtures.playerManager),
+                BenchFixtures.GUILD_ID, fixtures.dependencies(BenchFixtures.silentContext()));
+        // One extra row becomes the playing track
+        fixtures.fillQueue(mgr.scheduler, size + 1);
+        mgr.scheduler.nextTrack();
+        fixtures.fillHistory(size);
+
+        InMemoryRepository<SavedPlaylist> playlists = new InMemoryRepository<>(SavedPlaylist.class);
+        uncached = new MusicViewBuilder("bench:", "bench-menu:", fixtures.queue.repository(),
+                fixtures.history.repository(), playlists.repository(), _ -> -1, _ -> mgr);
+        cached = new MusicViewBuilder("bench:", "bench-menu:", fixtures.queue.repository(),
+                fixtures.history.repository(), playlists.repository(), _ -> 1, _ -> mgr);
+        session = new MusicSession(1_000L, BenchFixtures.GUILD_ID);
+    }
+
+    @Benchmark
+    public Container renderQueueView() {
+        return uncached.buildQueueView(session);
+    }
+
+    @Benchmark
+    public Container renderHistoryView() {
+        return uncached.buildHistoryView(session);
+    }
+
+    @Benchmark
+    public Container cachedQueueView() {
+        return cached.buildQueueView(session);
+    }
+}
@@ -1,147 +0,0 @@
-package group.worldstandard.pudel.plugin;
-
-import org.graalvm.polyglot.Context;
-import org.graalvm.polyglot.Value;
-
-import java.net.URI;
-import java.net.http.HttpClient;
-import java.net.http.HttpRequest;
-import java.net.http.HttpResponse;
-import java.security.SecureRandom;
-import java.util.Base64;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-
-public final class PotokenGenerator {
-
-    private static final HttpClient http = HttpClient.newBuilder()
-            .version(HttpClient.Version.HTTP_2)
-            .build();
-
-    private static final SecureRandom random = new SecureRandom();
-
-    private PotokenGenerator() {}
-
-    public static String[] generate() {
-        try {
-
-            // Step 1: get visitorData
-            String visitorData = fetchVisitorData();
-
-            // Step 2: get player JS
-            String playerUrl = fetchPlayerUrl();
-
-            String playerJs = fetch(playerUrl);
-
-            // Step 3: execute BotGuard inside GraalVM
-            String poToken = executeBotGuard(playerJs, visitorData);
-
-            return new String[]{poToken, visitorData};
-
-        } catch (Exception e) {
-
-            // fallback (temporary safe fallback)
-            return fallback();
-        }
-    }
-
-    private static String fetchVisitorData() throws Exception {
-
-        String html = fetch("https://www.youtube.com");
-
-        Matcher m = Pattern.compile("\"VISITOR_DATA\":\"([^\"]+)\"")
-                .matcher(html);
-
-        if (m.find()) {
-            return m.group(1);
-        }
-
-        return fallbackVisitorData();
-    }
-
-    private static String fetchPlayerUrl() throws Exception {
-
-        String html = fetch("https://www.youtube.com");
-
-        Matcher m = Pattern.compile("\"jsUrl\":\"([^\"]+)\"")
-                .matcher(html);
-
-        if (!m.find())
-            throw new RuntimeException("Player URL not found");
-
-        return "https://www.youtube.com" + m.group(1);
-    }
-
-    private static String executeBotGuard(String js, String visitorData) {
-
-        try (Context ctx = Context.newBuilder("js")
-                .allowAllAccess(true)
-                .build()) {
-
-            ctx.eval("js", js);
-
-            // Try known BotGuard entrypoints
-
-            String script =
-                    "var visitor='" + visitorData + "';" +
-                            "if(typeof BotGuard==='function'){" +
-                            "var bg=new BotGuard();" +
-                            "bg.invoke(visitor);" +
-                            "}" +
-                            "visitor;";
-
-            Value result = ctx.eval("js", script);
-
-            return result.toString();
-
-        } catch (Throwable t) {
-
-            return fallbackPoToken(visitorData);
-        }
-    }
-
-    private static String fetch(String url) throws Exception {
-
-        HttpRequest req = HttpRequest.newBuilder()
-                .uri(URI.create(url))
-                .header("User-Agent", "Mozilla/135.0")
-                .header("Connection", "close")
-                .GET()
-                .build();
-
-        HttpResponse<String> res =
-                http.send(req, HttpResponse.BodyHandlers.ofString());
-
-        return res.body();
-    }
-
-    // Safe fallback (works with most YouTube clients)
-
-    private static String[] fallback() {
-
-        String visitor = fallbackVisitorData();
-        String potoken = fallbackPoToken(visitor);
-
-        return new String[]{potoken, visitor};
-    }
-
-    private static String fallbackVisitorData() {
-
-        byte[] bytes = new byte[16];
-        random.nextBytes(bytes);
-
-        return Base64.getUrlEncoder()
-                .withoutPadding()
-                .encodeToString(bytes);
-    }
-
-    private static String fallbackPoToken(String visitor) {
-
-        byte[] bytes = new byte[32];
-        random.nextBytes(bytes);
-
-        return Base64.getUrlEncoder()
-                .withoutPadding()
-                .encodeToString(bytes);
-    }
-}
\ No newline at end of file
@@ -19,27 +19,58 @@
 package group.worldstandard.pudel.plugin;
 
 import com.sedmelluq.discord.lavaplayer.player.AudioLoadResultHandler;
+import com.sedmelluq.discord.lavaplayer.player.AudioPlayer;
 import com.sedmelluq.discord.lavaplayer.player.AudioPlayerManager;
 import com.sedmelluq.discord.lavaplayer.player.DefaultAudioPlayerManager;
+import com.sedmelluq.discord.lavaplayer.player.event.AudioEventAdapter;
 import com.sedmelluq.discord.lavaplayer.source.AudioSourceManagers;
 import com.sedmelluq.discord.lavaplayer.tools.FriendlyException;
 import com.sedmelluq.discord.lavaplayer.track.AudioPlaylist;
 import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
+import com.sedmelluq.discord.lavaplayer.track.AudioTrackEndReason;
 import dev.lavalink.youtube.YoutubeAudioSourceManager;
 import dev.lavalink.youtube.YoutubeSourceOptions;
-import dev.lavalink.youtube.clients.*;
+import dev.lavalink.youtube.clients.Web;
+import dev.lavalink.youtube.clients.skeleton.Client;
 import group.worldstandard.pudel.api.PluginContext;
 import group.worldstandard.pudel.api.annotation.*;
 import group.worldstandard.pudel.api.database.*;
 import group.worldstandard.pudel.api.event.EventHandler;
-import group.worldstandard.pudel.plugin.audio.AudioPlayerSendHandler;
 import group.worldstandard.pudel.plugin.audio.GuildMusicManager;
+import group.worldstandard.pudel.plugin.audio.HedgedTrackLoader;
+import group.worldstandard.pudel.plugin.audio.PlaylistImporter;
+import group.worldstandard.pudel.plugin.audio.TrackBundle;
 import group.worldstandard.pudel.plugin.audio.TrackScheduler;
+import group.worldstandard.pudel.plugin.cache.OpusSegmentCache;
+import group.worldstandard.pudel.plugin.cache.StreamUrlCache;
+import group.worldstandard.pudel.plugin.cluster.GuildLeases;
+import group.worldstandard.pudel.plugin.config.MusicSettings;
+import group.worldstandard.pudel.plugin.entity.GuildDailyStat;
+import group.worldstandard.pudel.plugin.entity.GuildLease;
 import group.worldstandard.pudel.plugin.entity.HistoryEntry;
+import group.worldstandard.pudel.plugin.entity.ListenerDailyStat;
 import group.worldstandard.pudel.plugin.entity.QueueEntry;
+import group.worldstandard.pudel.plugin.entity.SavedPlaylist;
+import group.worldstandard.pudel.plugin.entity.TrackDailyStat;
+import group.worldstandard.pudel.plugin.history.HistoryRetention;
+import group.worldstandard.pudel.plugin.metrics.LatencySampler;
+import group.worldstandard.pudel.plugin.metrics.MusicMetrics;
+import group.worldstandard.pudel.plugin.metrics.MusicMetricsMBean;
+import group.worldstandard.pudel.plugin.metrics.StartupTimer;
+import group.worldstandard.pudel.plugin.node.NodePool;
+import group.worldstandard.pudel.plugin.search.TitleIndex;
 import group.worldstandard.pudel.plugin.session.MusicSession;
 import group.worldstandard.pudel.plugin.session.MusicSession.View;
+import group.worldstandard.pudel.plugin.session.SessionStore;
+import group.worldstandard.pudel.plugin.session.SessionUpdater;
+import group.worldstandard.pudel.plugin.session.TimerWheel;
+import group.worldstandard.pudel.plugin.stats.ListeningStats;
 import group.worldstandard.pudel.plugin.view.MusicViewBuilder;
+import group.worldstandard.pudel.plugin.youtube.CachingYoutubeAudioSourceManager;
+import group.worldstandard.pudel.plugin.youtube.PlaylistPager;
+import group.worldstandard.pudel.plugin.youtube.PoTokenProvider;
+import group.worldstandard.pudel.plugin.youtube.YoutubeClients;
+import net.dv8tion.jda.api.Permission;
 import net.dv8tion.jda.api.components.container.Container;
 import net.dv8tion.jda.api.components.label.Label;
 import net.dv8tion.jda.api.components.selections.SelectOption;
@@ -50,22 +81,38 @@ import net.dv8tion.jda.api.components.textinput.TextInput;
 import net.dv8tion.jda.api.components.textinput.TextInputStyle;
 import net.dv8tion.jda.api.entities.Guild;
 import net.dv8tion.jda.api.entities.Member;
+import net.dv8tion.jda.api.events.guild.GuildLeaveEvent;
 import net.dv8tion.jda.api.events.guild.voice.GuildVoiceUpdateEvent;
 import net.dv8tion.jda.api.events.interaction.ModalInteractionEvent;
+import net.dv8tion.jda.api.events.interaction.command.CommandAutoCompleteInteractionEvent;
 import net.dv8tion.jda.api.events.interaction.command.SlashCommandInteractionEvent;
 import net.dv8tion.jda.api.events.interaction.component.ButtonInteractionEvent;
 import net.dv8tion.jda.api.events.interaction.component.StringSelectInteractionEvent;
 import net.dv8tion.jda.api.interactions.IntegrationType;
 import net.dv8tion.jda.api.interactions.InteractionContextType;
+import net.dv8tion.jda.api.interactions.callbacks.IReplyCallback;
+import net.dv8tion.jda.api.interactions.commands.Command;
 import net.dv8tion.jda.api.interactions.commands.OptionType;
 import net.dv8tion.jda.api.modals.Modal;
 import net.dv8tion.jda.api.utils.messages.MessageCreateBuilder;
 import net.dv8tion.jda.api.utils.messages.MessageEditBuilder;
+import net.dv8tion.jda.api.utils.messages.MessageEditData;
 
+import javax.management.JMException;
 import java.awt.Color;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
 
 /**
  * Unified Music Plugin for Pudel Discord Bot.
@@ -92,15 +139,52 @@ public class PudelMusicPlugin {
     private static final Color ACCENT_PLAYING = new Color(0x00D4AA);
     private static final Color ACCENT_IDLE = new Color(0x2B2D31);
 
+    /** Ephemeral Music Box messages can only be edited while their interaction token is valid. */
+    private static final long INTERACTION_TOKEN_TTL_MS = TimeUnit.MINUTES.toMillis(15);
+    private static final int STATS_DAYS = 7;
+    /** How long an interaction waits for startup; Discord expects a reply within 3 seconds. */
+    private static final long READY_WAIT_MS = 2_000;
+
     // ==================== STATE ====================
     private PluginContext context;
+    private MusicSettings settings;
     private AudioPlayerManager playerManager;
+    private AudioPlayerManager hedgePlayerManager;
+    private AudioPlayerManager cipherFallbackManager;
+    private HedgedTrackLoader trackLoader;
+    private PlaylistImporter playlistImporter;
+    private PoTokenProvider poTokenProvider;
+    private StreamUrlCache streamUrlCache;
+    private OpusSegmentCache opusCache;
+    private ScheduledExecutorService timer;
+    private ExecutorService backgroundExecutor;
+    private TitleIndex titleIndex;
+    private ListeningStats listeningStats;
+    private HistoryRetention historyRetention;
+    private SessionUpdater sessionUpdater;
+    private TimerWheel<MusicSession> progressWheel;
+    private GuildLeases guildLeases;
+    private ScheduledExecutorService leaseHeartbeat;
+    private NodePool audioNodes;
 
     private PluginRepository<QueueEntry> queueRepo;
     private PluginRepository<HistoryEntry> historyRepo;
+    private PluginRepository<SavedPlaylist> playlistRepo;
+    private PluginRepository<TrackDailyStat> trackStatRepo;
+    private PluginRepository<ListenerDailyStat> listenerStatRepo;
+    private PluginRepository<GuildDailyStat> guildStatRepo;
+    private PluginRepository<GuildLease> leaseRepo;
 
     private final Map<Long, GuildMusicManager> musicManagers = new ConcurrentHashMap<>();
-    private final Map<Long, MusicSession> activeSessions = new ConcurrentHashMap<>();
+    private SessionStore activeSessions;
+    private final LatencySampler openLatency = new LatencySampler(1024);
+    private final MusicMetrics metrics = new MusicMetrics();
+    private MusicMetricsMBean metricsBean;
+    private StartupTimer startupTimer;
+    // Completes once repositories and player managers exist; interactions wait on it
+    private CompletableFuture<Void> ready;
+    private final Map<Long, Set<MusicSession>> guildSubscribers = new ConcurrentHashMap<>();
+    private final Map<Long, SharedView> sharedViews = new ConcurrentHashMap<>();
     private final Map<String, List<AudioTrack>> searchCache = new ConcurrentHashMap<>();
 
     // Runtime prefixed IDs (initialized in onEnable)
@@ -114,30 +198,167 @@ public class PudelMusicPlugin {
 
     @OnEnable
     public void onEnable(PluginContext ctx) {
+        this.startupTimer = new StartupTimer();
         this.context = ctx;
+        this.settings = startupTimer.time("settings", MusicSettings::load);
+        this.timer = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform()
+                .name("pudel-music-timer").daemon(true).factory());
+        this.backgroundExecutor = Executors.newSingleThreadExecutor(Thread.ofPlatform()
+                .name("pudel-music-background").daemon(true).priority(Thread.MIN_PRIORITY).factory());
         PluginDatabaseManager db = ctx.getDatabaseManager();
         String prefix = db.getPrefix();
         this.btnPrefix = prefix + BTN_HANDLER;
         this.modalPrefix = prefix + MODAL_HANDLER;
         this.menuPrefix = prefix + MENU_HANDLER;
-        initializeDatabase(db);
-        initializeLavaPlayer();
-        this.viewBuilder = new MusicViewBuilder(btnPrefix, menuPrefix, queueRepo, historyRepo);
+
+        // Migrations and every player manager are built side by side; the plugin answers as soon as they finish
+        ExecutorService startup = Executors.newVirtualThreadPerTaskExecutor();
+        CompletableFuture<Void> database = CompletableFuture.runAsync(() -> initializeDatabase(db), startup);
+        CompletableFuture<Void> lavaPlayer = initializeLavaPlayer(startup);
+        this.ready = CompletableFuture.allOf(database, lavaPlayer)
+                .thenRun(() -> startupTimer.run("services", this::initializeServices))
+                .whenComplete((_, error) -> {
+                    startup.shutdown();
+                    if (error != null) {
+                        ctx.log("error", "Music Box failed to start: " + error.getMessage());
+                        return;
+                    }
+                    startupTimer.ready();
+                    ctx.log("info", startupTimer.describe());
+                });
+
+        this.sessionUpdater = new SessionUpdater(timer, backgroundExecutor, settings.uiEditIntervalMs);
+        this.activeSessions = new SessionStore(TimeUnit.MINUTES.toMillis(settings.sessionTtlMinutes),
+                settings.sessionMaxCount, this::onSessionEvicted, msg -> ctx.log("warn", msg));
+        timer.scheduleAtFixedRate(activeSessions::sweep, 1, 1, TimeUnit.MINUTES);
+        if (settings.uiProgressUpdates) {
+            this.progressWheel = new TimerWheel<>(timer, 500, 512, this::refreshProgress);
+        }
+        metrics.setGauges(musicManagers::size, () -> musicManagers.values().stream()
+                .filter(m -> m.sendHandler.isConnected()).count());
+        if (settings.metricsJmx) {
+            try {
+                this.metricsBean = new MusicMetricsMBean(metrics);
+                metricsBean.register();
+            } catch (JMException e) {
+                ctx.log("warn", "Music metrics not exported over JMX: " + e.getMessage());
+                this.metricsBean = null;
+            }
+        }
+        startupTimer.mark("onEnable");
         ctx.log("info", "%s initialized (v%s — Components v2)".formatted(ctx.getInfo().getName(), ctx.getInfo().getVersion()));
     }
 
+    /** Everything built on the repositories and player managers; runs once both phases are done. */
+    private void initializeServices() {
+        this.titleIndex = new TitleIndex(historyRepo, backgroundExecutor);
+        timer.scheduleAtFixedRate(titleIndex::evictIdle, 30, 30, TimeUnit.MINUTES);
+        this.listeningStats = new ListeningStats(context, trackStatRepo, listenerStatRepo, guildStatRepo, backgroundExecutor);
+        this.historyRetention = new HistoryRetention(context, historyRepo, queueRepo, timer, backgroundExecutor,
+                guildId -> {
+                    // Another instance's queue is left alone, whether it loops or not
+                    if (!ownsQueue(guildId)) return true;
+                    GuildMusicManager mgr = musicManagers.get(guildId);
+                    return mgr != null && mgr.scheduler.loopMode == 1;
+                },
+                guildId -> {
+                    // Purged rows must not linger in cached queue and history pages
+                    GuildMusicManager mgr = musicManagers.get(guildId);
+                    if (mgr != null) mgr.stateVersion.incrementAndGet();
+                    if (viewBuilder != null) viewBuilder.forget(guildId);
+                },
+                settings.historyRetentionDays, settings.historyMaxRowsPerGuild, settings.historyRetentionBatchSize,
+                settings.historyArchiveEnabled ? Path.of(settings.historyArchiveDirectory) : null);
+        long retentionInterval = Math.max(1, settings.historyRetentionIntervalMinutes);
+        timer.scheduleAtFixedRate(historyRetention::sweep, retentionInterval, retentionInterval, TimeUnit.MINUTES);
+        if (settings.leasesEnabled) {
+            String instanceId = settings.instanceId.isEmpty() ? GuildLeases.defaultInstanceId() : settings.instanceId;
+            this.guildLeases = new GuildLeases(context, leaseRepo, instanceId,
+                    TimeUnit.SECONDS.toMillis(settings.leaseSeconds), this::onLeaseLost);
+            // Own thread, so a slow database or a busy timer can't let leases run out
+            this.leaseHeartbeat = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform()
+                    .name("pudel-music-lease").daemon(true).factory());
+            long heartbeat = guildLeases.getHeartbeatMs();
+            leaseHeartbeat.scheduleAtFixedRate(guildLeases::heartbeat, heartbeat, heartbeat, TimeUnit.MILLISECONDS);
+        }
+        if (settings.isRemotePlayback()) {
+            this.audioNodes = new NodePool(context, NodePool.parse(settings.audioNodes), settings.nodesSecret, timer);
+            audioNodes.start();
+        }
+        this.viewBuilder = new MusicViewBuilder(btnPrefix, menuPrefix, queueRepo, historyRepo, playlistRepo, guildId -> {
+            GuildMusicManager mgr = musicManagers.get(guildId);
+            return mgr != null ? mgr.stateVersion.get() : -1;
+        }, musicManagers::get);
+    }
+
+    /**
+     * Waits up to {@link #READY_WAIT_MS} for startup to finish. When it doesn't, the user is told
+     * to retry and {@code false} is returned.
+     */
+    private boolean awaitReady(IReplyCallback event) {
+        try {
+            ready.get(READY_WAIT_MS, TimeUnit.MILLISECONDS);
+            return true;
+        } catch (TimeoutException _) {
+            event.reply("⏳ Music Box is still starting up, try again in a few seconds!").setEphemeral(true)
+                    .queue(m -> m.deleteOriginal().queueAfter(5, TimeUnit.SECONDS));
+        } catch (ExecutionException _) {
+            event.reply("❌ Music Box failed to start. Please ask a server admin to check the bot logs.").setEphemeral(true)
+                    .queue(m -> m.deleteOriginal().queueAfter(5, TimeUnit.SECONDS));
+        } catch (InterruptedException _) {
+            Thread.currentThread().interrupt();
+        }
+        return false;
+    }
+
     @OnShutdown
     public boolean onShutdown(PluginContext ctx) {
+        // A startup still in progress is let finish, so nothing it creates outlives the plugin
+        try {
+            ready.get(30, TimeUnit.SECONDS);
+        } catch (ExecutionException | TimeoutException _) {
+            // Shut down whatever was created
+        } catch (InterruptedException _) {
+            Thread.currentThread().interrupt();
+        }
         musicManagers.values().forEach(m -> m.player.destroy());
-        playerManager.shutdown();
+        if (audioNodes != null) {
+            ctx.log("info", audioNodes.describe());
+            audioNodes.close();
+        }
+        if (guildLeases != null) {
+            // Handed back rather than left to expire, so another instance can resume these guilds at once
+            leaseHeartbeat.shutdownNow();
+            guildLeases.releaseAll();
+            ctx.log("info", guildLeases.describe());
+        }
+        if (playerManager != null) playerManager.shutdown();
+        if (hedgePlayerManager != null) hedgePlayerManager.shutdown();
+        if (cipherFallbackManager != null) cipherFallbackManager.shutdown();
+        if (poTokenProvider != null) poTokenProvider.close();
+        if (opusCache != null) {
+            ctx.log("info", opusCache.describe());
+            opusCache.close();
+        }
+        if (streamUrlCache != null) ctx.log("info", streamUrlCache.describe());
+        ctx.log("info", sessionUpdater.describe());
+        ctx.log("info", activeSessions.describe());
+        if (historyRetention != null) ctx.log("info", historyRetention.describe());
+        ctx.log("info", startupTimer.describe());
+        ctx.log("info", metrics.describe());
+        if (metricsBean != null) metricsBean.unregister();
+        ctx.log("info", openLatency.describe("Music Box open latency"));
+        if (progressWheel != null) progressWheel.stop();
+        timer.shutdownNow();
+        backgroundExecutor.shutdownNow();
         return true;
     }
 
     // ==================== DATABASE ====================
 
     private void initializeDatabase(PluginDatabaseManager db) {
-        migrationDatabase(db);
-        createRepository(db);
+        startupTimer.run("migrations", () -> migrationDatabase(db));
+        startupTimer.run("repositories", () -> createRepository(db));
     }
 
     private void migrationDatabase(PluginDatabaseManager db){
@@ -163,45 +384,223 @@ public class PudelMusicPlugin {
                     .build();
             db.createTable(historySchema);
         });
+
+        db.migrate(2, _ -> {
+            TableSchema playlistSchema = TableSchema.builder("music_playlist")
+                    .column("guild_id", ColumnType.BIGINT, false, "0")
+                    .column("user_id", ColumnType.BIGINT, false)
+                    .column("name", ColumnType.STRING, 100, false)
+                    .column("track_count", ColumnType.INTEGER, false, "0")
+                    .column("bundle", ColumnType.TEXT, false)
+                    .column("created_at", ColumnType.BIGINT, false)
+                    .index("guild_id")
+                    .index("user_id")
+                    .build();
+            db.createTable(playlistSchema);
+        });
+
+        db.migrate(3, _ -> {
+            TableSchema trackStatSchema = TableSchema.builder("music_stats_track_daily")
+                    .column("guild_id", ColumnType.BIGINT, false)
+                    .column("day", ColumnType.BIGINT, false)
+                    .column("track_key", ColumnType.STRING, 255, false)
+                    .column("track_title", ColumnType.STRING, 255, false)
+                    .column("plays", ColumnType.INTEGER, false, "0")
+                    .index("guild_id")
+                    .index("day")
+                    .build();
+            db.createTable(trackStatSchema);
+
+            TableSchema listenerStatSchema = TableSchema.builder("music_stats_listener_daily")
+                    .column("guild_id", ColumnType.BIGINT, false)
+                    .column("day", ColumnType.BIGINT, false)
+                    .column("user_id", ColumnType.BIGINT, false)
+                    .column("plays", ColumnType.INTEGER, false, "0")
+                    .index("guild_id")
+                    .index("day")
+                    .build();
+            db.createTable(listenerStatSchema);
+        });
+
+        db.migrate(4, m -> m.addColumn("music_queue", "fair_rank", ColumnType.BIGINT, true));
+
+        db.migrate(5, m -> m.addColumn("music_queue", "duration_ms", ColumnType.BIGINT, true));
+
+        db.migrate(6, _ -> {
+            TableSchema leaseSchema = TableSchema.builder("music_guild_lease")
+                    .column("guild_id", ColumnType.BIGINT, false)
+                    .column("owner", ColumnType.STRING, 100, false)
+                    .column("expires_at", ColumnType.BIGINT, false)
+                    .column("heartbeat_at", ColumnType.BIGINT, false)
+                    .index("guild_id")
+                    .build();
+            db.createTable(leaseSchema);
+        });
+
+        db.migrate(7, m -> {
+            TableSchema guildStatSchema = TableSchema.builder("music_stats_guild_daily")
+                    .column("guild_id", ColumnType.BIGINT, false)
+                    .column("day", ColumnType.BIGINT, false)
+                    .column("plays", ColumnType.INTEGER, false, "0")
+                    .uniqueIndex("guild_id", "day")
+                    .build();
+            db.createTable(guildStatSchema);
+
+            ListeningStats.mergeDuplicates(
+                    db.getRepository("music_stats_track_daily", TrackDailyStat.class),
+                    db.getRepository("music_stats_listener_daily", ListenerDailyStat.class),
+                    db.getRepository("music_stats_guild_daily", GuildDailyStat.class));
+            m.createIndex("music_stats_track_daily", true, "guild_id", "day", "track_key");
+            m.createIndex("music_stats_listener_daily", true, "guild_id", "day", "user_id");
+        });
+
+        db.migrate(8, m -> {
+            GuildLeases.dropDuplicates(db.getRepository("music_guild_lease", GuildLease.class));
+            m.dropIndex("music_guild_lease", "guild_id");
+            m.createIndex("music_guild_lease", true, "guild_id");
+        });
+
+        // Rows queued from saved playlists, whose stored encodings may have gone stale
+        db.migrate(9, m -> m.addColumn("music_queue", "from_bundle", ColumnType.BOOLEAN, true));
     }
 
     private void createRepository(PluginDatabaseManager db){
-        this.queueRepo = db.getRepository("music_queue", QueueEntry.class);
-        this.historyRepo = db.getRepository("music_history", HistoryEntry.class);
+        this.queueRepo = metrics.instrument("music_queue", db.getRepository("music_queue", QueueEntry.class));
+        this.historyRepo = metrics.instrument("music_history", db.getRepository("music_history", HistoryEntry.class));
+        this.playlistRepo = metrics.instrument("music_playlist", db.getRepository("music_playlist", SavedPlaylist.class));
+        this.trackStatRepo = metrics.instrument("music_stats_track_daily",
+                db.getRepository("music_stats_track_daily", TrackDailyStat.class));
+        this.listenerStatRepo = metrics.instrument("music_stats_listener_daily",
+                db.getRepository("music_stats_listener_daily", ListenerDailyStat.class));
+        this.guildStatRepo = metrics.instrument("music_stats_guild_daily",
+                db.getRepository("music_stats_guild_daily", GuildDailyStat.class));
+        this.leaseRepo = metrics.instrument("music_guild_lease", db.getRepository("music_guild_lease", GuildLease.class));
     }
 
     // ==================== LAVAPLAYER ====================
 
-    private void initializeLavaPlayer() {
-        this.playerManager = new DefaultAudioPlayerManager();
+    /**
+     * Builds the player managers in parallel on {@code startup}, each with its own YouTube clients.
+     * The returned future completes once all of them, and the Opus cache, are in place.
+     */
+    private CompletableFuture<Void> initializeLavaPlayer(ExecutorService startup) {
+        // poToken/visitorData are shared by every web client instance, so one provider serves all managers
+        CompletableFuture<Void> poToken = CompletableFuture.completedFuture(null);
+        if (settings.poTokenEnabled && !PoTokenProvider.isAvailable()) {
+            context.log("error", "poToken disabled: GraalJS (org.graalvm.polyglot:polyglot and js-community) is not on the classpath");
+        } else if (settings.poTokenEnabled) {
+            this.poTokenProvider = new PoTokenProvider(
+                    context,
+                    settings.poTokenOrigin,
+                    context.getPudel().getUserAgent(),
+                    Duration.ofMinutes(settings.poTokenTtlMinutes),
+                    Duration.ofMinutes(settings.poTokenRefreshAheadMinutes),
+                    // null clears both, so the clients stop sending an expired token
+                    token -> Web.setPoTokenAndVisitorData(token != null ? token.poToken() : null,
+                            token != null ? token.visitorData() : null)
+            );
+            poToken = CompletableFuture.runAsync(() -> startupTimer.run("po token", poTokenProvider::start), startup);
+        }
+
+        if (settings.streamUrlCacheEnabled) {
+            this.streamUrlCache = new StreamUrlCache(settings.streamUrlCacheSize);
+        }
+        CompletableFuture<Void> opus = CompletableFuture.completedFuture(null);
+        if (settings.opusCacheEnabled && settings.isRemotePlayback()) {
+            // Cached tracks are played from local files, which audio nodes cannot reach
+            context.log("info", "Opus cache disabled: playback runs on audio nodes");
+        } else if (settings.opusCacheEnabled) {
+            opus = CompletableFuture.runAsync(() -> startupTimer.run("opus cache", () -> {
+                try {
+                    this.opusCache = new OpusSegmentCache(
+                            Path.of(settings.opusCacheDirectory),
+                            settings.opusCacheMaxBytes,
+                            TimeUnit.SECONDS.toMillis(settings.opusCacheMaxTrackSeconds),
+                            settings.opusCacheRecordingBytes,
+                            msg -> context.log("warn", msg)
+                    );
+                    context.log("info", opusCache.describe());
+                } catch (IOException e) {
+                    context.log("error", "Opus cache disabled: " + e.getMessage());
+                }
+            }), startup);
+        }
+
+        boolean localCipher = settings.isLocalCipher();
+        CompletableFuture<AudioPlayerManager> main = buildPlayerManager(startup, "player manager",
+                YoutubeClients::create, !localCipher, true);
+
+        // Hedge attempts start on the next client so a stalled first client is not raced against itself
+        CompletableFuture<AudioPlayerManager> hedge = buildPlayerManager(startup, "hedge manager", () -> {
+            List<Client> rotated = YoutubeClients.create();
+            Collections.rotate(rotated, -1);
+            return rotated;
+        }, !localCipher, settings.hedgeEnabled);
+
+        // Tracks whose cipher cannot be solved locally get one retry through the remote service;
+        // audio nodes decode, so they retry on their own
+        CompletableFuture<AudioPlayerManager> cipherFallback = buildPlayerManager(startup, "cipher fallback manager",
+                YoutubeClients::create, true,
+                localCipher && settings.cipherRemoteFallback && !settings.isRemotePlayback());
+
+        return CompletableFuture.allOf(poToken, opus, main, hedge, cipherFallback).thenRun(() -> {
+            this.playerManager = main.join();
+            this.hedgePlayerManager = hedge.join();
+            this.cipherFallbackManager = cipherFallback.join();
+            this.trackLoader = new HedgedTrackLoader(playerManager, hedgePlayerManager, timer,
+                    settings.hedgePercentile, settings.hedgeMinDelayMs, settings.hedgeInitialDelayMs);
+            if (settings.playlistStreaming) {
+                // Pages are built on the main manager's source, so they play like any other load
+                this.playlistImporter = new PlaylistImporter(playerManager,
+                        new PlaylistPager(playerManager.source(YoutubeAudioSourceManager.class)), settings.playlistChunkSize);
+            }
+        });
+    }
+
+    /**
+     * Creates a player manager, clients included, on {@code startup} when {@code enabled}, or
+     * completes with {@code null}.
+     */
+    private CompletableFuture<AudioPlayerManager> buildPlayerManager(ExecutorService startup, String phase,
+                                                                     Supplier<List<Client>> clients,
+                                                                     boolean remoteCipher, boolean enabled) {
+        if (!enabled) return CompletableFuture.completedFuture(null);
+        return CompletableFuture.supplyAsync(
+                () -> startupTimer.time(phase, () -> createPlayerManager(clients.get(), remoteCipher)), startup);
+    }
+
+    /**
+     * Builds a player manager with all remote sources.
+     *
+     * <p>Without a remote cipher, the YouTube source solves signature and n-parameter ciphers
+     * in-process and caches the extracted functions per player script version.
+     */
+    private AudioPlayerManager createPlayerManager(List<Client> clients, boolean remoteCipher) {
+        AudioPlayerManager manager = new DefaultAudioPlayerManager();
 
         YoutubeSourceOptions ytk = new YoutubeSourceOptions()
                 .setAllowSearch(true)
                 .setAllowDirectPlaylistIds(true)
-                .setAllowDirectVideoIds(true)
-                .setRemoteCipher("https://cipher.kikkia.dev/", "", context.getPudel().getUserAgent());
-
-        YoutubeAudioSourceManager ytSourceManager = new YoutubeAudioSourceManager(
-                ytk,
-                new MusicWithThumbnail(),
-                new WebWithThumbnail(),
-                new MWebWithThumbnail(),
-                new WebEmbeddedWithThumbnail(),
-                new AndroidMusicWithThumbnail(),
-                new AndroidVrWithThumbnail(),
-                new IosWithThumbnail(),
-                new Tv(),
-                new TvHtml5SimplyWithThumbnail()
-        );
+                .setAllowDirectVideoIds(true);
+        if (remoteCipher) {
+            ytk.setRemoteCipher(settings.cipherRemoteUrl, settings.cipherRemotePassword, context.getPudel().getUserAgent());
+        }
+
+        // All managers share one stream URL cache so a URL learned by any of them serves replays
+        Client[] clientArray = clients.toArray(Client[]::new);
+        YoutubeAudioSourceManager ytSourceManager = streamUrlCache != null
+                ? new CachingYoutubeAudioSourceManager(ytk, streamUrlCache, clientArray)
+                : new YoutubeAudioSourceManager(ytk, clientArray);
 
         AudioSourceManagers.registerRemoteSources(
-                this.playerManager,
+                manager,
                 com.sedmelluq.discord.lavaplayer.source.youtube.YoutubeAudioSourceManager.class
         );
 
         /*String oauth2Api = "";
         ytSourceManager.useOauth2(oauth2Api, !oauth2Api.isEmpty());*/
-        this.playerManager.registerSourceManager(ytSourceManager);
+        manager.registerSourceManager(ytSourceManager);
+        return manager;
     }
 
     // ==================== SLASH COMMAND ====================
@@ -214,7 +613,8 @@ public class PudelMusicPlugin {
                     @CommandOption(
                             name = "search",
                             description = "Search & queue a song directly (URL or search query, auto source)",
-                            type = OptionType.STRING
+                            type = OptionType.STRING,
+                            autoComplete = true
                     )
             },
             integrationTo = {IntegrationType.GUILD_INSTALL},
@@ -229,30 +629,35 @@ public class PudelMusicPlugin {
                     .queue(m -> m.deleteOriginal().queueAfter(5, TimeUnit.SECONDS));
             return;
         }
+        if (!awaitReady(event)) return;
+        if (guildLeases != null && !guildLeases.acquire(guild.getIdLong())) {
+            event.reply("🔒 Music in this server is being played by another Pudel instance, try again in a moment!").setEphemeral(true)
+                    .queue(m -> m.deleteOriginal().queueAfter(5, TimeUnit.SECONDS));
+            return;
+        }
 
+        long openedAt = System.nanoTime();
         long userId = event.getUser().getIdLong();
 
+        MusicSession session = new MusicSession(userId, guild.getIdLong());
+
         // Clean old session
-        MusicSession old = activeSessions.get(userId);
+        MusicSession old = activeSessions.put(session);
         if (old != null) {
+            unsubscribe(old);
             old.cleanupTemp();
-            if (old.message != null) {
-                try {
-                    old.message.delete().queue();
-                } catch (IllegalStateException _) {
-                    context.log("warn", "message_id '".concat(old.message.getId()).concat("' may long gone. Skip delete."));
-                }
-            }
+            old.deleteMessage();
         }
 
-        MusicSession session = new MusicSession(userId, guild.getIdLong());
-        activeSessions.put(userId, session);
+        guildSubscribers.computeIfAbsent(guild.getIdLong(), _ -> ConcurrentHashMap.newKeySet()).add(session);
+        if (progressWheel != null) progressWheel.schedule(session, settings.uiProgressIntervalMs);
 
         GuildMusicManager mgr = getGuildAudioPlayer(guild);
 
         // Resume from stale queue if nothing is playing
         if (mgr.player.getPlayingTrack() == null) {
             recoverStaleQueue(guild.getIdLong());
+            mgr.stateVersion.incrementAndGet();
 
             boolean hasQueue = !queueRepo.query()
                     .where("guild_id", guild.getIdLong())
@@ -283,7 +688,75 @@ public class PudelMusicPlugin {
                         .useComponentsV2(true)
                         .setComponents(viewBuilder.buildMainView(mgr, session))
                         .build()
-        ).setEphemeral(true).queue(hook -> hook.retrieveOriginal().queue(msg -> session.message = msg));
+        ).setEphemeral(true).queue(hook -> {
+            session.hook = hook;
+            openLatency.record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - openedAt));
+        });
+    }
+
+    /**
+     * Operator view of the plugin's metrics, for members who can manage the server. The same
+     * numbers are exported over JMX.
+     */
+    @SlashCommand(name = "music-stats",
+            description = "Show Music Box playback, loading and database metrics",
+            nsfw = false,
+            global = false,
+            integrationTo = {IntegrationType.GUILD_INSTALL},
+            integrationContext = {InteractionContextType.GUILD}
+    )
+    public void onMusicStats(SlashCommandInteractionEvent event) {
+        Member member = event.getMember();
+        if (event.getGuild() == null || member == null || !member.hasPermission(Permission.MANAGE_SERVER)) {
+            event.reply("❌ You need the Manage Server permission to view music stats!").setEphemeral(true)
+                    .queue(m -> m.deleteOriginal().queueAfter(5, TimeUnit.SECONDS));
+            return;
+        }
+        if (!awaitReady(event)) return;
+
+        List<String> summaries = new ArrayList<>(List.of(
+                startupTimer.describe(),
+                openLatency.describe("Music Box open latency"),
+                sessionUpdater.describe(),
+                activeSessions.describe(),
+                historyRetention.describe()));
+        if (opusCache != null) summaries.add(opusCache.describe());
+        if (streamUrlCache != null) summaries.add(streamUrlCache.describe());
+        if (guildLeases != null) summaries.add(guildLeases.describe());
+        if (audioNodes != null) summaries.add(audioNodes.describe());
+        if (trackLoader.isHedging()) {
+            summaries.add("Hedged loads: %d fired, %d won".formatted(trackLoader.getHedgesFired(), trackLoader.getHedgesWon()));
+        }
+
+        event.reply(
+                new MessageCreateBuilder()
+                        .useComponentsV2(true)
+                        .setComponents(viewBuilder.buildMetricsView(metrics, summaries))
+                        .build()
+        ).setEphemeral(true).queue();
+    }
+
+    // ==================== AUTOCOMPLETE ====================
+
+    /**
+     * Suggests titles from the guild's play history and popular searches. Answered entirely from
+     * {@link TitleIndex}, so each keystroke costs no network call or database query.
+     */
+    @EventHandler
+    public void onMusicAutocomplete(CommandAutoCompleteInteractionEvent event) {
+        if (!"music".equals(event.getName()) || !"search".equals(event.getFocusedOption().getName())) return;
+        Guild guild = event.getGuild();
+        // Suggestions are best-effort, so autocomplete never waits for startup
+        if (guild == null || !ready.isDone() || ready.isCompletedExceptionally()) {
+            event.replyChoices(List.of()).queue();
+            return;
+        }
+
+        List<Command.Choice> choices = titleIndex.suggest(guild.getIdLong(), event.getFocusedOption().getValue())
+                .stream()
+                .map(s -> new Command.Choice(s.name(), s.value()))
+                .toList();
+        event.replyChoices(choices).queue();
     }
 
     // ==================== DIRECT SEARCH ====================
@@ -308,17 +781,19 @@ public class PudelMusicPlugin {
                         ).withAccentColor(ACCENT_PLAYING))
                         .build()
         ).setEphemeral(true).queue(hook -> {
-            hook.retrieveOriginal().queue(msg -> session.message = msg);
+            session.hook = hook;
 
-            playerManager.loadItemOrdered(mgr, searchPrefix + query, new AudioLoadResultHandler() {
+            AudioLoadResultHandler handler = new AudioLoadResultHandler() {
                 @Override public void trackLoaded(AudioTrack track) {
                     mgr.scheduler.queue(track, userId);
                     session.lastAction = "🎵 Queued: " + truncate(track.getInfo().title, 40);
                     updateSessionMessage(session, mgr);
+                    broadcast(mgr, session);
                 }
 
                 @Override public void playlistLoaded(AudioPlaylist playlist) {
                     if (playlist.isSearchResult()) {
+                        titleIndex.recordSearch(guild.getIdLong(), query);
                         List<AudioTrack> tracks = playlist.getTracks()
                                 .subList(0, Math.min(5, playlist.getTracks().size()));
                         String searchId = UUID.randomUUID().toString();
@@ -331,8 +806,8 @@ public class PudelMusicPlugin {
                                         .setComponents(viewBuilder.buildSearchView(session, tracks, searchId))
                                         .build()
                         ).setEphemeral(true).queue(tempMsg -> {
-                            session.tempMessage = tempMsg;
                             session.tempHook = hook;
+                            session.tempMessageId = tempMsg.getIdLong();
                         });
                         updateSessionMessage(session, mgr);
                     } else {
@@ -341,23 +816,52 @@ public class PudelMusicPlugin {
                         }
                         session.lastAction = "📋 Queued playlist: " + truncate(playlist.getName(), 35) + " (" + playlist.getTracks().size() + " tracks)";
                         updateSessionMessage(session, mgr);
+                        broadcast(mgr, session);
                     }
                 }
 
                 @Override public void noMatches() {
-                    if (session.message != null) {
-                        session.message.editMessage(buildErrorView("# ❌ No Results",
+                    if (session.hasMessage()) {
+                        session.editMessage(buildErrorView("# ❌ No Results",
                                 "_No matches found for_ `" + query + "`").build()).queue();
                     }
                 }
 
                 @Override public void loadFailed(FriendlyException exception) {
-                    if (session.message != null) {
-                        session.message.editMessage(buildErrorView("# ❌ Load Failed",
+                    if (session.hasMessage()) {
+                        session.editMessage(buildErrorView("# ❌ Load Failed",
                                 "_" + exception.getMessage() + "_").build()).queue();
                     }
                 }
-            });
+            };
+            loadOrImport(session, mgr, searchPrefix + query, userId, handler);
+        });
+    }
+
+    /**
+     * Loads an identifier, routing YouTube playlist URLs through the streaming importer so the
+     * first track plays while later pages are still being resolved. Failures of either path are
+     * reported through {@code handler}.
+     */
+    private void loadOrImport(MusicSession session, GuildMusicManager mgr, String identifier,
+                              long userId, AudioLoadResultHandler handler) {
+        if (playlistImporter == null || !PlaylistImporter.isStreamable(identifier)) {
+            trackLoader.load(mgr, identifier, metrics.timedLoad(handler));
+            return;
+        }
+
+        playlistImporter.importPlaylist(mgr, identifier, userId, new PlaylistImporter.Listener() {
+            @Override public void onProgress(PlaylistImporter.Progress progress) {
+                session.lastAction = progress.complete()
+                        ? "📋 Queued playlist: " + truncate(progress.playlistName(), 35) + " (" + progress.queued() + " tracks)"
+                        : "📥 Importing playlist: " + truncate(progress.playlistName(), 35);
+                session.cleanupTemp();
+                updateSessionMessage(session, mgr);
+                broadcast(mgr, session);
+            }
+
+            @Override public void onNoMatches() { handler.noMatches(); }
+            @Override public void onFailed(FriendlyException exception) { handler.loadFailed(exception); }
         });
     }
 
@@ -381,26 +885,23 @@ public class PudelMusicPlugin {
         String id = event.getComponentId().substring(btnPrefix.length());
 
         // Check if this button interaction is from a temp popup message
-        boolean isFromTemp = session.tempMessage != null
-                && event.getMessage().getIdLong() == session.tempMessage.getIdLong();
+        boolean isFromTemp = session.isTempMessage(event.getMessage());
 
         if (isFromTemp) {
             switch (id) {
                 case "back" -> {
                     event.deferEdit().queue(hook -> hook.deleteOriginal().queue(null, _ -> {}));
-                    session.tempMessage = null;
-                    session.tempHook = null;
+                    session.detachTemp();
                     session.view = View.MAIN;
                     return;
                 }
                 case "queueview" -> {
                     event.deferEdit().queue(hook -> hook.deleteOriginal().queue(null, _ -> {}));
-                    session.tempMessage = null;
-                    session.tempHook = null;
+                    session.detachTemp();
                     session.view = View.QUEUE;
                     session.page = 0;
-                    if (session.message != null) {
-                        session.message.editMessage(
+                    if (session.hasMessage()) {
+                        session.editMessage(
                                 new MessageEditBuilder().useComponentsV2(true)
                                         .setComponents(viewBuilder.buildQueueView(session)).build()
                         ).queue();
@@ -418,6 +919,7 @@ public class PudelMusicPlugin {
                 mgr.player.setPaused(nowPaused);
                 session.lastAction = nowPaused ? "⏸ Paused playback" : "▶ Resumed playback";
                 editToMainView(event, mgr, session);
+                broadcast(mgr, session);
             }
             case "skip" -> {
                 AudioTrack skipped = mgr.player.getPlayingTrack();
@@ -426,6 +928,7 @@ public class PudelMusicPlugin {
                         ? "⏭ Skipped: " + truncate(skipped.getInfo().title, 40)
                         : "⏭ Skipped";
                 editToMainView(event, mgr, session);
+                broadcast(mgr, session);
             }
             case "loop" -> {
                 mgr.scheduler.cycleLoopMode();
@@ -435,25 +938,42 @@ public class PudelMusicPlugin {
                     default -> "➡ Loop: Off";
                 };
                 editToMainView(event, mgr, session);
+                broadcast(mgr, session);
             }
             case "shuffle" -> {
                 mgr.scheduler.toggleShuffle();
                 session.lastAction = mgr.scheduler.shuffle ? "🔀 Shuffle: On" : "➡ Shuffle: Off";
                 editToMainView(event, mgr, session);
+                broadcast(mgr, session);
+            }
+            case "autoplay" -> {
+                mgr.scheduler.toggleAutoplay();
+                session.lastAction = mgr.scheduler.autoplay ? "📻 Autoplay: On" : "➡ Autoplay: Off";
+                editToMainView(event, mgr, session);
+                broadcast(mgr, session);
             }
 
             // Navigation
             case "queuesong" -> showQueueSongModal(event);
             case "queueview" -> { session.view = View.QUEUE; session.page = 0; editToQueueView(event, session); }
             case "history" -> { session.view = View.HISTORY; session.page = 0; editToHistoryView(event, session); }
+            case "playlists" -> { session.view = View.PLAYLISTS; editToPlaylistView(event, session); }
+            case "stats" -> { session.view = View.STATS; editToStatsView(event, session); }
+            case "saveplaylist" -> showSavePlaylistModal(event);
             case "back" -> { session.view = View.MAIN; session.page = 0; session.lastAction = "🔙 Back to player"; editToMainView(event, mgr, session); }
 
             // Queue View Controls
             case "qprev" -> { session.page = Math.max(0, session.page - 1); editToQueueView(event, session); }
             case "qnext" -> { session.page++; editToQueueView(event, session); }
             case "remove" -> showRemoveMenu(event, session);
-            case "reindex" -> { reindexQueue(session); session.lastAction = "🔀 Queue shuffled"; editToQueueView(event, session); }
-            case "clearqueue" -> { clearGuildQueue(session.guildId); session.page = 0; session.lastAction = "🧹 Queue cleared"; editToQueueView(event, session); }
+            case "fairqueue" -> {
+                mgr.scheduler.toggleFairQueue();
+                session.lastAction = mgr.scheduler.fairQueue ? "⚖ Fair Queue: On" : "➡ Fair Queue: Off";
+                broadcast(mgr, session);
+                editToQueueView(event, session);
+            }
+            case "reindex" -> { mgr.scheduler.reindexQueue(); session.lastAction = "🔀 Queue shuffled"; broadcast(mgr, session); editToQueueView(event, session); }
+            case "clearqueue" -> { clearGuildQueue(session.guildId); session.page = 0; session.lastAction = "🧹 Queue cleared"; broadcast(mgr, session); editToQueueView(event, session); }
 
             // History View Controls
             case "hprev" -> { session.page = Math.max(0, session.page - 1); editToHistoryView(event, session); }
@@ -489,6 +1009,11 @@ public class PudelMusicPlugin {
 
         String modalId = event.getModalId().substring(modalPrefix.length());
 
+        if ("saveplaylist".equals(modalId)) {
+            saveQueueAsPlaylist(event, session);
+            return;
+        }
+
         if ("queuesong".equals(modalId)) {
             String query = getModalValue(event, "query");
 
@@ -539,18 +1064,19 @@ public class PudelMusicPlugin {
                             .build()
             ).setEphemeral(true).queue(hook -> {
                 session.tempHook = hook;
-                hook.retrieveOriginal().queue(msg -> session.tempMessage = msg);
 
-                playerManager.loadItemOrdered(mgr, finalSearchPrefix + query, new AudioLoadResultHandler() {
+                AudioLoadResultHandler handler = new AudioLoadResultHandler() {
                     @Override public void trackLoaded(AudioTrack track) {
                         mgr.scheduler.queue(track, userId);
                         session.lastAction = "🎵 Queued: " + truncate(track.getInfo().title, 40);
                         session.cleanupTemp();
                         updateSessionMessage(session, mgr);
+                        broadcast(mgr, session);
                     }
 
                     @Override public void playlistLoaded(AudioPlaylist playlist) {
                         if (playlist.isSearchResult()) {
+                            titleIndex.recordSearch(guild.getIdLong(), query);
                             handleSearchResults(session, playlist);
                         } else {
                             for (AudioTrack track : playlist.getTracks()) {
@@ -559,13 +1085,13 @@ public class PudelMusicPlugin {
                             session.lastAction = "📋 Queued playlist: " + truncate(playlist.getName(), 35) + " (" + playlist.getTracks().size() + " tracks)";
                             session.cleanupTemp();
                             updateSessionMessage(session, mgr);
+                            broadcast(mgr, session);
                         }
                     }
 
                     @Override public void noMatches() {
                         var hookRef = session.tempHook;
-                        session.tempMessage = null;
-                        session.tempHook = null;
+                        session.detachTemp();
                         if (hookRef != null) {
                             hookRef.editOriginal(
                                     new MessageEditBuilder().useComponentsV2(true)
@@ -582,8 +1108,7 @@ public class PudelMusicPlugin {
 
                     @Override public void loadFailed(FriendlyException exception) {
                         var hookRef = session.tempHook;
-                        session.tempMessage = null;
-                        session.tempHook = null;
+                        session.detachTemp();
                         if (hookRef != null) {
                             hookRef.editOriginal(
                                     new MessageEditBuilder().useComponentsV2(true)
@@ -597,7 +1122,8 @@ public class PudelMusicPlugin {
                             );
                         }
                     }
-                });
+                };
+                loadOrImport(session, mgr, finalSearchPrefix + query, userId, handler);
             });
         }
     }
@@ -633,12 +1159,33 @@ public class PudelMusicPlugin {
             searchCache.remove(searchId);
 
             event.deferEdit().queue(hook -> hook.deleteOriginal().queue(null, _ -> {}));
-            session.tempMessage = null;
-            session.tempHook = null;
+            session.detachTemp();
 
             session.lastAction = "🎵 Queued: " + truncate(selected.getInfo().title, 40);
             session.view = View.MAIN;
             updateSessionMessage(session, mgr);
+            broadcast(mgr, session);
+            return;
+        }
+
+        if (menuId.equals(menuPrefix + "loadplaylist")) {
+            loadSavedPlaylist(event, session, guild);
+            return;
+        }
+
+        if (menuId.equals(menuPrefix + "deleteplaylist")) {
+            long playlistId = Long.parseLong(event.getValues().getFirst());
+            playlistRepo.findById(playlistId)
+                    .filter(p -> p.getUserId() == userId)
+                    .ifPresent(p -> {
+                        playlistRepo.deleteById(playlistId);
+                        session.lastAction = "🗑 Deleted playlist: " + truncate(p.getName(), 35);
+                    });
+            session.view = View.PLAYLISTS;
+            event.editMessage(
+                    new MessageEditBuilder().useComponentsV2(true)
+                            .setComponents(viewBuilder.buildPlaylistView(session)).build()
+            ).queue();
             return;
         }
 
@@ -648,19 +1195,22 @@ public class PudelMusicPlugin {
 
             Optional<QueueEntry> entryOpt = queueRepo.findById(dbId);
             String removedTitle = "unknown";
-            if (entryOpt.isPresent() && entryOpt.get().getGuildId() == session.guildId) {
+            if (entryOpt.isPresent() && entryOpt.get().getGuildId() == session.guildId && ownsQueue(session.guildId)) {
                 removedTitle = entryOpt.get().getTitle();
                 queueRepo.deleteById(dbId);
+                GuildMusicManager owner = musicManagers.get(session.guildId);
+                if (owner != null && "QUEUE".equals(entryOpt.get().getStatus())) owner.scheduler.removed(entryOpt.get());
             }
 
             event.deferEdit().queue(hook -> hook.deleteOriginal().queue(null, _ -> {}));
-            session.tempMessage = null;
-            session.tempHook = null;
+            session.detachTemp();
 
             session.lastAction = "🗑 Removed: " + truncate(removedTitle, 40);
             session.view = View.QUEUE;
-            if (session.message != null) {
-                session.message.editMessage(
+            GuildMusicManager mgr = musicManagers.get(session.guildId);
+            if (mgr != null) broadcast(mgr, session);
+            if (session.hasMessage()) {
+                session.editMessage(
                         new MessageEditBuilder().useComponentsV2(true)
                                 .setComponents(viewBuilder.buildQueueView(session)).build()
                 ).queue();
@@ -670,6 +1220,11 @@ public class PudelMusicPlugin {
 
     // ==================== VOICE EVENT ====================
 
+    @EventHandler
+    public void onGuildLeave(GuildLeaveEvent event) {
+        if (titleIndex != null) titleIndex.forget(event.getGuild().getIdLong());
+    }
+
     @EventHandler
     public void onVoiceUpdate(GuildVoiceUpdateEvent event) {
         if (event.getChannelLeft() != null) {
@@ -680,7 +1235,10 @@ public class PudelMusicPlugin {
                     mgr.player.destroy();
                     mgr.scheduler.clearQueue();
                     musicManagers.remove(guild.getIdLong());
+                    sharedViews.remove(guild.getIdLong());
+                    viewBuilder.forget(guild.getIdLong());
                 }
+                if (guildLeases != null) guildLeases.release(guild.getIdLong());
             }
         }
     }
@@ -709,14 +1267,95 @@ public class PudelMusicPlugin {
         ).queue();
     }
 
+    private void editToStatsView(ButtonInteractionEvent event, MusicSession session) {
+        ListeningStats.Report report = listeningStats.report(session.guildId, STATS_DAYS, 10);
+        event.editMessage(
+                new MessageEditBuilder().useComponentsV2(true)
+                        .setComponents(viewBuilder.buildStatsView(report, STATS_DAYS)).build()
+        ).queue();
+    }
+
+    private void editToPlaylistView(ButtonInteractionEvent event, MusicSession session) {
+        event.editMessage(
+                new MessageEditBuilder().useComponentsV2(true)
+                        .setComponents(viewBuilder.buildPlaylistView(session)).build()
+        ).queue();
+    }
+
+    /**
+     * Re-renders the session's main view. Edits are coalesced by {@link SessionUpdater}, so a
+     * burst of calls results in one edit showing the latest state.
+     */
     private void updateSessionMessage(MusicSession session, GuildMusicManager mgr) {
-        if (session.message != null) {
+        if (session.hasMessage()) {
             session.view = View.MAIN;
-            session.message.editMessage(
-                    new MessageEditBuilder().useComponentsV2(true)
-                            .setComponents(viewBuilder.buildMainView(mgr, session)).build()
-            ).queue();
+            sessionUpdater.request(session, () -> session.lastAction.equals(mgr.lastAction)
+                    ? sharedMainView(mgr)
+                    : new MessageEditBuilder().useComponentsV2(true)
+                            .setComponents(viewBuilder.buildMainView(mgr, session)).build());
+        }
+    }
+
+    // ==================== GUILD FAN-OUT ====================
+
+    /** A main view rendered for one guild state version and displayed position. */
+    private record SharedView(long version, String progressKey, MessageEditData data) {}
+
+    /**
+     * Publishes a state change to every Music Box open in the guild. The acting session has
+     * already rendered itself; every other subscriber on the main view takes over its last
+     * action and is re-rendered from the shared view.
+     *
+     * @param origin session that caused the change, or {@code null} for player events
+     */
+    private void broadcast(GuildMusicManager mgr, MusicSession origin) {
+        if (origin != null) mgr.lastAction = origin.lastAction;
+        mgr.stateVersion.incrementAndGet();
+
+        Set<MusicSession> subscribers = guildSubscribers.get(mgr.guildId);
+        if (subscribers == null) return;
+        for (MusicSession s : subscribers) {
+            if (s == origin || s.view != View.MAIN || !s.hasMessage()) continue;
+            s.lastAction = mgr.lastAction;
+            updateSessionMessage(s, mgr);
+        }
+    }
+
+    /** Renders the guild's main view at most once per state version and displayed position. */
+    private MessageEditData sharedMainView(GuildMusicManager mgr) {
+        long version = mgr.stateVersion.get();
+        String progressKey = progressKey(mgr);
+        SharedView cached = sharedViews.get(mgr.guildId);
+        if (cached != null && cached.version() == version && cached.progressKey().equals(progressKey)) {
+            return cached.data();
         }
+        MessageEditData data = new MessageEditBuilder().useComponentsV2(true)
+                .setComponents(viewBuilder.buildMainView(mgr, mgr.lastAction)).build();
+        sharedViews.put(mgr.guildId, new SharedView(version, progressKey, data));
+        return data;
+    }
+
+    private static String progressKey(GuildMusicManager mgr) {
+        AudioTrack current = mgr.player.getPlayingTrack();
+        return current == null ? "idle"
+                : current.getIdentifier() + "|" + current.getPosition() / 1000 + "|" + mgr.player.isPaused();
+    }
+
+    private void unsubscribe(MusicSession session) {
+        guildSubscribers.computeIfPresent(session.guildId, (_, subscribers) -> {
+            subscribers.remove(session);
+            return subscribers.isEmpty() ? null : subscribers;
+        });
+    }
+
+    /**
+     * Releases an expired or overflowed session: its popup is deleted and its message and hook
+     * references are dropped, so nothing of it outlives the store entry.
+     */
+    private void onSessionEvicted(MusicSession session) {
+        unsubscribe(session);
+        session.cleanupTemp();
+        session.hook = null;
     }
 
     private MessageEditBuilder buildErrorView(String title, String description) {
@@ -732,6 +1371,29 @@ public class PudelMusicPlugin {
                 ).withAccentColor(ACCENT_IDLE));
     }
 
+    // ==================== LIVE PROGRESS ====================
+
+    /**
+     * Timer wheel callback: re-renders an open main view when its position or pause state has
+     * changed, then re-arms. Sessions that were replaced or whose token expired drop out.
+     */
+    private void refreshProgress(MusicSession session) {
+        if (activeSessions.peek(session.userId) != session
+                || System.currentTimeMillis() - session.openedAt > INTERACTION_TOKEN_TTL_MS) {
+            return;
+        }
+
+        GuildMusicManager mgr = musicManagers.get(session.guildId);
+        if (mgr != null && session.hasMessage() && session.view == View.MAIN) {
+            String key = progressKey(mgr);
+            if (!key.equals(session.progressKey)) {
+                session.progressKey = key;
+                updateSessionMessage(session, mgr);
+            }
+        }
+        progressWheel.schedule(session, settings.uiProgressIntervalMs);
+    }
+
     // ==================== MODAL / MENU BUILDERS ====================
 
     private void showQueueSongModal(ButtonInteractionEvent event) {
@@ -756,6 +1418,27 @@ public class PudelMusicPlugin {
         ).queue();
     }
 
+    private void showSavePlaylistModal(ButtonInteractionEvent event) {
+        StringSelectMenu scopeMenu = StringSelectMenu.create("scope")
+                .setPlaceholder("Who can use this playlist")
+                .addOption("👤 Only me", "user")
+                .addOption("🏠 Everyone in this server", "guild")
+                .setDefaultOptions(SelectOption.of("👤 Only me", "user"))
+                .build();
+
+        event.replyModal(Modal.create(modalPrefix + "saveplaylist", "Save Queue as Playlist")
+                .addComponents(
+                        Label.of("Playlist Name", TextInput.create("name", TextInputStyle.SHORT)
+                                .setPlaceholder("My favourite mix")
+                                .setMaxLength(100)
+                                .setRequired(true)
+                                .build()
+                        ),
+                        Label.of("Visibility", scopeMenu)
+                ).build()
+        ).queue();
+    }
+
     private void showRemoveMenu(ButtonInteractionEvent event, MusicSession session) {
         List<QueueEntry> queue = queueRepo.query()
                 .where("guild_id", session.guildId)
@@ -774,10 +1457,7 @@ public class PudelMusicPlugin {
         event.reply(
                 new MessageCreateBuilder().useComponentsV2(true)
                         .setComponents(viewBuilder.buildRemoveView(session, queue)).build()
-        ).setEphemeral(true).queue(hook -> {
-            session.tempHook = hook;
-            hook.retrieveOriginal().queue(msg -> session.tempMessage = msg);
-        });
+        ).setEphemeral(true).queue(hook -> session.tempHook = hook);
     }
 
     private void handleSearchResults(MusicSession session, AudioPlaylist playlist) {
@@ -790,34 +1470,118 @@ public class PudelMusicPlugin {
             session.tempHook.editOriginal(
                     new MessageEditBuilder().useComponentsV2(true)
                             .setComponents(viewBuilder.buildSearchView(session, tracks, searchId)).build()
-            ).queue(msg -> session.tempMessage = msg);
+            ).queue();
         }
     }
 
-    // ==================== QUEUE MANIPULATION ====================
+    // ==================== SAVED PLAYLISTS ====================
 
-    private void reindexQueue(MusicSession session) {
-        List<QueueEntry> queue = queueRepo.query()
+    /**
+     * Stores the current and upcoming tracks as one pre-encoded bundle, so loading it later
+     * needs a single read and no upstream resolution.
+     */
+    private void saveQueueAsPlaylist(ModalInteractionEvent event, MusicSession session) {
+        String name = getModalValue(event, "name").trim();
+        var scopeMapping = event.getValue("scope");
+        boolean shared = scopeMapping != null && !scopeMapping.getAsStringList().isEmpty()
+                && "guild".equals(scopeMapping.getAsStringList().getFirst());
+
+        List<QueueEntry> entries = new ArrayList<>(queueRepo.query()
+                .where("guild_id", session.guildId)
+                .where("status", "CURRENT")
+                .list());
+        entries.addAll(queueRepo.query()
                 .where("guild_id", session.guildId)
                 .where("status", "QUEUE")
-                .list();
+                .list());
+
+        if (name.isEmpty() || entries.isEmpty()) {
+            event.reply(name.isEmpty() ? "❌ Please enter a playlist name!" : "ℹ️ Queue is empty!").setEphemeral(true)
+                    .queue(m -> m.deleteOriginal().queueAfter(5, TimeUnit.SECONDS));
+            return;
+        }
 
-        if (queue.size() <= 1) return;
+        try {
+            SavedPlaylist playlist = new SavedPlaylist();
+            playlist.setGuildId(shared ? session.guildId : 0L);
+            playlist.setUserId(session.userId);
+            playlist.setName(name);
+            playlist.setTrackCount(entries.size());
+            playlist.setBundle(TrackBundle.encode(entries.stream()
+                    .map(e -> new TrackBundle.Entry(e.getTitle(), e.getTrackBlob(), e.getDurationMs()))
+                    .toList()));
+            playlist.setCreatedAt(System.currentTimeMillis() / 1000);
+            playlistRepo.save(playlist);
+            session.lastAction = "💾 Saved playlist: " + truncate(name, 35) + " (" + entries.size() + " tracks)";
+        } catch (IOException e) {
+            context.log("error", "Failed to save playlist: " + e.getMessage());
+            session.lastAction = "❌ Failed to save playlist";
+        }
 
-        Collections.shuffle(queue);
-        for (QueueEntry entry : queue) { queueRepo.deleteById(entry.getId()); }
-        for (QueueEntry entry : queue) { entry.setId(null); queueRepo.save(entry); }
+        session.view = View.QUEUE;
+        event.editMessage(
+                new MessageEditBuilder().useComponentsV2(true)
+                        .setComponents(viewBuilder.buildQueueView(session)).build()
+        ).queue();
+    }
+
+    private void loadSavedPlaylist(StringSelectInteractionEvent event, MusicSession session, Guild guild) {
+        long playlistId = Long.parseLong(event.getValues().getFirst());
+        Optional<SavedPlaylist> playlist = playlistRepo.findById(playlistId)
+                .filter(p -> p.getUserId() == session.userId || p.getGuildId() == session.guildId);
+
+        if (playlist.isEmpty()) {
+            event.reply("❌ Playlist no longer exists.").setEphemeral(true)
+                    .queue(m -> m.deleteOriginal().queueAfter(5, TimeUnit.SECONDS));
+            return;
+        }
+
+        List<TrackBundle.Entry> entries;
+        try {
+            entries = TrackBundle.decode(playlist.get().getBundle());
+        } catch (IOException e) {
+            context.log("error", "Corrupt playlist bundle %d: %s".formatted(playlistId, e.getMessage()));
+            event.reply("❌ This playlist could not be read.").setEphemeral(true)
+                    .queue(m -> m.deleteOriginal().queueAfter(5, TimeUnit.SECONDS));
+            return;
+        }
+
+        Member member = event.getMember();
+        if (!guild.getAudioManager().isConnected() && member != null
+                && member.getVoiceState() != null && member.getVoiceState().inAudioChannel()) {
+            guild.getAudioManager().openAudioConnection(member.getVoiceState().getChannel());
+        }
+
+        GuildMusicManager mgr = getGuildAudioPlayer(guild);
+        mgr.scheduler.queueEncoded(entries, session.userId);
+
+        session.lastAction = "📂 Queued playlist: " + truncate(playlist.get().getName(), 35) + " (" + entries.size() + " tracks)";
+        session.view = View.MAIN;
+        event.editMessage(
+                new MessageEditBuilder().useComponentsV2(true)
+                        .setComponents(viewBuilder.buildMainView(mgr, session)).build()
+        ).queue();
+        broadcast(mgr, session);
     }
 
+    // ==================== QUEUE MANIPULATION ====================
+
     private void clearGuildQueue(long guildId) {
+        if (!ownsQueue(guildId)) return;
         List<QueueEntry> queue = queueRepo.query()
                 .where("guild_id", guildId)
                 .where("status", "QUEUE")
                 .list();
         for (QueueEntry entry : queue) { queueRepo.deleteById(entry.getId()); }
+        invalidateQueue(guildId);
     }
 
+    /**
+     * Puts CURRENT and ERROR rows back in the queue and drops PLAYED ones. With leases on, only a
+     * guild this instance holds is touched, i.e. one it played or one whose lease had expired.
+     */
     private void recoverStaleQueue(long guildId) {
+        if (!ownsQueue(guildId)) return;
         List<QueueEntry> stale = queueRepo.query().where("guild_id", guildId).where("status", "CURRENT").list();
         for (QueueEntry entry : stale) { entry.setStatus("QUEUE"); entry.setIsLooped(false); queueRepo.save(entry); }
 
@@ -826,15 +1590,49 @@ public class PudelMusicPlugin {
 
         List<QueueEntry> played = queueRepo.query().where("guild_id", guildId).where("status", "PLAYED").list();
         for (QueueEntry entry : played) { queueRepo.deleteById(entry.getId()); }
+        // PLAYED rows are not part of the totals; only rows put back in the queue are
+        if (!stale.isEmpty() || !errors.isEmpty()) invalidateQueue(guildId);
+    }
+
+    private void invalidateQueue(long guildId) {
+        GuildMusicManager mgr = musicManagers.get(guildId);
+        if (mgr != null) mgr.scheduler.invalidateQueue();
+    }
+
+    /** Whether this instance may write the guild's queue; always true when leases are off. */
+    private boolean ownsQueue(long guildId) {
+        return guildLeases == null || guildLeases.owns(guildId);
+    }
+
+    /**
+     * Stops playing a guild another instance took over. Its queue rows now belong to that instance,
+     * so they are left as they are.
+     */
+    private void onLeaseLost(long guildId) {
+        GuildMusicManager mgr = musicManagers.remove(guildId);
+        if (mgr != null) mgr.player.destroy();
+        sharedViews.remove(guildId);
+        viewBuilder.forget(guildId);
+        titleIndex.forget(guildId);
     }
 
     // ==================== AUDIO MANAGER ====================
 
     private GuildMusicManager getGuildAudioPlayer(Guild guild) {
+        // Re-claims a lease released on leaving voice; a refused claim leaves the scheduler read-only
+        if (guildLeases != null) guildLeases.acquire(guild.getIdLong());
         return musicManagers.computeIfAbsent(guild.getIdLong(), _ -> {
-            TrackScheduler.Dependencies deps = new TrackScheduler.Dependencies(context, playerManager, queueRepo, historyRepo);
+            TrackScheduler.Dependencies deps = new TrackScheduler.Dependencies(
+                    context, playerManager, cipherFallbackManager, opusCache, backgroundExecutor, titleIndex,
+                    listeningStats, metrics, guildLeases, audioNodes, queueRepo, historyRepo);
+            titleIndex.warm(guild.getIdLong());
+            historyRetention.track(guild.getIdLong());
             GuildMusicManager mgr = new GuildMusicManager(playerManager, guild.getIdLong(), deps);
-            guild.getAudioManager().setSendingHandler(new AudioPlayerSendHandler(mgr.player));
+            mgr.player.addListener(new AudioEventAdapter() {
+                @Override public void onTrackStart(AudioPlayer player, AudioTrack track) { broadcast(mgr, null); }
+                @Override public void onTrackEnd(AudioPlayer player, AudioTrack track, AudioTrackEndReason reason) { broadcast(mgr, null); }
+            });
+            guild.getAudioManager().setSendingHandler(mgr.sendHandler);
             return mgr;
         });
     }
@@ -3,8 +3,12 @@ package group.worldstandard.pudel.plugin.audio;
 import net.dv8tion.jda.api.audio.AudioSendHandler;
 import com.sedmelluq.discord.lavaplayer.player.AudioPlayer;
 import com.sedmelluq.discord.lavaplayer.track.playback.AudioFrame;
+import group.worldstandard.pudel.plugin.cache.OpusSegmentCache;
+import group.worldstandard.pudel.plugin.metrics.MusicMetrics;
 
 import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * JDA AudioSendHandler that forwards audio frames from LavaPlayer.
@@ -12,16 +16,39 @@ import java.nio.ByteBuffer;
 public class AudioPlayerSendHandler implements AudioSendHandler {
 
     private final AudioPlayer audioPlayer;
+    private final OpusSegmentCache.Recorder recorder;
+    private final LongAdder framesSent;
+    private final LongAdder framesSilent;
     private AudioFrame lastFrame;
+    private volatile long lastPolledNanos;
 
-    public AudioPlayerSendHandler(AudioPlayer audioPlayer) {
+    /**
+     * @param recorder receives every frame sent, or {@code null} when the Opus cache is disabled
+     */
+    public AudioPlayerSendHandler(AudioPlayer audioPlayer, OpusSegmentCache.Recorder recorder, MusicMetrics metrics) {
         this.audioPlayer = audioPlayer;
+        this.recorder = recorder;
+        this.framesSent = metrics.framesSent;
+        this.framesSilent = metrics.framesSilent;
+        this.lastPolledNanos = System.nanoTime() - TimeUnit.MINUTES.toNanos(1);
     }
 
     @Override
     public boolean canProvide() {
+        lastPolledNanos = System.nanoTime();
         lastFrame = audioPlayer.provide();
-        return lastFrame != null;
+        if (lastFrame == null) {
+            framesSilent.increment();
+            return false;
+        }
+        framesSent.increment();
+        if (recorder != null) recorder.onFrame(lastFrame);
+        return true;
+    }
+
+    /** Whether JDA polled this handler within the last second, i.e. a voice connection is sending through it. */
+    public boolean isConnected() {
+        return System.nanoTime() - lastPolledNanos < TimeUnit.SECONDS.toNanos(1);
     }
 
     @Override
@@ -0,0 +1,173 @@
+package group.worldstandard.pudel.plugin.audio;
+
+import com.sedmelluq.discord.lavaplayer.player.AudioLoadResultHandler;
+import com.sedmelluq.discord.lavaplayer.player.AudioPlayerManager;
+import com.sedmelluq.discord.lavaplayer.tools.FriendlyException;
+import com.sedmelluq.discord.lavaplayer.track.AudioPlaylist;
+import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
+import group.worldstandard.pudel.api.database.PluginRepository;
+import group.worldstandard.pudel.plugin.entity.HistoryEntry;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.SequencedSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Keeps a few related tracks resolved ahead of time for autoplay.
+ *
+ * <p>Candidates are seeded from the last played track (its YouTube mix) or, without one, from
+ * the guild's recent {@code music_history}. Refills run on a shared low-priority executor, so
+ * when the queue runs out the next song is taken from memory instead of searched for on the
+ * playback path. The executor only picks the query; the load itself runs on LavaPlayer's
+ * loader and calls back, so a slow search never holds the shared thread.
+ */
+public class AutoplayBuffer {
+
+    private static final int TARGET_SIZE = 3;
+    private static final int RECENT_LIMIT = 50;
+    private static final int MAX_QUERIES_PER_FILL = 3;
+
+    private final long guildId;
+    private final AudioPlayerManager playerManager;
+    private final PluginRepository<HistoryEntry> historyRepo;
+    private final ExecutorService background;
+    private final Random random = new Random();
+
+    private final Deque<AudioTrack> candidates = new ArrayDeque<>();
+    private final SequencedSet<String> recent = new LinkedHashSet<>();
+    private final AtomicBoolean refilling = new AtomicBoolean();
+    private volatile AudioTrack seed;
+
+    public AutoplayBuffer(long guildId, AudioPlayerManager playerManager,
+                          PluginRepository<HistoryEntry> historyRepo, ExecutorService background) {
+        this.guildId = guildId;
+        this.playerManager = playerManager;
+        this.historyRepo = historyRepo;
+        this.background = background;
+    }
+
+    /** Takes the next candidate, or {@code null} if none is ready yet, and schedules a refill. */
+    public AudioTrack poll() {
+        AudioTrack next;
+        synchronized (this) {
+            next = candidates.poll();
+        }
+        refill();
+        return next;
+    }
+
+    /** Records a started track so it is neither offered again nor lost as a seed. */
+    public void onTrackStarted(AudioTrack track) {
+        seed = track;
+        synchronized (this) {
+            remember(track.getIdentifier());
+        }
+        refill();
+    }
+
+    public synchronized int size() { return candidates.size(); }
+
+    public synchronized void clear() {
+        candidates.clear();
+    }
+
+    /** Schedules a background refill unless one is already running. */
+    public void refill() {
+        if (size() >= TARGET_SIZE || !refilling.compareAndSet(false, true)) return;
+        step(0);
+    }
+
+    // ==================== RESOLUTION ====================
+
+    /**
+     * Picks the next query on the background executor and starts loading it. The refill ends, and
+     * {@link #refilling} is cleared, once the buffer is full, the queries run out or one fails.
+     */
+    private void step(int attempt) {
+        try {
+            background.execute(() -> {
+                try {
+                    String query = attempt < MAX_QUERIES_PER_FILL && size() < TARGET_SIZE ? nextQuery() : null;
+                    if (query == null) {
+                        refilling.set(false);
+                        return;
+                    }
+                    load(query, attempt);
+                } catch (RuntimeException _) {
+                    refilling.set(false);
+                }
+            });
+        } catch (RejectedExecutionException _) {
+            refilling.set(false);
+        }
+    }
+
+    /** Loads without waiting; the result is taken on the loader thread and the next step queued. */
+    private void load(String query, int attempt) {
+        playerManager.loadItem(query, new AudioLoadResultHandler() {
+            @Override public void trackLoaded(AudioTrack track) { loaded(List.of(track), attempt); }
+            @Override public void playlistLoaded(AudioPlaylist playlist) { loaded(playlist.getTracks(), attempt); }
+            // Autoplay is best effort; no result just means no candidate this round
+            @Override public void noMatches() { loaded(List.of(), attempt); }
+            @Override public void loadFailed(FriendlyException exception) { loaded(List.of(), attempt); }
+        });
+    }
+
+    private void loaded(List<AudioTrack> found, int attempt) {
+        int added = 0;
+        for (AudioTrack t : found) {
+            synchronized (this) {
+                if (candidates.size() >= TARGET_SIZE) break;
+                if (t.getInfo().isStream || recent.contains(t.getIdentifier())) continue;
+                remember(t.getIdentifier());
+                candidates.add(t);
+                added++;
+            }
+        }
+        if (added > 0) seed = null; // next refill re-seeds from what actually played
+        step(attempt + 1);
+    }
+
+    private String nextQuery() {
+        AudioTrack s = seed;
+        if (s != null) return relatedQuery(s.getIdentifier(), s.getInfo().uri, s.getInfo().author);
+
+        List<HistoryEntry> history = historyRepo.query()
+                .where("guild_id", guildId)
+                .orderByDesc("played_at")
+                .limit(20)
+                .list();
+        if (history.isEmpty()) return null;
+        HistoryEntry h = history.get(random.nextInt(history.size()));
+        return relatedQuery(null, h.getTrackUrl(), h.getTrackTitle());
+    }
+
+    /** A YouTube mix for YouTube tracks, otherwise a search on the given hint. */
+    private static String relatedQuery(String identifier, String uri, String hint) {
+        String videoId = identifier;
+        if (uri != null && (uri.contains("youtube.com/watch?v=") || uri.contains("youtu.be/"))) {
+            int start = uri.contains("v=") ? uri.indexOf("v=") + 2 : uri.lastIndexOf('/') + 1;
+            int end = start;
+            while (end < uri.length() && uri.charAt(end) != '&' && uri.charAt(end) != '?') end++;
+            videoId = uri.substring(start, end);
+        } else if (uri != null) {
+            videoId = null;
+        }
+        if (videoId != null && videoId.length() == 11) {
+            return "https://www.youtube.com/watch?v=" + videoId + "&list=RD" + videoId;
+        }
+        return hint != null && !hint.isBlank() ? "ytsearch:" + hint : null;
+    }
+
+    private void remember(String identifier) {
+        recent.remove(identifier);
+        recent.addLast(identifier);
+        while (recent.size() > RECENT_LIMIT) recent.removeFirst();
+    }
+}
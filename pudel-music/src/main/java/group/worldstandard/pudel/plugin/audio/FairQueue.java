@@ -0,0 +1,131 @@
+package group.worldstandard.pudel.plugin.audio;
+
+import group.worldstandard.pudel.plugin.entity.QueueEntry;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Round-robin order of a guild's queue across the users who requested its tracks.
+ *
+ * <p>Each user's tracks form a sub-queue spread over consecutive rounds: their first pending
+ * track plays in the current round, the next one in the round after, and so on. Within a round,
+ * tracks play in the order they were requested. A track's round and arrival are packed into a
+ * {@code fair_rank} stored with the queue row, so the order survives restarts and can be sorted
+ * on directly; queueing a track never changes the rank of another one.
+ *
+ * <p>Rounds are kept as buckets of entry IDs, so adding a track and taking the next one are both
+ * constant time. Removed rows are not tracked here; the scheduler skips IDs that are no longer
+ * queued when it takes them.
+ */
+public class FairQueue {
+
+    private static final int SEQ_BITS = 32;
+    private static final long SEQ_MASK = (1L << SEQ_BITS) - 1;
+
+    private record Slot(long entryId, long rank) {}
+
+    private final List<ArrayDeque<Slot>> rounds = new ArrayList<>();
+    private final Map<Long, Long> nextRound = new HashMap<>();
+    private long baseRound = 0;
+    private int head = 0;
+    private long seq = 0;
+    private int size = 0;
+
+    /** Reserves the rank of a new track by {@code userId}; pass it to {@link #offer} once the row has an ID. */
+    public synchronized long assign(long userId) {
+        long round = Math.max(baseRound, nextRound.getOrDefault(userId, 0L));
+        nextRound.put(userId, round + 1);
+        return rank(round, seq++);
+    }
+
+    public synchronized void offer(long entryId, long rank) {
+        long round = roundOf(rank);
+        if (round < baseRound) round = baseRound;
+        int index = head + (int) (round - baseRound);
+        while (rounds.size() <= index) rounds.add(new ArrayDeque<>());
+
+        ArrayDeque<Slot> bucket = rounds.get(index);
+        Slot slot = new Slot(entryId, rank);
+        if (bucket.isEmpty() || bucket.peekLast().rank() <= rank) {
+            bucket.addLast(slot);
+        } else {
+            // Ranks reserved concurrently can be offered out of order; keep the bucket sorted
+            List<Slot> later = new ArrayList<>();
+            while (!bucket.isEmpty() && bucket.peekLast().rank() > rank) later.add(bucket.pollLast());
+            bucket.addLast(slot);
+            for (int i = later.size() - 1; i >= 0; i--) bucket.addLast(later.get(i));
+        }
+        size++;
+    }
+
+    /** Takes the next entry ID in fair order, or {@code null} when none is left. */
+    public synchronized Long poll() {
+        while (head < rounds.size()) {
+            Slot slot = rounds.get(head).pollFirst();
+            if (slot != null) {
+                size--;
+                return slot.entryId();
+            }
+            head++;
+            baseRound++;
+            if (head > 64 && head * 2 > rounds.size()) {
+                rounds.subList(0, head).clear();
+                head = 0;
+            }
+        }
+        return null;
+    }
+
+    public synchronized int size() { return size; }
+
+    /**
+     * Rebuilds the order from the guild's queued rows. Rows that were queued without a rank, i.e.
+     * while fair mode was off or by a queue shuffle, are ranked in ID order and handed to {@code saveRank} to be persisted.
+     */
+    public synchronized void rebuild(List<QueueEntry> queued, Consumer<QueueEntry> saveRank) {
+        rounds.clear();
+        nextRound.clear();
+        head = 0;
+        size = 0;
+
+        List<QueueEntry> ranked = new ArrayList<>();
+        List<QueueEntry> unranked = new ArrayList<>();
+        for (QueueEntry e : queued) (e.getFairRank() != null ? ranked : unranked).add(e);
+        ranked.sort(Comparator.comparingLong(QueueEntry::getFairRank));
+        unranked.sort(Comparator.comparingLong(QueueEntry::getId));
+
+        baseRound = ranked.isEmpty() ? baseRound : roundOf(ranked.getFirst().getFairRank());
+        for (QueueEntry e : ranked) {
+            long rank = e.getFairRank();
+            nextRound.merge(e.getUserId(), roundOf(rank) + 1, Math::max);
+            seq = Math.max(seq, (rank & SEQ_MASK) + 1);
+            offer(e.getId(), rank);
+        }
+        for (QueueEntry e : unranked) {
+            e.setFairRank(assign(e.getUserId()));
+            saveRank.accept(e);
+            offer(e.getId(), e.getFairRank());
+        }
+    }
+
+    public synchronized void clear() {
+        rounds.clear();
+        nextRound.clear();
+        head = 0;
+        size = 0;
+    }
+
+    private static long rank(long round, long seq) {
+        return (round << SEQ_BITS) | (seq & SEQ_MASK);
+    }
+
+    private static long roundOf(long rank) {
+        return rank >>> SEQ_BITS;
+    }
+}
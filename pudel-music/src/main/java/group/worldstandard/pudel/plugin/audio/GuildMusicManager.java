@@ -2,20 +2,45 @@ package group.worldstandard.pudel.plugin.audio;
 
 import com.sedmelluq.discord.lavaplayer.player.AudioPlayer;
 import com.sedmelluq.discord.lavaplayer.player.AudioPlayerManager;
+import group.worldstandard.pudel.plugin.cache.OpusSegmentCache;
+
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Holds the {@link AudioPlayer} and {@link TrackScheduler} for a single guild.
  */
 public class GuildMusicManager {
 
+    public final long guildId;
     public final AudioPlayer player;
     public final TrackScheduler scheduler;
+    public final AudioPlayerSendHandler sendHandler;
+
+    /** Running streaming playlist import, or {@code null} when none is in progress. */
+    public volatile PlaylistImporter.Progress importProgress;
+
+    /** Bumped on every change shown in the Music Box; renders are shared per version. */
+    public final AtomicLong stateVersion = new AtomicLong();
+    /** Most recent action in this guild, shown to every subscribed Music Box. */
+    public volatile String lastAction = "Opened Music Box";
 
     public GuildMusicManager(AudioPlayerManager manager, long guildId,
                              TrackScheduler.Dependencies deps) {
-        this.player = manager.createPlayer();
-        this.scheduler = new TrackScheduler(player, guildId, deps);
+        this.guildId = guildId;
+        // With audio nodes, decoding and encoding happen in their process and only Opus frames come back
+        this.player = deps.audioNodes() != null ? deps.audioNodes().createPlayer(manager, guildId) : manager.createPlayer();
+        this.scheduler = new TrackScheduler(player, guildId, deps, stateVersion);
         this.player.addListener(scheduler);
+
+        // Cache hits are swapped in by the scheduler; the recorder fills the cache from live plays
+        OpusSegmentCache opusCache = deps.opusCache();
+        if (opusCache != null) {
+            OpusSegmentCache.Recorder recorder = opusCache.recorder();
+            this.player.addListener(recorder);
+            this.sendHandler = new AudioPlayerSendHandler(player, recorder, deps.metrics());
+        } else {
+            this.sendHandler = new AudioPlayerSendHandler(player, null, deps.metrics());
+        }
     }
 }
 
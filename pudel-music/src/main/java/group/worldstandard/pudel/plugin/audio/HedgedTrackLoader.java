@@ -0,0 +1,167 @@
+package group.worldstandard.pudel.plugin.audio;
+
+import com.sedmelluq.discord.lavaplayer.player.AudioLoadResultHandler;
+import com.sedmelluq.discord.lavaplayer.player.AudioPlayerManager;
+import com.sedmelluq.discord.lavaplayer.tools.FriendlyException;
+import com.sedmelluq.discord.lavaplayer.track.AudioPlaylist;
+import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
+
+import java.util.Arrays;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Resolves identifiers through LavaPlayer with optional hedging.
+ *
+ * <p>When a resolution has not finished within the configured percentile of recent load
+ * latencies, the same identifier is raced on a backup {@link AudioPlayerManager} whose
+ * YouTube clients are ordered differently. The first success wins and the loser is cancelled.
+ * Because the hedge only fires past the tail percentile, extra upstream traffic stays small.
+ */
+public class HedgedTrackLoader {
+
+    private static final int SAMPLE_SIZE = 256;
+    private static final int MIN_SAMPLES = 20;
+
+    private final AudioPlayerManager primary;
+    private final AudioPlayerManager backup;
+    private final ScheduledExecutorService timer;
+    private final double percentile;
+    private final long minDelayMs;
+    private final long initialDelayMs;
+
+    private final long[] samples = new long[SAMPLE_SIZE];
+    private int sampleCount = 0;
+    private int sampleIndex = 0;
+
+    private final AtomicLong hedgesFired = new AtomicLong();
+    private final AtomicLong hedgesWon = new AtomicLong();
+
+    /**
+     * @param backup the manager used for the hedged attempt, or {@code null} to disable hedging
+     */
+    public HedgedTrackLoader(AudioPlayerManager primary, AudioPlayerManager backup,
+                             ScheduledExecutorService timer, double percentile,
+                             long minDelayMs, long initialDelayMs) {
+        this.primary = primary;
+        this.backup = backup;
+        this.timer = timer;
+        this.percentile = Math.clamp(percentile, 0.5, 0.999);
+        this.minDelayMs = minDelayMs;
+        this.initialDelayMs = initialDelayMs;
+    }
+
+    public void load(Object orderingKey, String identifier, AudioLoadResultHandler handler) {
+        if (backup == null) {
+            primary.loadItemOrdered(orderingKey, identifier, handler);
+            return;
+        }
+
+        Race race = new Race(handler);
+        synchronized (race) {
+            race.primaryFuture = primary.loadItemOrdered(orderingKey, identifier, race.side(false));
+            race.hedgeTimer = timer.schedule(() -> race.fireHedge(identifier), hedgeDelayMs(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public boolean isHedging() { return backup != null; }
+    public long getHedgesFired() { return hedgesFired.get(); }
+    public long getHedgesWon() { return hedgesWon.get(); }
+
+    // ==================== LATENCY TRACKING ====================
+
+    private synchronized void recordLatency(long millis) {
+        samples[sampleIndex] = millis;
+        sampleIndex = (sampleIndex + 1) % SAMPLE_SIZE;
+        if (sampleCount < SAMPLE_SIZE) sampleCount++;
+    }
+
+    /** Current hedge threshold: the configured percentile of recent loads, floored at the minimum delay. */
+    public synchronized long hedgeDelayMs() {
+        if (sampleCount < MIN_SAMPLES) return Math.max(minDelayMs, initialDelayMs);
+        long[] sorted = Arrays.copyOf(samples, sampleCount);
+        Arrays.sort(sorted);
+        int idx = Math.min(sampleCount - 1, (int) Math.ceil(percentile * sampleCount) - 1);
+        return Math.max(minDelayMs, sorted[Math.max(0, idx)]);
+    }
+
+    // ==================== RACE ====================
+
+    /**
+     * One hedged resolution. All transitions are guarded by the instance monitor; the
+     * delegate handler is always invoked outside of it.
+     */
+    private final class Race {
+        private final AudioLoadResultHandler delegate;
+        private final long startNanos = System.nanoTime();
+
+        private Future<Void> primaryFuture;
+        private Future<Void> backupFuture;
+        private ScheduledFuture<?> hedgeTimer;
+        private int pending = 1;
+        private boolean done = false;
+
+        Race(AudioLoadResultHandler delegate) {
+            this.delegate = delegate;
+        }
+
+        void fireHedge(String identifier) {
+            synchronized (this) {
+                if (done) return;
+                pending++;
+                hedgesFired.incrementAndGet();
+                // Unordered on purpose: the ordered queue for this guild is still busy with the primary.
+                backupFuture = backup.loadItem(identifier, side(true));
+            }
+        }
+
+        /** Claims the win for one side; returns false if the race is already decided. */
+        private boolean win(boolean isBackup) {
+            Future<Void> loser;
+            synchronized (this) {
+                if (done) return false;
+                done = true;
+                loser = isBackup ? primaryFuture : backupFuture;
+                if (hedgeTimer != null) hedgeTimer.cancel(false);
+            }
+            if (loser != null) loser.cancel(true);
+            if (isBackup) hedgesWon.incrementAndGet();
+            recordLatency(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+            return true;
+        }
+
+        /** Records a failed side; returns true only if this was the last side still running. */
+        private boolean fail() {
+            synchronized (this) {
+                if (done) return false;
+                if (--pending > 0) return false;
+                done = true;
+                if (hedgeTimer != null) hedgeTimer.cancel(false);
+                return true;
+            }
+        }
+
+        AudioLoadResultHandler side(boolean isBackup) {
+            return new AudioLoadResultHandler() {
+                @Override public void trackLoaded(AudioTrack track) {
+                    if (win(isBackup)) delegate.trackLoaded(track);
+                }
+
+                @Override public void playlistLoaded(AudioPlaylist playlist) {
+                    if (win(isBackup)) delegate.playlistLoaded(playlist);
+                }
+
+                @Override public void noMatches() {
+                    if (fail()) delegate.noMatches();
+                }
+
+                @Override public void loadFailed(FriendlyException exception) {
+                    if (fail()) delegate.loadFailed(exception);
+                }
+            };
+        }
+    }
+}
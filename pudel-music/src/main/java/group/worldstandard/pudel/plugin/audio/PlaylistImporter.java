@@ -0,0 +1,168 @@
+package group.worldstandard.pudel.plugin.audio;
+
+import com.sedmelluq.discord.lavaplayer.player.AudioLoadResultHandler;
+import com.sedmelluq.discord.lavaplayer.player.AudioPlayerManager;
+import com.sedmelluq.discord.lavaplayer.tools.FriendlyException;
+import com.sedmelluq.discord.lavaplayer.track.AudioPlaylist;
+import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
+import group.worldstandard.pudel.plugin.youtube.PlaylistPager;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Imports large playlists incrementally.
+ *
+ * <p>Pages are fetched one at a time by a {@link PlaylistPager} on a virtual thread and queued in
+ * chunks as each arrives, so playback starts once the first page is in. The import ends when the
+ * playlist has no continuation left, and stops early once the guild's queue is cleared, which
+ * also happens when the bot leaves, or once another instance holds the guild. Mixes, which cannot
+ * be paged, and playlists the pager cannot read are loaded whole through the player manager
+ * instead. Progress is published on {@link GuildMusicManager#importProgress} and to a
+ * {@link Listener}.
+ */
+public class PlaylistImporter {
+
+    public record Progress(String playlistName, int queued, int total, boolean complete) {}
+
+    public interface Listener {
+        void onProgress(Progress progress);
+        void onNoMatches();
+        void onFailed(FriendlyException exception);
+    }
+
+    private final AudioPlayerManager manager;
+    private final PlaylistPager pager;
+    private final int chunkSize;
+
+    public PlaylistImporter(AudioPlayerManager manager, PlaylistPager pager, int chunkSize) {
+        this.manager = manager;
+        this.pager = pager;
+        this.chunkSize = Math.max(1, chunkSize);
+    }
+
+    /** Whether the identifier is a playlist URL this importer can page through. */
+    public static boolean isStreamable(String identifier) {
+        return identifier.startsWith("http")
+                && identifier.contains("list=")
+                && (identifier.contains("youtube.com") || identifier.contains("youtu.be"));
+    }
+
+    public void importPlaylist(GuildMusicManager mgr, String identifier, long userId, Listener listener) {
+        long epoch = mgr.scheduler.getQueueEpoch();
+        String playlistId = PlaylistPager.playlistId(identifier);
+        if (playlistId == null) {
+            loadWhole(mgr, identifier, userId, listener, epoch);
+            return;
+        }
+        Thread.ofVirtual().name("pudel-music-import-" + mgr.guildId).start(() -> {
+            PlaylistPager.Pages pages;
+            List<AudioTrack> first;
+            try {
+                pages = pager.pages(playlistId);
+                first = pages.next();
+            } catch (IOException | RuntimeException _) {
+                // Nothing is queued yet, so the source's own loader can still take the whole playlist
+                loadWhole(mgr, identifier, userId, listener, epoch);
+                return;
+            }
+            if (first == null) {
+                listener.onNoMatches();
+                return;
+            }
+            loadPages(mgr, pages, first, userId, listener, epoch);
+        });
+    }
+
+    /** Loads the identifier in one go, as a regular load would, and queues whatever it returns. */
+    private void loadWhole(GuildMusicManager mgr, String identifier, long userId, Listener listener, long epoch) {
+        manager.loadItemOrdered(mgr, identifier, new AudioLoadResultHandler() {
+            @Override public void trackLoaded(AudioTrack track) {
+                mgr.scheduler.queue(track, userId);
+                publish(mgr, listener, new Progress(track.getInfo().title, 1, 1, true));
+            }
+
+            @Override public void playlistLoaded(AudioPlaylist playlist) {
+                if (cancelled(mgr, epoch)) {
+                    mgr.importProgress = null;
+                    return;
+                }
+                List<AudioTrack> tracks = playlist.getTracks();
+                enqueue(mgr, userId, listener, playlist.getName(), tracks, 0, tracks.size(), true, epoch);
+            }
+
+            @Override public void noMatches() {
+                mgr.importProgress = null;
+                listener.onNoMatches();
+            }
+
+            @Override public void loadFailed(FriendlyException exception) {
+                mgr.importProgress = null;
+                listener.onFailed(exception);
+            }
+        });
+    }
+
+    /** Queues the first page, then fetches and queues the rest one request at a time. Blocks. */
+    private void loadPages(GuildMusicManager mgr, PlaylistPager.Pages pages, List<AudioTrack> first,
+                           long userId, Listener listener, long epoch) {
+        String name = pages.name();
+        int queued = 0;
+        try {
+            for (List<AudioTrack> page = first; page != null; page = pages.next()) {
+                if (cancelled(mgr, epoch)) break;
+                queued = enqueue(mgr, userId, listener, name, page, queued, -1, false, epoch);
+            }
+        } catch (IOException | RuntimeException _) {
+            // The first pages are already playing; a failure on later pages only ends the import
+        }
+        if (cancelled(mgr, epoch)) {
+            mgr.importProgress = null;
+            return;
+        }
+        finish(mgr, listener, name, queued);
+    }
+
+    /** Whether the queue was cleared, or handed to another instance, since the import began. */
+    private static boolean cancelled(GuildMusicManager mgr, long epoch) {
+        return mgr.scheduler.getQueueEpoch() != epoch || !mgr.scheduler.ownsQueue();
+    }
+
+    /**
+     * Queues tracks in chunks, publishing progress after each. The very first track of an
+     * import is queued on its own so playback starts before the rest is written.
+     *
+     * <p>Chunks go through the scheduler's lock like any command, and are dropped there if the
+     * queue was cleared after {@code epoch}.
+     *
+     * @param total total playlist size, or {@code -1} while it is still unknown
+     * @return number of tracks queued for the import so far
+     */
+    private int enqueue(GuildMusicManager mgr, long userId, Listener listener, String name,
+                        List<AudioTrack> tracks, int offset, int total, boolean lastBatch, long epoch) {
+        int queued = offset;
+        int i = 0;
+        while (i < tracks.size()) {
+            int size = queued == 0 ? 1 : chunkSize;
+            int end = Math.min(tracks.size(), i + size);
+            if (!mgr.scheduler.queueAll(tracks.subList(i, end), userId, epoch)) {
+                mgr.importProgress = null;
+                break;
+            }
+            queued += end - i;
+            i = end;
+            boolean complete = lastBatch && i == tracks.size();
+            publish(mgr, listener, new Progress(name, queued, total, complete));
+        }
+        return queued;
+    }
+
+    private void finish(GuildMusicManager mgr, Listener listener, String name, int queued) {
+        publish(mgr, listener, new Progress(name, queued, queued, true));
+    }
+
+    private void publish(GuildMusicManager mgr, Listener listener, Progress progress) {
+        mgr.importProgress = progress.complete() ? null : progress;
+        listener.onProgress(progress);
+    }
+}
@@ -0,0 +1,67 @@
+package group.worldstandard.pudel.plugin.audio;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compact container for many already-encoded tracks.
+ *
+ * <p>Entries carry the same blobs {@link TrackScheduler#encodeTrack} produces, stored as raw bytes
+ * together with their titles and gzip-compressed as a whole, so a saved playlist is a single
+ * column value that can be queued without decoding or resolving anything.
+ */
+public final class TrackBundle {
+
+    private static final int VERSION = 2;
+
+    /**
+     * @param blob       Base64 track encoding, as stored in {@code music_queue.track_blob}
+     * @param durationMs play time as stored in {@code music_queue.duration_ms}, or {@code null}
+     *                   for entries of version 1 bundles, which did not store it
+     */
+    public record Entry(String title, String blob, Long durationMs) {}
+
+    private TrackBundle() {}
+
+    public static String encode(List<Entry> entries) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(new GZIPOutputStream(bytes))) {
+            out.writeInt(VERSION);
+            out.writeInt(entries.size());
+            for (Entry e : entries) {
+                byte[] raw = Base64.getDecoder().decode(e.blob());
+                out.writeUTF(e.title() != null ? e.title() : "");
+                out.writeInt(raw.length);
+                out.write(raw);
+                out.writeLong(e.durationMs() != null ? e.durationMs() : -1);
+            }
+        }
+        return Base64.getEncoder().encodeToString(bytes.toByteArray());
+    }
+
+    public static List<Entry> decode(String bundle) throws IOException {
+        byte[] compressed = Base64.getDecoder().decode(bundle);
+        try (DataInputStream in = new DataInputStream(new GZIPInputStream(new ByteArrayInputStream(compressed)))) {
+            int version = in.readInt();
+            if (version < 1 || version > VERSION) throw new IOException("Unsupported bundle version " + version);
+            int count = in.readInt();
+            List<Entry> entries = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                String title = in.readUTF();
+                byte[] raw = new byte[in.readInt()];
+                in.readFully(raw);
+                long duration = version >= 2 ? in.readLong() : -1;
+                entries.add(new Entry(title, Base64.getEncoder().encodeToString(raw), duration >= 0 ? duration : null));
+            }
+            return entries;
+        }
+    }
+}
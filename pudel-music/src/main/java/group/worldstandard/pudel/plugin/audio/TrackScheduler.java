@@ -1,72 +1,192 @@
 package group.worldstandard.pudel.plugin.audio;
 
+import com.sedmelluq.discord.lavaplayer.player.AudioLoadResultHandler;
 import com.sedmelluq.discord.lavaplayer.player.AudioPlayer;
 import com.sedmelluq.discord.lavaplayer.player.AudioPlayerManager;
 import com.sedmelluq.discord.lavaplayer.player.event.AudioEventAdapter;
+import com.sedmelluq.discord.lavaplayer.tools.FriendlyException;
+import com.sedmelluq.discord.lavaplayer.tools.Units;
 import com.sedmelluq.discord.lavaplayer.tools.io.MessageInput;
 import com.sedmelluq.discord.lavaplayer.tools.io.MessageOutput;
+import com.sedmelluq.discord.lavaplayer.track.AudioPlaylist;
 import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
 import com.sedmelluq.discord.lavaplayer.track.AudioTrackEndReason;
 import group.worldstandard.pudel.api.PluginContext;
 import group.worldstandard.pudel.api.database.PluginRepository;
 import group.worldstandard.pudel.api.database.QueryBuilder;
+import group.worldstandard.pudel.plugin.cache.OpusSegmentCache;
+import group.worldstandard.pudel.plugin.cluster.GuildLeases;
 import group.worldstandard.pudel.plugin.entity.HistoryEntry;
 import group.worldstandard.pudel.plugin.entity.QueueEntry;
+import group.worldstandard.pudel.plugin.metrics.MusicMetrics;
+import group.worldstandard.pudel.plugin.node.NodePool;
+import group.worldstandard.pudel.plugin.search.TitleIndex;
+import group.worldstandard.pudel.plugin.stats.ListeningStats;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * Manages track scheduling, queue persistence, loop & shuffle modes.
+ * Manages track scheduling, queue persistence, loop, shuffle & fair queue modes.
+ *
+ * <p>Commands, player events and playlist imports reach the scheduler from different threads, so
+ * every method that changes the queue or the modes holds the scheduler's lock.
  */
 public class TrackScheduler extends AudioEventAdapter {
 
     private final AudioPlayer player;
     private final long guildId;
     private final Dependencies deps;
+    private final AtomicLong stateVersion;
 
     public int loopMode = 0;    // 0=Off, 1=Queue, 2=Track
     public boolean shuffle = false;
+    public boolean autoplay = false;
+    public boolean fairQueue = false;
+
+    /** Queue entries added by autoplay are attributed to this user id. */
+    public static final long AUTOPLAY_USER = 0L;
+
+    private AudioTrack cipherRetry;
+    private Object cipherRetriedFor;
+    private Long reresolvedFor;
+    private AutoplayBuffer autoplayBuffer;
+    private final FairQueue fairOrder = new FairQueue();
+    private volatile boolean fairOrderStale = true;
+
+    // Running totals of the QUEUE rows, recounted from the table only after invalidateQueue()
+    private final AtomicLong queuedMillis = new AtomicLong();
+    private final AtomicLong queuedTracks = new AtomicLong();
+    private final AtomicBoolean recountQueued = new AtomicBoolean();
+    // Bumped on every clear, so running playlist imports notice and stop
+    private final AtomicLong queueEpoch = new AtomicLong();
+    private volatile boolean totalsStale = true;
 
     /**
      * Bundles external dependencies needed by the scheduler.
+     *
+     * @param cipherFallbackManager manager using the remote cipher service, or {@code null} when
+     *                              local cipher failures should not be retried
+     * @param opusCache             on-disk frame cache, or {@code null} when disabled
+     * @param backgroundExecutor    low-priority executor for speculative work such as autoplay prefetch
+     * @param titleIndex            autocomplete index, updated as history is written
+     * @param stats                 daily play rollups, updated as history is written
+     * @param metrics               plugin-wide counters and latency samples
+     * @param leases                guild queue ownership across instances, or {@code null} when
+     *                              this is the only instance writing the queue table
+     * @param audioNodes            nodes that play the guild's tracks, or {@code null} to play in-process
      */
     public record Dependencies(
             PluginContext context,
             AudioPlayerManager playerManager,
+            AudioPlayerManager cipherFallbackManager,
+            OpusSegmentCache opusCache,
+            ExecutorService backgroundExecutor,
+            TitleIndex titleIndex,
+            ListeningStats stats,
+            MusicMetrics metrics,
+            GuildLeases leases,
+            NodePool audioNodes,
             PluginRepository<QueueEntry> queueRepo,
             PluginRepository<HistoryEntry> historyRepo
     ) {}
 
-    public TrackScheduler(AudioPlayer player, long guildId, Dependencies deps) {
+    /**
+     * @param stateVersion the guild's state version, bumped whenever the queue changes
+     */
+    public TrackScheduler(AudioPlayer player, long guildId, Dependencies deps, AtomicLong stateVersion) {
         this.player = player;
         this.guildId = guildId;
         this.deps = deps;
+        this.stateVersion = stateVersion;
     }
 
     public void queue(AudioTrack track, long userId) {
-        try {
+        queueAll(List.of(track), userId);
+    }
+
+    /**
+     * Persists several tracks in order, in one batch write, and starts playback if the player is idle.
+     */
+    public synchronized void queueAll(List<AudioTrack> tracks, long userId) {
+        queueAll(tracks, userId, queueEpoch.get());
+    }
+
+    /**
+     * Like {@link #queueAll(List, long)}, but only while the queue has not been cleared since
+     * {@code epoch}, checked under the same lock as the clear.
+     *
+     * @return whether the tracks were queued
+     */
+    public synchronized boolean queueAll(List<AudioTrack> tracks, long userId, long epoch) {
+        if (queueEpoch.get() != epoch || !ownsQueue()) return false;
+        List<QueueEntry> entries = new ArrayList<>(tracks.size());
+        for (AudioTrack track : tracks) {
+            try {
+                QueueEntry entry = new QueueEntry();
+                entry.setGuildId(guildId);
+                entry.setUserId(userId);
+                entry.setStatus("QUEUE");
+                entry.setTitle(track.getInfo().title);
+                entry.setTrackBlob(encodeTrack(track));
+                entry.setDurationMs(durationOf(track));
+                entry.setIsLooped(false);
+                entries.add(entry);
+            } catch (IOException e) {
+                deps.context().log("error", "Failed to encode track: " + e.getMessage());
+            }
+        }
+        saveAll(entries);
+        stateVersion.incrementAndGet();
+
+        if (player.getPlayingTrack() == null) {
+            nextTrack();
+        }
+        return true;
+    }
+
+    /**
+     * Queues already-encoded tracks (e.g. from a saved {@link TrackBundle}) without decoding them.
+     */
+    public synchronized void queueEncoded(List<TrackBundle.Entry> entries, long userId) {
+        if (!ownsQueue()) return;
+        List<QueueEntry> rows = new ArrayList<>(entries.size());
+        for (TrackBundle.Entry e : entries) {
             QueueEntry entry = new QueueEntry();
             entry.setGuildId(guildId);
             entry.setUserId(userId);
             entry.setStatus("QUEUE");
-            entry.setTitle(track.getInfo().title);
-            entry.setTrackBlob(encodeTrack(track));
+            entry.setTitle(e.title());
+            entry.setTrackBlob(e.blob());
+            entry.setDurationMs(e.durationMs() != null ? e.durationMs() : durationOf(entry.getTrackBlob()));
             entry.setIsLooped(false);
-            deps.queueRepo().save(entry);
+            entry.setFromBundle(true);
+            rows.add(entry);
+        }
+        saveAll(rows);
+        stateVersion.incrementAndGet();
 
-            if (player.getPlayingTrack() == null) {
-                nextTrack();
-            }
-        } catch (IOException e) {
-            deps.context().log("error", "Failed to encode track: " + e.getMessage());
+        if (player.getPlayingTrack() == null) {
+            nextTrack();
         }
     }
 
-    public void nextTrack() {
+    public synchronized void nextTrack() {
+        if (!ownsQueue()) return;
+        long start = System.nanoTime();
+        advance();
+        deps.metrics().recordNextTrack(start);
+    }
+
+    private void advance() {
+        stateVersion.incrementAndGet();
         // 1. Move CURRENT -> PLAYED
         List<QueueEntry> active = deps.queueRepo().query()
                 .where("guild_id", guildId)
@@ -87,6 +207,8 @@ public class TrackScheduler extends AudioEventAdapter {
                     hist.setTrackUrl(infoTrack.getInfo().uri);
                     hist.setPlayedAt(Instant.now().getEpochSecond());
                     deps.historyRepo().save(hist);
+                    deps.titleIndex().recordPlay(guildId, hist.getTrackTitle(), hist.getTrackUrl());
+                    deps.stats().recordPlay(hist);
                 } catch (IOException ex) {
                     deps.context().log("error", "History save failed: " + ex.getMessage());
                 }
@@ -104,6 +226,8 @@ public class TrackScheduler extends AudioEventAdapter {
             if (!candidates.isEmpty()) {
                 nextEntry = candidates.get(new Random().nextInt(candidates.size()));
             }
+        } else if (fairQueue) {
+            nextEntry = pollFair();
         } else {
             List<QueueEntry> list = query.limit(1).list();
             if (!list.isEmpty()) nextEntry = list.getFirst();
@@ -121,16 +245,20 @@ public class TrackScheduler extends AudioEventAdapter {
                     e.setStatus("QUEUE");
                     e.setIsLooped(true);
                     deps.queueRepo().save(e);
+                    added(e);
                 }
-                nextTrack();
+                fairOrderStale = true;
+                advance();
                 return;
             }
         }
 
         // 4. Play
         if (nextEntry != null) {
+            removed(nextEntry);
             try {
                 AudioTrack track = decodeTrack(nextEntry.getTrackBlob());
+                if (deps.opusCache() != null) track = deps.opusCache().playable(track);
                 nextEntry.setStatus("CURRENT");
                 deps.queueRepo().save(nextEntry);
                 track.setUserData(nextEntry.getId());
@@ -138,15 +266,84 @@ public class TrackScheduler extends AudioEventAdapter {
             } catch (IOException e) {
                 nextEntry.setStatus("ERROR");
                 deps.queueRepo().save(nextEntry);
-                nextTrack();
+                advance();
             }
         } else {
+            // Queue ran dry: continue with a prefetched related track if autoplay is on
+            AudioTrack candidate = autoplay && autoplayBuffer != null ? autoplayBuffer.poll() : null;
+            if (candidate != null) {
+                startAutoplay(candidate);
+            } else {
+                player.stopTrack();
+            }
+        }
+    }
+
+    /**
+     * Plays a prefetched related track right away, stored as the CURRENT row so it ends up in
+     * history like any queued track. Queueing it instead would leave a skipped track playing.
+     */
+    private void startAutoplay(AudioTrack track) {
+        try {
+            QueueEntry entry = new QueueEntry();
+            entry.setGuildId(guildId);
+            entry.setUserId(AUTOPLAY_USER);
+            entry.setStatus("CURRENT");
+            entry.setTitle(track.getInfo().title);
+            entry.setTrackBlob(encodeTrack(track));
+            entry.setDurationMs(durationOf(track));
+            entry.setIsLooped(false);
+            QueueEntry saved = deps.queueRepo().saveAll(List.of(entry)).getFirst();
+            track.setUserData(saved.getId());
+            player.startTrack(track, false);
+        } catch (IOException e) {
+            deps.context().log("error", "Failed to encode track: " + e.getMessage());
             player.stopTrack();
         }
     }
 
     @Override
-    public void onTrackEnd(AudioPlayer player, AudioTrack track, AudioTrackEndReason reason) {
+    public void onTrackStart(AudioPlayer player, AudioTrack track) {
+        if (autoplay && autoplayBuffer != null) autoplayBuffer.onTrackStarted(track);
+    }
+
+    @Override
+    public synchronized void onTrackException(AudioPlayer player, AudioTrack track, FriendlyException exception) {
+        AudioPlayerManager fallback = deps.cipherFallbackManager();
+        Object entryId = track.getUserData();
+        if (fallback == null || entryId == null || track.getSourceManager() == null
+                || entryId.equals(cipherRetriedFor) || !isCipherFailure(exception)) return;
+
+        try {
+            AudioTrack retry = decodeTrack(encodeTrack(track), fallback);
+            retry.setUserData(entryId);
+            cipherRetry = retry;
+        } catch (IOException e) {
+            deps.context().log("warn", "Cipher fallback unavailable: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public synchronized void onTrackEnd(AudioPlayer player, AudioTrack track, AudioTrackEndReason reason) {
+        if (cipherRetry != null) {
+            AudioTrack retry = cipherRetry;
+            cipherRetry = null;
+            if (reason == AudioTrackEndReason.LOAD_FAILED) {
+                cipherRetriedFor = retry.getUserData();
+                deps.context().log("warn", "Local cipher failed for '%s', retrying with remote cipher".formatted(retry.getInfo().title));
+                player.startTrack(retry, false);
+                return;
+            }
+        }
+
+        // Encodings stored in saved playlists can go stale; resolve the URL again once before skipping
+        if (reason == AudioTrackEndReason.LOAD_FAILED && track.getSourceManager() != null
+                && track.getInfo().uri != null && track.getUserData() instanceof Long id
+                && !id.equals(reresolvedFor) && isBundleEntry(id)) {
+            reresolve(track);
+            return;
+        }
+
         if (reason.mayStartNext) {
             if (loopMode == 2) {
                 AudioTrack clone = track.makeClone();
@@ -158,9 +355,277 @@ public class TrackScheduler extends AudioEventAdapter {
         }
     }
 
-    public void cycleLoopMode() { loopMode = (loopMode + 1) % 3; }
-    public void toggleShuffle() { shuffle = !shuffle; }
-    public void clearQueue() { deps.queueRepo().deleteBy("guild_id", guildId); }
+    private boolean isBundleEntry(long entryId) {
+        return deps.queueRepo().findById(entryId)
+                .map(e -> Boolean.TRUE.equals(e.getFromBundle()))
+                .orElse(false);
+    }
+
+    private void reresolve(AudioTrack failed) {
+        long entryId = (Long) failed.getUserData();
+        reresolvedFor = entryId;
+        deps.playerManager().loadItemOrdered(this, failed.getInfo().uri, deps.metrics().timedLoad(new AudioLoadResultHandler() {
+            @Override public void trackLoaded(AudioTrack fresh) {
+                replay(entryId, fresh);
+            }
+
+            @Override public void playlistLoaded(AudioPlaylist playlist) {
+                AudioTrack fresh = playlist.getSelectedTrack() != null
+                        ? playlist.getSelectedTrack()
+                        : playlist.getTracks().isEmpty() ? null : playlist.getTracks().getFirst();
+                replay(entryId, fresh);
+            }
+
+            @Override public void noMatches() { replay(entryId, null); }
+            @Override public void loadFailed(FriendlyException exception) { replay(entryId, null); }
+        }));
+    }
+
+    /**
+     * Finishes a re-resolve: stores the fresh encoding and plays it, or skips when there is none.
+     * Neither happens if the user moved on while the load ran, i.e. the entry is no longer
+     * CURRENT or the player is busy again.
+     */
+    private synchronized void replay(long entryId, AudioTrack fresh) {
+        if (!ownsQueue()) return;
+        Optional<QueueEntry> entry = deps.queueRepo().findById(entryId);
+        if (fresh != null && entry.isPresent()) {
+            try {
+                entry.get().setTrackBlob(encodeTrack(fresh));
+                entry.get().setFromBundle(false);
+                deps.queueRepo().save(entry.get());
+            } catch (IOException e) {
+                deps.context().log("warn", "Failed to store re-resolved track: " + e.getMessage());
+            }
+        }
+        boolean waiting = entry.map(e -> "CURRENT".equals(e.getStatus())).orElse(false)
+                && player.getPlayingTrack() == null;
+        if (!waiting) return;
+        if (fresh == null) {
+            nextTrack();
+            return;
+        }
+        fresh.setUserData(entryId);
+        player.startTrack(fresh, true);
+    }
+
+    public synchronized void cycleLoopMode() { loopMode = (loopMode + 1) % 3; }
+    public synchronized void toggleShuffle() { shuffle = !shuffle; fairOrderStale = true; }
+
+    public synchronized void toggleFairQueue() {
+        fairQueue = !fairQueue;
+        if (fairQueue) fairOrderStale = true;
+        else fairOrder.clear();
+        stateVersion.incrementAndGet();
+    }
+
+    /**
+     * Drops the in-memory fair order and queue totals so they are rebuilt from the table when next
+     * needed. Required whenever rows enter or leave QUEUE other than through this scheduler or
+     * {@link #removed}.
+     */
+    public synchronized void invalidateQueue() {
+        fairOrderStale = true;
+        totalsStale = true;
+    }
+
+    public synchronized void toggleAutoplay() {
+        autoplay = !autoplay;
+        if (autoplay) {
+            if (autoplayBuffer == null) {
+                autoplayBuffer = new AutoplayBuffer(guildId, deps.playerManager(), deps.historyRepo(), deps.backgroundExecutor());
+            }
+            AudioTrack playing = player.getPlayingTrack();
+            if (playing != null) autoplayBuffer.onTrackStarted(playing);
+            else autoplayBuffer.refill();
+        } else if (autoplayBuffer != null) {
+            autoplayBuffer.clear();
+        }
+    }
+    public synchronized void clearQueue() {
+        if (!ownsQueue()) return;
+        queueEpoch.incrementAndGet();
+        deps.queueRepo().deleteBy("guild_id", guildId);
+        fairOrder.clear();
+        queuedMillis.set(0);
+        queuedTracks.set(0);
+        stateVersion.incrementAndGet();
+    }
+
+    /** Shuffles the queued rows for good by re-inserting them in random order. */
+    public synchronized void reindexQueue() {
+        if (!ownsQueue()) return;
+        List<QueueEntry> queue = deps.queueRepo().query()
+                .where("guild_id", guildId)
+                .where("status", "QUEUE")
+                .list();
+
+        if (queue.size() <= 1) return;
+
+        // Ranks are dropped so fair mode re-ranks the shuffled rows instead of restoring their old order
+        Collections.shuffle(queue);
+        for (QueueEntry entry : queue) { deps.queueRepo().deleteById(entry.getId()); }
+        for (QueueEntry entry : queue) { entry.setId(null); entry.setFairRank(null); }
+        deps.queueRepo().saveAll(queue);
+        fairOrderStale = true;
+        stateVersion.incrementAndGet();
+    }
+
+    /**
+     * Whether this instance may write the guild's queue rows. Without a lease another instance
+     * may be playing the same queue, so the change is dropped instead.
+     */
+    public boolean ownsQueue() {
+        if (deps.leases() == null || deps.leases().owns(guildId)) return true;
+        deps.context().log("warn", "Guild %d queue is leased by another instance, change dropped".formatted(guildId));
+        return false;
+    }
+
+    // ==================== QUEUE TOTALS ====================
+
+    /**
+     * Total play time of the queued tracks, without the current one. Streams count as zero. Never
+     * blocks: while a recount runs in the background, the last known total is returned.
+     */
+    public long getQueuedMillis() {
+        recountIfStale();
+        return queuedMillis.get();
+    }
+
+    /** Changes whenever the queue is cleared. */
+    public long getQueueEpoch() {
+        return queueEpoch.get();
+    }
+
+    /** Number of queued tracks; like {@link #getQueuedMillis()}, the last known count during a recount. */
+    public long getQueuedTracks() {
+        recountIfStale();
+        return queuedTracks.get();
+    }
+
+    /** Accounts for a QUEUE row deleted outside the scheduler, e.g. from the remove menu. */
+    public synchronized void removed(QueueEntry entry) {
+        queuedTracks.decrementAndGet();
+        queuedMillis.addAndGet(-durationOf(entry));
+    }
+
+    private void added(QueueEntry entry) {
+        queuedTracks.incrementAndGet();
+        queuedMillis.addAndGet(durationOf(entry));
+    }
+
+    /** Starts a recount on the background executor if the totals are stale and none is running. */
+    private void recountIfStale() {
+        if (!totalsStale || !recountQueued.compareAndSet(false, true)) return;
+        try {
+            deps.backgroundExecutor().execute(this::recount);
+        } catch (RejectedExecutionException e) {
+            recountQueued.set(false);
+        }
+    }
+
+    /**
+     * Fills in durations of rows queued before they were stored, then sums the QUEUE rows. The sum
+     * is taken under the scheduler's lock, which every other change to the totals holds too, so no
+     * add or removal can fall between reading the table and replacing the totals.
+     */
+    private void recount() {
+        try {
+            backfillDurations();
+            synchronized (this) {
+                totalsStale = false;
+                long millis = 0;
+                List<QueueEntry> queued = deps.queueRepo().query()
+                        .where("guild_id", guildId)
+                        .where("status", "QUEUE")
+                        .list();
+                for (QueueEntry e : queued) millis += durationOf(e);
+                queuedMillis.set(millis);
+                queuedTracks.set(queued.size());
+            }
+            stateVersion.incrementAndGet();
+        } catch (RuntimeException e) {
+            deps.context().log("warn", "Queue recount failed for guild %d: %s".formatted(guildId, e.getMessage()));
+        } finally {
+            recountQueued.set(false);
+        }
+    }
+
+    /**
+     * Decodes blobs outside the lock; each row is saved under it, re-read first so a row that
+     * started playing or was removed meanwhile is not written back.
+     */
+    private void backfillDurations() {
+        List<QueueEntry> queued = deps.queueRepo().query()
+                .where("guild_id", guildId)
+                .where("status", "QUEUE")
+                .list();
+        for (QueueEntry e : queued) {
+            if (e.getDurationMs() != null) continue;
+            long duration = durationOf(e.getTrackBlob());
+            synchronized (this) {
+                deps.queueRepo().findById(e.getId())
+                        .filter(row -> row.getDurationMs() == null)
+                        .ifPresent(row -> {
+                            row.setDurationMs(duration);
+                            deps.queueRepo().save(row);
+                        });
+            }
+        }
+    }
+
+    private static long durationOf(QueueEntry entry) {
+        return entry.getDurationMs() != null ? entry.getDurationMs() : 0;
+    }
+
+    public static long durationOf(AudioTrack track) {
+        long duration = track.getDuration();
+        return track.getInfo().isStream || duration == Units.DURATION_MS_UNKNOWN ? 0 : duration;
+    }
+
+    private long durationOf(String blob) {
+        try {
+            return durationOf(decodeTrack(blob));
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    // ==================== FAIR QUEUE ====================
+
+    /**
+     * Saves new queue rows in one write; in fair mode they are ranked and placed right away,
+     * without a rescan.
+     */
+    private void saveAll(List<QueueEntry> entries) {
+        if (entries.isEmpty()) return;
+        for (QueueEntry entry : entries) {
+            added(entry);
+            if (fairQueue) entry.setFairRank(fairOrder.assign(entry.getUserId()));
+        }
+        List<QueueEntry> saved = deps.queueRepo().saveAll(entries);
+        if (!fairQueue) return;
+        for (QueueEntry entry : saved) {
+            if (entry.getId() != null) fairOrder.offer(entry.getId(), entry.getFairRank());
+        }
+    }
+
+    /** Next queued row in round-robin order by requester; rows removed since they were queued are skipped. */
+    private QueueEntry pollFair() {
+        if (fairOrderStale) {
+            fairOrderStale = false;
+            fairOrder.rebuild(deps.queueRepo().query()
+                    .where("guild_id", guildId)
+                    .where("status", "QUEUE")
+                    .list(), deps.queueRepo()::save);
+        }
+        for (Long id = fairOrder.poll(); id != null; id = fairOrder.poll()) {
+            Optional<QueueEntry> entry = deps.queueRepo().findById(id)
+                    .filter(e -> e.getGuildId() == guildId && "QUEUE".equals(e.getStatus()));
+            if (entry.isPresent()) return entry.get();
+        }
+        return null;
+    }
 
     // ==================== TRACK ENCODING ====================
 
@@ -171,9 +636,24 @@ public class TrackScheduler extends AudioEventAdapter {
     }
 
     public AudioTrack decodeTrack(String base64) throws IOException {
+        return decodeTrack(base64, deps.playerManager());
+    }
+
+    private static AudioTrack decodeTrack(String base64, AudioPlayerManager manager) throws IOException {
         byte[] bytes = Base64.getDecoder().decode(base64);
         ByteArrayInputStream input = new ByteArrayInputStream(bytes);
-        return deps.playerManager().decodeTrack(new MessageInput(input)).decodedTrack;
+        return manager.decodeTrack(new MessageInput(input)).decodedTrack;
+    }
+
+    /** Whether a track failed because its stream URL cipher could not be solved. */
+    public static boolean isCipherFailure(Throwable error) {
+        for (Throwable t = error; t != null; t = t.getCause()) {
+            String msg = t.getMessage();
+            if (msg == null) continue;
+            String lower = msg.toLowerCase(Locale.ROOT);
+            if (lower.contains("cipher") || lower.contains("signature") || lower.contains("n function")) return true;
+        }
+        return false;
     }
 }
 
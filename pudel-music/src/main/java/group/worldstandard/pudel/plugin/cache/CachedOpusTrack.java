@@ -0,0 +1,102 @@
+package group.worldstandard.pudel.plugin.cache;
+
+import com.sedmelluq.discord.lavaplayer.container.common.OpusPacketRouter;
+import com.sedmelluq.discord.lavaplayer.source.AudioSourceManager;
+import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
+import com.sedmelluq.discord.lavaplayer.track.DelegatedAudioTrack;
+import com.sedmelluq.discord.lavaplayer.track.InternalAudioTrack;
+import com.sedmelluq.discord.lavaplayer.track.playback.LocalAudioTrackExecutor;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Plays a track from an {@link OpusSegmentCache} segment file.
+ *
+ * <p>The file is memory-mapped and its packets are routed straight to the frame buffer, so
+ * with the default Opus output they are passed through without decoding.
+ *
+ * <p>The network track it stands in for is kept. It provides the source manager, so the track
+ * encodes, retries and re-resolves like the original, and it is played instead, from where the
+ * segment stopped, when the segment cannot be read.
+ */
+public class CachedOpusTrack extends DelegatedAudioTrack {
+
+    private static final int FRAME_MILLIS = 20;
+
+    private final AudioTrack original;
+    private final OpusSegmentCache cache;
+    private final String key;
+    private final Path file;
+
+    CachedOpusTrack(AudioTrack original, OpusSegmentCache cache, String key, Path file) {
+        super(original.getInfo());
+        this.original = original;
+        this.cache = cache;
+        this.key = key;
+        this.file = file;
+    }
+
+    @Override
+    public AudioSourceManager getSourceManager() {
+        return original.getSourceManager();
+    }
+
+    @Override
+    public void process(LocalAudioTrackExecutor executor) throws Exception {
+        try {
+            processSegment(executor);
+        } catch (InterruptedException e) {
+            throw e;
+        } catch (Exception e) {
+            // Corrupt, truncated, or evicted since the track was swapped in: drop it and stream instead
+            cache.discard(key, e);
+            if (!(original instanceof InternalAudioTrack network)) throw e;
+            long position = executor.getPosition();
+            if (position > 0) executor.setPosition(position);
+            processDelegate(network, executor);
+        }
+    }
+
+    private void processSegment(LocalAudioTrackExecutor executor) throws Exception {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (map.getInt() != OpusSegmentCache.MAGIC || map.getInt() != OpusSegmentCache.VERSION) {
+                throw new IOException("Corrupt opus segment " + file.getFileName());
+            }
+            int frameCount = map.getInt();
+
+            OpusPacketRouter router = new OpusPacketRouter(executor.getProcessingContext(), 48000, 2);
+            try {
+                executor.executeProcessingLoop(() -> {
+                    while (map.remaining() >= 2) {
+                        int length = map.getShort() & 0xFFFF;
+                        ByteBuffer packet = map.slice(map.position(), length);
+                        map.position(map.position() + length);
+                        router.process(packet);
+                    }
+                    router.flush();
+                }, position -> {
+                    long target = Math.min(position / FRAME_MILLIS, frameCount);
+                    map.position(OpusSegmentCache.HEADER_BYTES);
+                    for (long i = 0; i < target && map.remaining() >= 2; i++) {
+                        int length = map.getShort() & 0xFFFF;
+                        map.position(map.position() + length);
+                    }
+                    router.seekPerformed(position, target * FRAME_MILLIS);
+                });
+            } finally {
+                router.close();
+            }
+        }
+    }
+
+    @Override
+    protected AudioTrack makeShallowClone() {
+        return new CachedOpusTrack(original.makeClone(), cache, key, file);
+    }
+}
@@ -0,0 +1,340 @@
+package group.worldstandard.pudel.plugin.cache;
+
+import com.sedmelluq.discord.lavaplayer.format.OpusAudioDataFormat;
+import com.sedmelluq.discord.lavaplayer.player.AudioPlayer;
+import com.sedmelluq.discord.lavaplayer.player.event.AudioEventAdapter;
+import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
+import com.sedmelluq.discord.lavaplayer.track.AudioTrackEndReason;
+import com.sedmelluq.discord.lavaplayer.track.playback.AudioFrame;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * On-disk LRU cache of the Opus frames sent for fully played tracks.
+ *
+ * <p>Each cached track is one segment file holding its frames back to back. A {@link Recorder}
+ * captures frames as they are sent to Discord; when the track finishes without gaps in its
+ * start, the frames are written on a background thread. Recordings of all guilds share a memory
+ * budget; one that would exceed it is abandoned, so long tracks in many guilds at once cannot
+ * exhaust the heap. Later plays of the same track are served
+ * by {@link CachedOpusTrack} from a memory-mapped view of the segment, with no network access.
+ * The directory is kept under a byte budget by evicting the least recently played segments.
+ */
+public class OpusSegmentCache implements AutoCloseable {
+
+    static final int MAGIC = 0x50444F53; // "PDOS"
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 12;
+    private static final String SUFFIX = ".opseg";
+
+    private final Path directory;
+    private final long maxBytes;
+    private final long maxTrackMillis;
+    private final long maxRecordingBytes;
+    private final Consumer<String> log;
+
+    private final LinkedHashMap<String, Long> segments = new LinkedHashMap<>(64, 0.75f, true);
+    private long totalBytes = 0;
+
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(Thread.ofPlatform()
+            .name("pudel-music-opus-cache").daemon(true).factory());
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong bytesSaved = new AtomicLong();
+    // Frames held in memory by recorders and by recordings waiting for the writer
+    private final AtomicLong recordingBytes = new AtomicLong();
+    private final AtomicLong abandoned = new AtomicLong();
+
+    /**
+     * @param maxRecordingBytes memory budget shared by every guild's recording in progress
+     */
+    public OpusSegmentCache(Path directory, long maxBytes, long maxTrackMillis, long maxRecordingBytes,
+                            Consumer<String> log) throws IOException {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        this.maxTrackMillis = maxTrackMillis;
+        this.maxRecordingBytes = maxRecordingBytes;
+        this.log = log;
+        Files.createDirectories(directory);
+        loadIndex();
+    }
+
+    /**
+     * Returns a disk-backed replacement for the track if its frames are cached, otherwise the
+     * track itself.
+     */
+    public AudioTrack playable(AudioTrack track) {
+        if (track instanceof CachedOpusTrack || !isCacheable(track)) return track;
+        String key = keyOf(track);
+        Long size;
+        synchronized (this) {
+            size = segments.get(key);
+        }
+        if (size == null) {
+            misses.incrementAndGet();
+            return track;
+        }
+
+        Path file = fileOf(key);
+        if (!Files.isRegularFile(file)) {
+            forget(key);
+            misses.incrementAndGet();
+            return track;
+        }
+        hits.incrementAndGet();
+        bytesSaved.addAndGet(size);
+        touch(file);
+        return new CachedOpusTrack(track, this, key, file);
+    }
+
+    /** Creates the per-guild frame recorder; register it as a player listener. */
+    public Recorder recorder() {
+        return new Recorder();
+    }
+
+    public long getHits() { return hits.get(); }
+    public long getMisses() { return misses.get(); }
+    public long getBytesSaved() { return bytesSaved.get(); }
+    public synchronized long getTotalBytes() { return totalBytes; }
+    public synchronized int getSegmentCount() { return segments.size(); }
+    public long getRecordingBytes() { return recordingBytes.get(); }
+    public long getAbandoned() { return abandoned.get(); }
+
+    public double getHitRatio() {
+        long h = hits.get(), total = h + misses.get();
+        return total == 0 ? 0 : (double) h / total;
+    }
+
+    public String describe() {
+        return "Opus cache: %d segments, %.1f MiB, hit ratio %.1f%%, %.1f MiB served from disk, %d recordings over the memory budget".formatted(
+                getSegmentCount(), getTotalBytes() / 1048576.0, getHitRatio() * 100, getBytesSaved() / 1048576.0, getAbandoned());
+    }
+
+    @Override
+    public void close() {
+        writer.shutdown();
+    }
+
+    // ==================== INDEX ====================
+
+    private void loadIndex() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            List<Path> sorted = files
+                    .filter(p -> p.getFileName().toString().endsWith(SUFFIX))
+                    .sorted(Comparator.comparing(OpusSegmentCache::lastModified))
+                    .toList();
+            synchronized (this) {
+                for (Path p : sorted) {
+                    String name = p.getFileName().toString();
+                    long size = Files.size(p);
+                    segments.put(name.substring(0, name.length() - SUFFIX.length()), size);
+                    totalBytes += size;
+                }
+            }
+        }
+        evictOverBudget();
+    }
+
+    private void store(String key, byte[] frames, int frameCount) {
+        Path file = fileOf(key);
+        Path tmp = directory.resolve(key + ".tmp");
+        try {
+            try (OutputStream out = Files.newOutputStream(tmp);
+                 DataOutputStream data = new DataOutputStream(out)) {
+                data.writeInt(MAGIC);
+                data.writeInt(VERSION);
+                data.writeInt(frameCount);
+                data.write(frames);
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            long size = Files.size(file);
+            synchronized (this) {
+                Long previous = segments.put(key, size);
+                totalBytes += size - (previous != null ? previous : 0);
+            }
+            evictOverBudget();
+        } catch (IOException e) {
+            log.accept("Opus cache write failed: " + e.getMessage());
+            try { Files.deleteIfExists(tmp); } catch (IOException _) {}
+        }
+    }
+
+    private void evictOverBudget() {
+        while (true) {
+            String victim;
+            synchronized (this) {
+                if (totalBytes <= maxBytes || segments.isEmpty()) return;
+                Iterator<Map.Entry<String, Long>> it = segments.entrySet().iterator();
+                Map.Entry<String, Long> eldest = it.next();
+                victim = eldest.getKey();
+                totalBytes -= eldest.getValue();
+                it.remove();
+            }
+            try {
+                Files.deleteIfExists(fileOf(victim));
+            } catch (IOException e) {
+                log.accept("Opus cache eviction failed: " + e.getMessage());
+            }
+        }
+    }
+
+    /** Drops a segment that could not be played, so the next play streams and records it again. */
+    void discard(String key, Exception cause) {
+        forget(key);
+        try {
+            Files.deleteIfExists(fileOf(key));
+        } catch (IOException e) {
+            log.accept("Opus cache could not delete a bad segment: " + e.getMessage());
+        }
+        log.accept("Opus cache segment %s unreadable, streaming instead: %s".formatted(key, cause.getMessage()));
+    }
+
+    private synchronized void forget(String key) {
+        Long size = segments.remove(key);
+        if (size != null) totalBytes -= size;
+    }
+
+    private boolean isCacheable(AudioTrack track) {
+        return track.getSourceManager() != null
+                && !track.getInfo().isStream
+                && track.getDuration() > 0
+                && track.getDuration() <= maxTrackMillis;
+    }
+
+    private Path fileOf(String key) {
+        return directory.resolve(key + SUFFIX);
+    }
+
+    private static String keyOf(AudioTrack track) {
+        String raw = track.getSourceManager().getSourceName() + ":" + track.getIdentifier();
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(raw.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static FileTime lastModified(Path p) {
+        try {
+            return Files.getLastModifiedTime(p);
+        } catch (IOException _) {
+            return FileTime.fromMillis(0);
+        }
+    }
+
+    private static void touch(Path p) {
+        try {
+            Files.setLastModifiedTime(p, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException _) {
+            // LRU order across restarts is best effort
+        }
+    }
+
+    // ==================== RECORDER ====================
+
+    /**
+     * Captures the Opus frames of the playing track for one guild. Frames arrive on the audio
+     * send thread, track events on the player threads; the monitor is uncontended in practice.
+     */
+    public final class Recorder extends AudioEventAdapter {
+        private AudioTrack track;
+        private ByteArrayOutputStream buffer;
+        private int frameCount;
+        private long lastTimecode;
+        // Bytes of this recording counted against the shared budget
+        private long reserved;
+
+        @Override
+        public synchronized void onTrackStart(AudioPlayer player, AudioTrack started) {
+            if (started instanceof CachedOpusTrack || !isCacheable(started) || started.getPosition() > 0) {
+                reset();
+                return;
+            }
+            reset();
+            track = started;
+            buffer = new ByteArrayOutputStream(64 * 1024);
+            lastTimecode = -1;
+        }
+
+        /** Called for every frame handed to Discord. */
+        public synchronized void onFrame(AudioFrame frame) {
+            if (buffer == null || frame.isTerminator() || !(frame.getFormat() instanceof OpusAudioDataFormat)) return;
+
+            // A jump in timecode means the listener seeked; the recording would not be the whole track
+            long timecode = frame.getTimecode();
+            if (lastTimecode >= 0 && (timecode < lastTimecode || timecode - lastTimecode > 1000)) {
+                reset();
+                return;
+            }
+            lastTimecode = timecode;
+
+            byte[] data = frame.getData();
+            int bytes = 2 + data.length;
+            if (recordingBytes.addAndGet(bytes) > maxRecordingBytes) {
+                recordingBytes.addAndGet(-bytes);
+                abandoned.incrementAndGet();
+                reset();
+                return;
+            }
+            reserved += bytes;
+            buffer.write((data.length >>> 8) & 0xFF);
+            buffer.write(data.length & 0xFF);
+            buffer.write(data, 0, data.length);
+            frameCount++;
+        }
+
+        @Override
+        public synchronized void onTrackEnd(AudioPlayer player, AudioTrack ended, AudioTrackEndReason reason) {
+            if (track == null) return;
+            // Underruns drop frames; only keep recordings that cover (almost) the whole track
+            boolean complete = frameCount * 20L >= track.getDuration() * 95 / 100;
+            if (buffer != null && ended == track && reason == AudioTrackEndReason.FINISHED && complete) {
+                String key = keyOf(track);
+                byte[] frames = buffer.toByteArray();
+                int count = frameCount;
+                long held = reserved;
+                // The budget is released once the frames are on disk, not when the recorder lets go
+                reserved = 0;
+                writer.execute(() -> {
+                    try {
+                        store(key, frames, count);
+                    } finally {
+                        recordingBytes.addAndGet(-held);
+                    }
+                });
+            }
+            reset();
+        }
+
+        private void reset() {
+            recordingBytes.addAndGet(-reserved);
+            reserved = 0;
+            track = null;
+            buffer = null;
+            frameCount = 0;
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package group.worldstandard.pudel.plugin.cache;
+
+import java.net.URI;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Remembers the playback URL and format LavaPlayer resolved for a track identifier.
+ *
+ * <p>Entries expire at the upstream {@code expire=} timestamp carried by the URL (minus a
+ * safety margin) and are dropped explicitly when the CDN answers 403. The map is bounded
+ * and evicts the least recently used identifier.
+ */
+public class StreamUrlCache {
+
+    private static final long EXPIRY_MARGIN_SECONDS = 60;
+    private static final long DEFAULT_LIFETIME_SECONDS = 3 * 3600;
+
+    /**
+     * A resolved stream.
+     *
+     * @param contentType  MIME type reported by the CDN, used to pick the container reader
+     * @param contentLength total stream length in bytes, or {@code -1} if unknown
+     */
+    public record ResolvedStream(URI uri, String contentType, long contentLength, Instant expiresAt) {
+        public boolean isExpired() { return Instant.now().isAfter(expiresAt); }
+        public boolean isWebm() { return contentType != null && contentType.contains("webm"); }
+    }
+
+    private final Map<String, ResolvedStream> entries;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    public StreamUrlCache(int maxEntries) {
+        this.entries = new LinkedHashMap<>(64, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, ResolvedStream> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    public synchronized ResolvedStream get(String identifier) {
+        ResolvedStream stream = entries.get(identifier);
+        if (stream != null && stream.isExpired()) {
+            entries.remove(identifier);
+            stream = null;
+        }
+        (stream != null ? hits : misses).incrementAndGet();
+        return stream;
+    }
+
+    /**
+     * Records the stream a track resolved to. Range parameters are stripped so the
+     * URL can be reopened from any offset.
+     */
+    public void put(String identifier, URI uri, String contentType) {
+        Map<String, String> params = QueryParams.parse(uri.getRawQuery());
+        long contentLength = parseLong(params.get("clen"), -1);
+        long expire = parseLong(params.get("expire"), Instant.now().getEpochSecond() + DEFAULT_LIFETIME_SECONDS);
+        Instant expiresAt = Instant.ofEpochSecond(expire - EXPIRY_MARGIN_SECONDS);
+        if (Instant.now().isAfter(expiresAt)) return;
+
+        URI base = QueryParams.without(uri, "range", "rn", "rbuf");
+        ResolvedStream stream = new ResolvedStream(base, contentType, contentLength, expiresAt);
+        synchronized (this) {
+            entries.put(identifier, stream);
+        }
+    }
+
+    public void invalidate(String identifier) {
+        boolean removed;
+        synchronized (this) {
+            removed = entries.remove(identifier) != null;
+        }
+        if (removed) invalidations.incrementAndGet();
+    }
+
+    public synchronized int size() { return entries.size(); }
+    public long getHits() { return hits.get(); }
+    public long getMisses() { return misses.get(); }
+    public long getInvalidations() { return invalidations.get(); }
+
+    public double getHitRatio() {
+        long h = hits.get(), total = h + misses.get();
+        return total == 0 ? 0 : (double) h / total;
+    }
+
+    public String describe() {
+        return "Stream URL cache: %d entries, %d hits, %d misses (hit ratio %.1f%%), %d dropped after a 403".formatted(
+                size(), getHits(), getMisses(), getHitRatio() * 100, getInvalidations());
+    }
+
+    private static long parseLong(String value, long def) {
+        if (value == null) return def;
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException _) {
+            return def;
+        }
+    }
+
+    /** Tiny query-string helper; values are kept raw because they are only copied back verbatim. */
+    private static final class QueryParams {
+        static Map<String, String> parse(String rawQuery) {
+            Map<String, String> params = new LinkedHashMap<>();
+            if (rawQuery == null) return params;
+            for (String pair : rawQuery.split("&")) {
+                int eq = pair.indexOf('=');
+                if (eq > 0) params.put(pair.substring(0, eq), pair.substring(eq + 1));
+            }
+            return params;
+        }
+
+        static URI without(URI uri, String... names) {
+            String rawQuery = uri.getRawQuery();
+            if (rawQuery == null) return uri;
+            StringBuilder sb = new StringBuilder();
+            outer:
+            for (String pair : rawQuery.split("&")) {
+                for (String name : names) {
+                    if (pair.startsWith(name + "=")) continue outer;
+                }
+                if (!sb.isEmpty()) sb.append('&');
+                sb.append(pair);
+            }
+            String s = uri.toString();
+            int q = s.indexOf('?');
+            return URI.create(s.substring(0, q) + (sb.isEmpty() ? "" : "?" + sb));
+        }
+    }
+}
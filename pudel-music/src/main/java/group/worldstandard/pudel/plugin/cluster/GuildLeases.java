@@ -0,0 +1,209 @@
+package group.worldstandard.pudel.plugin.cluster;
+
+import group.worldstandard.pudel.api.PluginContext;
+import group.worldstandard.pudel.api.database.PluginRepository;
+import group.worldstandard.pudel.plugin.entity.GuildLease;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongConsumer;
+
+/**
+ * Ownership of guild queues when several bot instances share one database.
+ *
+ * <p>An instance only writes a guild's {@code music_queue} rows while it holds the guild's row in
+ * {@code music_guild_lease}. The heartbeat pushes the expiry of every held lease forward three
+ * times per lease period; a lease left to expire belongs to a dead or stuck instance and is taken
+ * over by the next instance asked to play music in that guild.
+ *
+ * <p>Claims are compare-and-set on the row itself. {@code guild_id} is unique, so of two instances
+ * inserting a guild's first lease only one insert is accepted. Taking over deletes the expired row
+ * by its ID and inserts a fresh one: an instance that saw the same expired row finds it already
+ * gone and has its insert refused, so a takeover succeeds only if the row is still the one that
+ * was seen to expire. A held lease is renewed in place only while it is well clear of its expiry,
+ * where no other instance may touch it; closer to the expiry it is claimed again like any other.
+ *
+ * <p>{@link #owns} is answered from memory and turns false a sixth of the lease period before the
+ * stored expiry, so an instance whose heartbeat stalls stops writing before anyone may take over.
+ * Instance clocks must agree to well within that margin.
+ */
+public class GuildLeases {
+
+    private final PluginContext context;
+    private final PluginRepository<GuildLease> repo;
+    private final String instanceId;
+    private final long leaseMs;
+    private final LongConsumer onLost;
+
+    // Guild id -> local deadline after which this instance no longer writes the guild's queue
+    private final Map<Long, Long> held = new ConcurrentHashMap<>();
+
+    private final AtomicLong acquired = new AtomicLong();
+    private final AtomicLong takenOver = new AtomicLong();
+    private final AtomicLong refused = new AtomicLong();
+    private final AtomicLong lost = new AtomicLong();
+
+    /**
+     * @param instanceId this instance's name in the lease table; must differ between instances
+     * @param onLost     called with a guild whose lease was found held by another instance
+     */
+    public GuildLeases(PluginContext context, PluginRepository<GuildLease> repo, String instanceId,
+                       long leaseMs, LongConsumer onLost) {
+        this.context = context;
+        this.repo = repo;
+        this.instanceId = instanceId;
+        this.leaseMs = leaseMs;
+        this.onLost = onLost;
+    }
+
+    /** A name unique to this process, for when none is configured. */
+    public static String defaultInstanceId() {
+        String host = System.getenv("HOSTNAME");
+        String prefix = host != null && !host.isBlank() ? host : "pudel";
+        return prefix + "-" + ProcessHandle.current().pid() + "-" + UUID.randomUUID().toString().substring(0, 8);
+    }
+
+    public String getInstanceId() { return instanceId; }
+
+    /** How often {@link #heartbeat} should run to keep held leases alive. */
+    public long getHeartbeatMs() { return Math.max(1, leaseMs / 3); }
+
+    /** Whether this instance may write the guild's queue right now. */
+    public boolean owns(long guildId) {
+        Long deadline = held.get(guildId);
+        return deadline != null && System.currentTimeMillis() < deadline;
+    }
+
+    /**
+     * Claims the guild for this instance: renews a lease it already holds, creates a missing one
+     * or takes over an expired one. Returns {@code false} while another instance holds it.
+     */
+    public boolean acquire(long guildId) {
+        if (owns(guildId)) return true;
+
+        long now = System.currentTimeMillis();
+        GuildLease lease = leaseRow(guildId);
+        boolean foreign = lease != null && !instanceId.equals(lease.getOwner());
+        if (foreign && expiresAt(lease) > now) {
+            refused.incrementAndGet();
+            return false;
+        }
+        if (!renewOrClaim(guildId, lease, now)) {
+            refused.incrementAndGet();
+            return false;
+        }
+        if (foreign) {
+            takenOver.incrementAndGet();
+            context.log("info", "Took over the music lease of guild %d from %s".formatted(guildId, lease.getOwner()));
+        } else {
+            acquired.incrementAndGet();
+        }
+        return true;
+    }
+
+    /** Renews every held lease, dropping the guilds another instance has claimed meanwhile. */
+    public void heartbeat() {
+        for (Long guildId : held.keySet()) {
+            try {
+                GuildLease lease = leaseRow(guildId);
+                if (lease == null || !instanceId.equals(lease.getOwner())
+                        || !renewOrClaim(guildId, lease, System.currentTimeMillis())) {
+                    lose(guildId);
+                }
+            } catch (RuntimeException e) {
+                // Left to run out locally; the next heartbeat tries again
+                context.log("warn", "Music lease heartbeat failed for guild %d: %s".formatted(guildId, e.getMessage()));
+            }
+        }
+    }
+
+    /** Gives the guild up, e.g. once the bot left voice there, so another instance may claim it at once. */
+    public void release(long guildId) {
+        if (held.remove(guildId) == null) return;
+        GuildLease lease = leaseRow(guildId);
+        if (lease != null && instanceId.equals(lease.getOwner())) repo.deleteById(lease.getId());
+    }
+
+    public void releaseAll() {
+        for (Long guildId : held.keySet()) {
+            try {
+                release(guildId);
+            } catch (RuntimeException e) {
+                context.log("warn", "Failed to release music lease of guild %d: %s".formatted(guildId, e.getMessage()));
+            }
+        }
+    }
+
+    public String describe() {
+        return "Guild leases (%s): %d held, %d acquired, %d taken over, %d refused, %d lost"
+                .formatted(instanceId, held.size(), acquired.get(), takenOver.get(), refused.get(), lost.get());
+    }
+
+    // ==================== INTERNALS ====================
+
+    private GuildLease leaseRow(long guildId) {
+        List<GuildLease> rows = repo.query().where("guild_id", guildId).limit(1).list();
+        return rows.isEmpty() ? null : rows.getFirst();
+    }
+
+    /**
+     * Extends {@code seen}, this instance's lease, in place while nobody else may take it over;
+     * otherwise replaces {@code seen}, or claims a guild without a lease, through the unique index.
+     * Returns whether this instance holds the guild afterwards.
+     */
+    private boolean renewOrClaim(long guildId, GuildLease seen, long now) {
+        if (seen != null && instanceId.equals(seen.getOwner()) && expiresAt(seen) - leaseMs / 6 > now) {
+            seen.setHeartbeatAt(now);
+            seen.setExpiresAt(now + leaseMs);
+            repo.save(seen);
+            held.put(guildId, localDeadline(now));
+            return true;
+        }
+
+        if (seen != null) repo.deleteById(seen.getId());
+        GuildLease claim = new GuildLease();
+        claim.setGuildId(guildId);
+        claim.setOwner(instanceId);
+        claim.setHeartbeatAt(now);
+        claim.setExpiresAt(now + leaseMs);
+        try {
+            repo.save(claim);
+        } catch (RuntimeException _) {
+            // Refused by the unique guild_id: another instance claimed the guild first
+            return false;
+        }
+        held.put(guildId, localDeadline(now));
+        return true;
+    }
+
+    private static long expiresAt(GuildLease lease) {
+        return lease.getExpiresAt() != null ? lease.getExpiresAt() : 0;
+    }
+
+    /**
+     * Keeps the oldest lease row of every guild so {@code guild_id} can be made unique; the rows
+     * removed are claims that lost to it.
+     */
+    public static void dropDuplicates(PluginRepository<GuildLease> repo) {
+        Set<Long> seen = new HashSet<>();
+        for (GuildLease lease : repo.query().orderBy("id").list()) {
+            if (!seen.add(lease.getGuildId())) repo.deleteById(lease.getId());
+        }
+    }
+
+    private void lose(long guildId) {
+        if (held.remove(guildId) == null) return;
+        lost.incrementAndGet();
+        context.log("warn", "Music lease of guild %d is held by another instance, stopping playback here".formatted(guildId));
+        onLost.accept(guildId);
+    }
+
+    private long localDeadline(long renewedAt) {
+        return renewedAt + leaseMs - leaseMs / 6;
+    }
+}
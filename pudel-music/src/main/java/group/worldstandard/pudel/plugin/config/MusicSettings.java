@@ -0,0 +1,161 @@
+package group.worldstandard.pudel.plugin.config;
+
+/**
+ * Deployment-level tuning for the music plugin.
+ *
+ * <p>Values are read once on enable from JVM system properties prefixed with
+ * {@code pudel.music.}, e.g. {@code -Dpudel.music.hedge.enabled=true}.
+ */
+public final class MusicSettings {
+
+    private static final String PREFIX = "pudel.music.";
+
+    // ==================== TRACK RESOLUTION ====================
+    public final boolean hedgeEnabled;
+    public final double hedgePercentile;
+    public final long hedgeMinDelayMs;
+    public final long hedgeInitialDelayMs;
+    public final boolean playlistStreaming;
+    public final int playlistChunkSize;
+
+    // ==================== YOUTUBE ====================
+    public final boolean poTokenEnabled;
+    public final String poTokenOrigin;
+    public final long poTokenTtlMinutes;
+    public final long poTokenRefreshAheadMinutes;
+    public final String cipherMode;
+    public final String cipherRemoteUrl;
+    public final String cipherRemotePassword;
+    public final boolean cipherRemoteFallback;
+
+    // ==================== CACHES ====================
+    public final boolean streamUrlCacheEnabled;
+    public final int streamUrlCacheSize;
+    public final boolean opusCacheEnabled;
+    public final String opusCacheDirectory;
+    public final long opusCacheMaxBytes;
+    public final long opusCacheMaxTrackSeconds;
+    public final long opusCacheRecordingBytes;
+
+    // ==================== MUSIC BOX ====================
+    public final long uiEditIntervalMs;
+    public final boolean uiProgressUpdates;
+    public final long uiProgressIntervalMs;
+    public final long sessionTtlMinutes;
+    public final int sessionMaxCount;
+
+    // ==================== RETENTION ====================
+    public final long historyRetentionDays;
+    public final int historyMaxRowsPerGuild;
+    public final int historyRetentionBatchSize;
+    public final long historyRetentionIntervalMinutes;
+    public final boolean historyArchiveEnabled;
+    public final String historyArchiveDirectory;
+
+    // ==================== METRICS ====================
+    public final boolean metricsJmx;
+
+    // ==================== CLUSTER ====================
+    public final boolean leasesEnabled;
+    public final String instanceId;
+    public final long leaseSeconds;
+
+    // ==================== AUDIO NODES ====================
+    public final String audioNodes;
+    public final String nodesSecret;
+
+    private MusicSettings() {
+        this.hedgeEnabled = bool("hedge.enabled", false);
+        this.hedgePercentile = decimal("hedge.percentile", 0.95);
+        this.hedgeMinDelayMs = number("hedge.min-delay-ms", 750);
+        this.hedgeInitialDelayMs = number("hedge.initial-delay-ms", 3000);
+        this.playlistStreaming = bool("playlist.streaming", true);
+        this.playlistChunkSize = (int) number("playlist.chunk-size", 25);
+
+        this.poTokenEnabled = bool("potoken.enabled", false);
+        this.poTokenOrigin = text("potoken.origin", "https://www.youtube.com");
+        this.poTokenTtlMinutes = number("potoken.ttl-minutes", 360);
+        this.poTokenRefreshAheadMinutes = number("potoken.refresh-ahead-minutes", 15);
+        this.cipherMode = text("cipher.mode", "local");
+        this.cipherRemoteUrl = text("cipher.remote-url", "https://cipher.kikkia.dev/");
+        this.cipherRemotePassword = text("cipher.remote-password", "");
+        this.cipherRemoteFallback = bool("cipher.remote-fallback", true);
+
+        this.streamUrlCacheEnabled = bool("stream-cache.enabled", false);
+        this.streamUrlCacheSize = (int) number("stream-cache.max-entries", 2048);
+        this.opusCacheEnabled = bool("opus-cache.enabled", false);
+        this.opusCacheDirectory = text("opus-cache.directory", "cache/pudel-music/opus");
+        this.opusCacheMaxBytes = number("opus-cache.max-mb", 2048) * 1024 * 1024;
+        this.opusCacheMaxTrackSeconds = number("opus-cache.max-track-seconds", 900);
+        this.opusCacheRecordingBytes = number("opus-cache.recording-mb", 64) * 1024 * 1024;
+
+        this.uiEditIntervalMs = number("ui.edit-interval-ms", 1000);
+        this.uiProgressUpdates = bool("ui.progress-updates", true);
+        this.uiProgressIntervalMs = number("ui.progress-interval-ms", 10000);
+        this.sessionTtlMinutes = number("session.ttl-minutes", 15);
+        this.sessionMaxCount = (int) number("session.max-count", 10000);
+
+        // History is only ever deleted when an operator asks for it
+        this.historyRetentionDays = number("history.retention-days", 0);
+        this.historyMaxRowsPerGuild = (int) number("history.max-rows-per-guild", 0);
+        this.historyRetentionBatchSize = (int) number("history.retention-batch-size", 500);
+        this.historyRetentionIntervalMinutes = number("history.retention-interval-minutes", 60);
+        this.historyArchiveEnabled = bool("history.archive.enabled", false);
+        this.historyArchiveDirectory = text("history.archive.directory", "archive/pudel-music/history");
+
+        this.metricsJmx = bool("metrics.jmx", true);
+
+        this.leasesEnabled = bool("cluster.leases.enabled", false);
+        this.instanceId = text("cluster.instance-id", "");
+        this.leaseSeconds = Math.max(3, number("cluster.lease-seconds", 30));
+
+        this.audioNodes = text("nodes", "");
+        this.nodesSecret = text("nodes-secret", "");
+    }
+
+    public static MusicSettings load() {
+        return new MusicSettings();
+    }
+
+    /** Whether stream URL ciphers are resolved in-process instead of by the remote cipher service. */
+    public boolean isLocalCipher() {
+        return !"remote".equalsIgnoreCase(cipherMode);
+    }
+
+    /** Whether tracks play on out-of-process audio nodes instead of in this JVM. */
+    public boolean isRemotePlayback() {
+        return !audioNodes.isEmpty();
+    }
+
+    // ==================== UTILITY ====================
+
+    private static boolean bool(String key, boolean def) {
+        String v = System.getProperty(PREFIX + key);
+        return v != null ? Boolean.parseBoolean(v.trim()) : def;
+    }
+
+    private static String text(String key, String def) {
+        String v = System.getProperty(PREFIX + key);
+        return v != null && !v.isBlank() ? v.trim() : def;
+    }
+
+    private static long number(String key, long def) {
+        String v = System.getProperty(PREFIX + key);
+        if (v == null) return def;
+        try {
+            return Long.parseLong(v.trim());
+        } catch (NumberFormatException _) {
+            return def;
+        }
+    }
+
+    private static double decimal(String key, double def) {
+        String v = System.getProperty(PREFIX + key);
+        if (v == null) return def;
+        try {
+            return Double.parseDouble(v.trim());
+        } catch (NumberFormatException _) {
+            return def;
+        }
+    }
+}
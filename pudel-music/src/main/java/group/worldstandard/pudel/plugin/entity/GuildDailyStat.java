@@ -0,0 +1,20 @@
+package group.worldstandard.pudel.plugin.entity;
+
+import group.worldstandard.pudel.api.database.Entity;
+
+@Entity
+public class GuildDailyStat {
+    private Long id;
+    private Long guildId;
+    private Long day;        // UTC epoch day
+    private Integer plays;
+
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+    public Long getGuildId() { return guildId; }
+    public void setGuildId(Long guildId) { this.guildId = guildId; }
+    public Long getDay() { return day; }
+    public void setDay(Long day) { this.day = day; }
+    public Integer getPlays() { return plays; }
+    public void setPlays(Integer plays) { this.plays = plays; }
+}
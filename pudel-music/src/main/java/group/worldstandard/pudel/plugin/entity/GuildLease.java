@@ -0,0 +1,23 @@
+package group.worldstandard.pudel.plugin.entity;
+
+import group.worldstandard.pudel.api.database.Entity;
+
+@Entity
+public class GuildLease {
+    private Long id;
+    private Long guildId;
+    private String owner;
+    private Long expiresAt;
+    private Long heartbeatAt;
+
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+    public Long getGuildId() { return guildId; }
+    public void setGuildId(Long guildId) { this.guildId = guildId; }
+    public String getOwner() { return owner; }
+    public void setOwner(String owner) { this.owner = owner; }
+    public Long getExpiresAt() { return expiresAt; }
+    public void setExpiresAt(Long expiresAt) { this.expiresAt = expiresAt; }
+    public Long getHeartbeatAt() { return heartbeatAt; }
+    public void setHeartbeatAt(Long heartbeatAt) { this.heartbeatAt = heartbeatAt; }
+}
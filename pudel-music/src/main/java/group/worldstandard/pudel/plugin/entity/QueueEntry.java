@@ -11,6 +11,9 @@ public class QueueEntry {
     private String status;
     private String title;
     private Boolean isLooped;
+    private Long fairRank;
+    private Long durationMs;
+    private Boolean fromBundle;
 
     public Long getId() { return id; }
     public void setId(Long id) { this.id = id; }
@@ -26,5 +29,11 @@ public class QueueEntry {
     public void setTitle(String title) { this.title = title; }
     public Boolean getIsLooped() { return isLooped; }
     public void setIsLooped(Boolean looped) { isLooped = looped; }
+    public Long getFairRank() { return fairRank; }
+    public void setFairRank(Long fairRank) { this.fairRank = fairRank; }
+    public Long getDurationMs() { return durationMs; }
+    public void setDurationMs(Long durationMs) { this.durationMs = durationMs; }
+    public Boolean getFromBundle() { return fromBundle; }
+    public void setFromBundle(Boolean fromBundle) { this.fromBundle = fromBundle; }
 }
 
@@ -0,0 +1,29 @@
+package group.worldstandard.pudel.plugin.entity;
+
+import group.worldstandard.pudel.api.database.Entity;
+
+@Entity
+public class SavedPlaylist {
+    private Long id;
+    private Long guildId;   // 0 for playlists private to the owner
+    private Long userId;
+    private String name;
+    private Integer trackCount;
+    private String bundle;  // TrackBundle encoding of the tracks
+    private Long createdAt;
+
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+    public Long getGuildId() { return guildId; }
+    public void setGuildId(Long guildId) { this.guildId = guildId; }
+    public Long getUserId() { return userId; }
+    public void setUserId(Long userId) { this.userId = userId; }
+    public String getName() { return name; }
+    public void setName(String name) { this.name = name; }
+    public Integer getTrackCount() { return trackCount; }
+    public void setTrackCount(Integer trackCount) { this.trackCount = trackCount; }
+    public String getBundle() { return bundle; }
+    public void setBundle(String bundle) { this.bundle = bundle; }
+    public Long getCreatedAt() { return createdAt; }
+    public void setCreatedAt(Long createdAt) { this.createdAt = createdAt; }
+}
@@ -0,0 +1,26 @@
+package group.worldstandard.pudel.plugin.entity;
+
+import group.worldstandard.pudel.api.database.Entity;
+
+@Entity
+public class TrackDailyStat {
+    private Long id;
+    private Long guildId;
+    private Long day;        // UTC epoch day
+    private String trackKey; // Track URL, or title when there is none
+    private String trackTitle;
+    private Integer plays;
+
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+    public Long getGuildId() { return guildId; }
+    public void setGuildId(Long guildId) { this.guildId = guildId; }
+    public Long getDay() { return day; }
+    public void setDay(Long day) { this.day = day; }
+    public String getTrackKey() { return trackKey; }
+    public void setTrackKey(String trackKey) { this.trackKey = trackKey; }
+    public String getTrackTitle() { return trackTitle; }
+    public void setTrackTitle(String trackTitle) { this.trackTitle = trackTitle; }
+    public Integer getPlays() { return plays; }
+    public void setPlays(Integer plays) { this.plays = plays; }
+}
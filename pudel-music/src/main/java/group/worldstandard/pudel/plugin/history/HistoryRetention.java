@@ -0,0 +1,227 @@
+package group.worldstandard.pudel.plugin.history;
+
+import group.worldstandard.pudel.api.PluginContext;
+import group.worldstandard.pudel.api.database.PluginRepository;
+import group.worldstandard.pudel.plugin.entity.HistoryEntry;
+import group.worldstandard.pudel.plugin.entity.QueueEntry;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongConsumer;
+import java.util.function.LongPredicate;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Keeps {@code music_history} and the PLAYED rows of {@code music_queue} small.
+ *
+ * <p>Each sweep walks the guilds that have played music since the plugin started, one bounded
+ * batch at a time on the background executor, with a short pause between batches so playback
+ * writes are never stuck behind a long purge. History rows older than the retention age or past
+ * the per-guild row cap are deleted by primary key, optionally after being appended to a gzip
+ * segment per month. PLAYED queue rows are dropped once the guild is no longer looping its queue.
+ */
+public class HistoryRetention {
+
+    private static final long BATCH_PAUSE_MS = 250;
+
+    private final PluginContext context;
+    private final PluginRepository<HistoryEntry> historyRepo;
+    private final PluginRepository<QueueEntry> queueRepo;
+    private final ScheduledExecutorService timer;
+    private final ExecutorService background;
+    private final LongPredicate queueInUse;
+    private final LongConsumer onPurged;
+
+    private final long retentionSeconds;
+    private final int maxRows;
+    private final int batchSize;
+    private final Path archiveDirectory;
+
+    private final Set<Long> guilds = ConcurrentHashMap.newKeySet();
+    private final ArrayDeque<Long> pending = new ArrayDeque<>();
+    private boolean running = false;
+
+    private final AtomicLong historyDeleted = new AtomicLong();
+    private final AtomicLong historyArchived = new AtomicLong();
+    private final AtomicLong queueDeleted = new AtomicLong();
+
+    /**
+     * @param retentionDays    history rows older than this are removed; {@code 0} keeps them by age
+     * @param maxRows          newest rows kept per guild; {@code 0} disables the cap
+     * @param archiveDirectory where monthly segments are written, or {@code null} to delete without archiving
+     * @param queueInUse       whether a guild still needs its PLAYED queue rows, i.e. it loops the queue
+     * @param onPurged         called with the guild after rows of it were deleted, so cached views are rebuilt
+     */
+    public HistoryRetention(PluginContext context, PluginRepository<HistoryEntry> historyRepo,
+                            PluginRepository<QueueEntry> queueRepo, ScheduledExecutorService timer,
+                            ExecutorService background, LongPredicate queueInUse, LongConsumer onPurged,
+                            long retentionDays, int maxRows, int batchSize, Path archiveDirectory) {
+        this.context = context;
+        this.historyRepo = historyRepo;
+        this.queueRepo = queueRepo;
+        this.timer = timer;
+        this.background = background;
+        this.queueInUse = queueInUse;
+        this.onPurged = onPurged;
+        this.retentionSeconds = TimeUnit.DAYS.toSeconds(Math.max(0, retentionDays));
+        this.maxRows = Math.max(0, maxRows);
+        this.batchSize = Math.max(1, batchSize);
+        this.archiveDirectory = archiveDirectory;
+    }
+
+    /** Includes the guild in future sweeps. */
+    public void track(long guildId) {
+        guilds.add(guildId);
+    }
+
+    /** Starts a sweep over every tracked guild unless one is still running. */
+    public void sweep() {
+        synchronized (this) {
+            if (running || guilds.isEmpty()) return;
+            running = true;
+            pending.addAll(guilds);
+        }
+        background.execute(this::step);
+    }
+
+    public long getHistoryDeleted() { return historyDeleted.get(); }
+    public long getHistoryArchived() { return historyArchived.get(); }
+    public long getQueueDeleted() { return queueDeleted.get(); }
+
+    public String describe() {
+        return "History retention: %d history rows deleted (%d archived), %d played queue rows deleted".formatted(
+                getHistoryDeleted(), getHistoryArchived(), getQueueDeleted());
+    }
+
+    // ==================== SWEEP ====================
+
+    private void step() {
+        Long guildId;
+        synchronized (this) {
+            guildId = pending.peekFirst();
+            if (guildId == null) {
+                running = false;
+                return;
+            }
+        }
+
+        boolean more;
+        try {
+            more = purgeHistory(guildId) | purgeQueue(guildId);
+        } catch (IOException | RuntimeException e) {
+            context.log("warn", "History retention for guild %d failed: %s".formatted(guildId, e.getMessage()));
+            more = false;
+        }
+
+        synchronized (this) {
+            if (!more) pending.pollFirst();
+        }
+        try {
+            timer.schedule(() -> background.execute(this::step), BATCH_PAUSE_MS, TimeUnit.MILLISECONDS);
+        } catch (RuntimeException _) {
+            // Executors are shutting down; the next enable starts over
+        }
+    }
+
+    /** Deletes one batch of expired history rows; returns whether the guild may have more. */
+    private boolean purgeHistory(long guildId) throws IOException {
+        if (retentionSeconds == 0 && maxRows == 0) return false;
+
+        // Oldest rows first, one batch at a time; whatever is past the cap is always at this end
+        long overCap = maxRows > 0
+                ? Math.max(0, historyRepo.query().where("guild_id", guildId).count() - maxRows)
+                : 0;
+        List<HistoryEntry> rows = historyRepo.query()
+                .where("guild_id", guildId)
+                .orderBy("id")
+                .limit(batchSize)
+                .list();
+
+        long cutoff = retentionSeconds > 0 ? Instant.now().getEpochSecond() - retentionSeconds : Long.MIN_VALUE;
+        List<HistoryEntry> expired = new ArrayList<>();
+        for (int i = 0; i < rows.size(); i++) {
+            HistoryEntry row = rows.get(i);
+            boolean tooOld = row.getPlayedAt() != null && row.getPlayedAt() < cutoff;
+            if (i >= overCap && !tooOld) break;
+            expired.add(row);
+        }
+        if (expired.isEmpty()) return false;
+
+        if (archiveDirectory != null) {
+            archive(guildId, expired);
+            historyArchived.addAndGet(expired.size());
+        }
+        for (HistoryEntry row : expired) historyRepo.deleteById(row.getId());
+        historyDeleted.addAndGet(expired.size());
+        onPurged.accept(guildId);
+        return expired.size() == batchSize;
+    }
+
+    /** Deletes one batch of PLAYED queue rows unless the guild loops its queue. */
+    private boolean purgeQueue(long guildId) {
+        if (queueInUse.test(guildId)) return false;
+        List<QueueEntry> played = queueRepo.query()
+                .where("guild_id", guildId)
+                .where("status", "PLAYED")
+                .orderBy("id")
+                .limit(batchSize)
+                .list();
+        for (QueueEntry entry : played) queueRepo.deleteById(entry.getId());
+        queueDeleted.addAndGet(played.size());
+        if (!played.isEmpty()) onPurged.accept(guildId);
+        return played.size() == batchSize;
+    }
+
+    // ==================== ARCHIVE ====================
+
+    /**
+     * Appends rows to {@code <guild>/history-<yyyy-MM>.tsv.gz}. Every batch adds one gzip member,
+     * which {@code zcat} and {@link java.util.zip.GZIPInputStream} read back as a single stream.
+     */
+    private void archive(long guildId, List<HistoryEntry> rows) throws IOException {
+        Map<YearMonth, List<HistoryEntry>> byMonth = new TreeMap<>();
+        for (HistoryEntry row : rows) {
+            long at = row.getPlayedAt() != null ? row.getPlayedAt() : 0;
+            YearMonth month = YearMonth.from(Instant.ofEpochSecond(at).atZone(ZoneOffset.UTC));
+            byMonth.computeIfAbsent(month, _ -> new ArrayList<>()).add(row);
+        }
+
+        Path dir = archiveDirectory.resolve(Long.toString(guildId));
+        Files.createDirectories(dir);
+        for (var month : byMonth.entrySet()) {
+            Path file = dir.resolve("history-" + month.getKey() + ".tsv.gz");
+            try (Writer out = new BufferedWriter(new OutputStreamWriter(new GZIPOutputStream(
+                    Files.newOutputStream(file, StandardOpenOption.CREATE, StandardOpenOption.APPEND)),
+                    StandardCharsets.UTF_8))) {
+                for (HistoryEntry row : month.getValue()) {
+                    out.write(row.getId() + "\t" + row.getUserId() + "\t" + row.getPlayedAt() + "\t"
+                            + clean(row.getTrackTitle()) + "\t" + clean(row.getTrackUrl()) + "\n");
+                }
+            }
+        }
+    }
+
+    private static String clean(String value) {
+        return value == null ? "" : value.replace('\t', ' ').replace('\n', ' ').replace('\r', ' ');
+    }
+}
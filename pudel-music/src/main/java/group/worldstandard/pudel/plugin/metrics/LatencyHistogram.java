@@ -0,0 +1,107 @@
+package group.worldstandard.pudel.plugin.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histogram over fixed 1-2-5 buckets, from 1 to 50,000,000 in whatever unit the caller
+ * records in, plus one overflow bucket.
+ *
+ * <p>Recording is a bucket lookup and two {@link LongAdder} increments, with no lock and no
+ * allocation, and every sample since startup is counted. Percentiles are reported as the upper
+ * bound of the bucket they fall in, so they are within one bucket step of the exact value.
+ */
+public class LatencyHistogram {
+
+    private static final long[] BOUNDS = bounds();
+
+    private final LongAdder[] buckets = new LongAdder[BOUNDS.length + 1];
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    public LatencyHistogram() {
+        for (int i = 0; i < buckets.length; i++) buckets[i] = new LongAdder();
+    }
+
+    private static long[] bounds() {
+        long[] bounds = new long[24];
+        long decade = 1;
+        for (int i = 0; i < bounds.length; i += 3, decade *= 10) {
+            bounds[i] = decade;
+            bounds[i + 1] = 2 * decade;
+            bounds[i + 2] = 5 * decade;
+        }
+        return bounds;
+    }
+
+    public void record(long value) {
+        int lo = 0;
+        int hi = BOUNDS.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (BOUNDS[mid] < value) lo = mid + 1; else hi = mid;
+        }
+        buckets[lo].increment();
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    public long getCount() {
+        long count = 0;
+        for (LongAdder bucket : buckets) count += bucket.sum();
+        return count;
+    }
+
+    public long getSum() { return sum.sum(); }
+    public long getMax() { return max.get(); }
+
+    /**
+     * Upper bound of the bucket holding the {@code p} percentile, capped at the largest value
+     * recorded, or {@code -1} when nothing has been recorded.
+     */
+    public long percentile(double p) {
+        long[] counts = new long[buckets.length];
+        long total = 0;
+        for (int i = 0; i < counts.length; i++) total += counts[i] = buckets[i].sum();
+        if (total == 0) return -1;
+
+        long rank = Math.max(1, (long) Math.ceil(p * total));
+        long seen = 0;
+        for (int i = 0; i < BOUNDS.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) return Math.min(BOUNDS[i], getMax());
+        }
+        return getMax();
+    }
+
+    /**
+     * Cumulative counts keyed by bucket upper bound, up to the highest non-empty bucket; samples
+     * past the last bound are only in {@link #getCount()}.
+     */
+    public Map<Long, Long> cumulativeBuckets() {
+        Map<Long, Long> out = new LinkedHashMap<>();
+        int last = -1;
+        long[] counts = new long[BOUNDS.length];
+        for (int i = 0; i < BOUNDS.length; i++) {
+            counts[i] = buckets[i].sum();
+            if (counts[i] > 0) last = i;
+        }
+        long seen = 0;
+        for (int i = 0; i <= last; i++) {
+            seen += counts[i];
+            out.put(BOUNDS[i], seen);
+        }
+        return out;
+    }
+
+    public String describe(String name) {
+        return describe(name, "ms");
+    }
+
+    public String describe(String name, String unit) {
+        return "%s: %d samples, p50 %d %s, p95 %d %s".formatted(
+                name, getCount(), percentile(0.50), unit, percentile(0.95), unit);
+    }
+}
@@ -0,0 +1,47 @@
+package group.worldstandard.pudel.plugin.metrics;
+
+import java.util.Arrays;
+
+/**
+ * Keeps the most recent latency samples in a ring buffer and reports percentiles over them.
+ * Samples have whatever unit the caller records in; milliseconds unless stated otherwise.
+ */
+public class LatencySampler {
+
+    private final long[] samples;
+    private int next = 0;
+    private int filled = 0;
+    private long count = 0;
+
+    public LatencySampler(int capacity) {
+        this.samples = new long[Math.max(1, capacity)];
+    }
+
+    public synchronized void record(long millis) {
+        samples[next] = millis;
+        next = (next + 1) % samples.length;
+        if (filled < samples.length) filled++;
+        count++;
+    }
+
+    /** Total samples recorded, including those already rotated out of the buffer. */
+    public synchronized long getCount() { return count; }
+
+    /** Percentile over the buffered samples, or {@code -1} when there are none. */
+    public synchronized long percentile(double p) {
+        if (filled == 0) return -1;
+        long[] sorted = Arrays.copyOf(samples, filled);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(p * filled) - 1;
+        return sorted[Math.clamp(index, 0, filled - 1)];
+    }
+
+    public String describe(String name) {
+        return describe(name, "ms");
+    }
+
+    public String describe(String name, String unit) {
+        return "%s: %d samples, p50 %d %s, p95 %d %s".formatted(
+                name, getCount(), percentile(0.50), unit, percentile(0.95), unit);
+    }
+}
@@ -0,0 +1,226 @@
+package group.worldstandard.pudel.plugin.metrics;
+
+import com.sedmelluq.discord.lavaplayer.player.AudioLoadResultHandler;
+import com.sedmelluq.discord.lavaplayer.tools.FriendlyException;
+import com.sedmelluq.discord.lavaplayer.track.AudioPlaylist;
+import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
+import group.worldstandard.pudel.api.database.PluginRepository;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Counters and latency histograms for track loading, scheduling, database access and audio sending.
+ *
+ * <p>Everything recorded on the 20 ms frame path is a {@link LongAdder} increment; histograms
+ * are only touched once per load, track transition or database call. Readers get a flat attribute
+ * map, which backs both the JMX bean and the {@code /music-stats} view.
+ */
+public class MusicMetrics {
+
+    /** Call count and latency of one repository operation. */
+    public static final class Operation {
+        private final LongAdder calls = new LongAdder();
+        private final LatencyHistogram micros = new LatencyHistogram();
+
+        public long getCalls() { return calls.sum(); }
+        public LatencyHistogram getMicros() { return micros; }
+    }
+
+    private final Map<String, LatencyHistogram> loadLatency = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> loadFailures = new ConcurrentHashMap<>();
+    private final Map<String, Operation> dbOperations = new ConcurrentHashMap<>();
+    private final LatencyHistogram nextTrackMicros = new LatencyHistogram();
+
+    public final LongAdder framesSent = new LongAdder();
+    public final LongAdder framesSilent = new LongAdder();
+
+    private volatile LongSupplier activePlayers = () -> 0;
+    private volatile LongSupplier voiceConnections = () -> 0;
+
+    public void setGauges(LongSupplier activePlayers, LongSupplier voiceConnections) {
+        this.activePlayers = activePlayers;
+        this.voiceConnections = voiceConnections;
+    }
+
+    public void recordNextTrack(long startNanos) {
+        nextTrackMicros.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos));
+    }
+
+    // ==================== TRACK LOADING ====================
+
+    /**
+     * Wraps a load handler so the load's latency is recorded under the source that answered it,
+     * and failures under their reason.
+     */
+    public AudioLoadResultHandler timedLoad(AudioLoadResultHandler delegate) {
+        long start = System.nanoTime();
+        return new AudioLoadResultHandler() {
+            @Override public void trackLoaded(AudioTrack track) {
+                recordLoad(sourceOf(track), start);
+                delegate.trackLoaded(track);
+            }
+
+            @Override public void playlistLoaded(AudioPlaylist playlist) {
+                String source = playlist.getTracks().isEmpty() ? "unknown" : sourceOf(playlist.getTracks().getFirst());
+                recordLoad(source + (playlist.isSearchResult() ? " search" : " playlist"), start);
+                delegate.playlistLoaded(playlist);
+            }
+
+            @Override public void noMatches() {
+                recordLoad("failed", start);
+                recordFailure("no matches");
+                delegate.noMatches();
+            }
+
+            @Override public void loadFailed(FriendlyException exception) {
+                recordLoad("failed", start);
+                recordFailure(reasonOf(exception));
+                delegate.loadFailed(exception);
+            }
+        };
+    }
+
+    public void recordFailure(String reason) {
+        loadFailures.computeIfAbsent(reason, _ -> new LongAdder()).increment();
+    }
+
+    private void recordLoad(String source, long startNanos) {
+        loadLatency.computeIfAbsent(source, _ -> new LatencyHistogram())
+                .record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+    }
+
+    private static String sourceOf(AudioTrack track) {
+        return track.getSourceManager() != null ? track.getSourceManager().getSourceName() : "unknown";
+    }
+
+    /** Severity plus the innermost cause type, which keeps the set of reasons small. */
+    public static String reasonOf(FriendlyException exception) {
+        Throwable root = exception;
+        while (root.getCause() != null && root.getCause() != root) root = root.getCause();
+        String severity = exception.severity != null ? exception.severity.name().toLowerCase(Locale.ROOT) : "unknown";
+        return root == exception ? severity : severity + " " + root.getClass().getSimpleName();
+    }
+
+    // ==================== DATABASE ====================
+
+    /**
+     * Returns a repository that counts and times every call on {@code repo} under
+     * {@code table.method}. Query builders are wrapped too, so their terminal operations such
+     * as {@code list} are timed as {@code table.query.list}.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> PluginRepository<T> instrument(String table, PluginRepository<T> repo) {
+        return (PluginRepository<T>) wrap(PluginRepository.class, repo, table);
+    }
+
+    private Object wrap(Class<?> type, Object target, String prefix) {
+        InvocationHandler handler = new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if (method.getDeclaringClass() == Object.class) return invokeTarget(target, method, args);
+
+                Class<?> returns = method.getReturnType();
+                boolean builderStep = returns.isInstance(target) && returns != Object.class;
+                if (builderStep) {
+                    Object result = invokeTarget(target, method, args);
+                    if (result == target) return proxy;
+                    return returns.isInterface() && result != null ? wrap(returns, result, prefix) : result;
+                }
+                if ("query".equals(method.getName()) && returns.isInterface()) {
+                    return wrap(returns, invokeTarget(target, method, args), prefix + ".query");
+                }
+
+                Operation op = dbOperations.computeIfAbsent(prefix + "." + method.getName(), _ -> new Operation());
+                long start = System.nanoTime();
+                try {
+                    return invokeTarget(target, method, args);
+                } finally {
+                    op.calls.increment();
+                    op.micros.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+                }
+            }
+        };
+        return Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, handler);
+    }
+
+    private static Object invokeTarget(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    // ==================== READING ====================
+
+    public long getActivePlayers() { return activePlayers.getAsLong(); }
+    public long getVoiceConnections() { return voiceConnections.getAsLong(); }
+    public LatencyHistogram getNextTrackMicros() { return nextTrackMicros; }
+    public Map<String, LatencyHistogram> getLoadLatency() { return sorted(loadLatency); }
+    public Map<String, Long> getLoadFailures() {
+        Map<String, Long> out = new LinkedHashMap<>();
+        sorted(loadFailures).forEach((k, v) -> out.put(k, v.sum()));
+        return out;
+    }
+
+    /** Repository operations, most called first. */
+    public List<Map.Entry<String, Operation>> getDbOperations() {
+        return dbOperations.entrySet().stream()
+                .sorted(Comparator.comparingLong((Map.Entry<String, Operation> e) -> e.getValue().getCalls()).reversed())
+                .toList();
+    }
+
+    /**
+     * Every metric as a flat name to value map, e.g. {@code load.youtube.p95_ms}. Load latency
+     * also lists its cumulative buckets, e.g. {@code load.youtube.le_500_ms}.
+     */
+    public Map<String, Long> attributes() {
+        Map<String, Long> out = new LinkedHashMap<>();
+        out.put("players.active", getActivePlayers());
+        out.put("voice.connections", getVoiceConnections());
+        out.put("frames.sent", framesSent.sum());
+        out.put("frames.silent", framesSilent.sum());
+        out.put("next_track.count", nextTrackMicros.getCount());
+        out.put("next_track.p50_us", nextTrackMicros.percentile(0.50));
+        out.put("next_track.p95_us", nextTrackMicros.percentile(0.95));
+        getLoadLatency().forEach((source, s) -> {
+            out.put("load." + source + ".count", s.getCount());
+            out.put("load." + source + ".p50_ms", s.percentile(0.50));
+            out.put("load." + source + ".p95_ms", s.percentile(0.95));
+            out.put("load." + source + ".p99_ms", s.percentile(0.99));
+            s.cumulativeBuckets().forEach((bound, n) -> out.put("load." + source + ".le_" + bound + "_ms", n));
+        });
+        getLoadFailures().forEach((reason, n) -> out.put("load_failures." + reason, n));
+        for (Map.Entry<String, Operation> e : getDbOperations()) {
+            out.put("db." + e.getKey() + ".count", e.getValue().getCalls());
+            out.put("db." + e.getKey() + ".p95_us", e.getValue().getMicros().percentile(0.95));
+        }
+        return out;
+    }
+
+    public String describe() {
+        long sent = framesSent.sum();
+        long silent = framesSilent.sum();
+        return "Music metrics: %d players, %d voice connections, %d frames sent, %d silent, %s".formatted(
+                getActivePlayers(), getVoiceConnections(), sent, silent,
+                nextTrackMicros.describe("nextTrack", "µs"));
+    }
+
+    private static <V> Map<String, V> sorted(Map<String, V> map) {
+        Map<String, V> out = new LinkedHashMap<>();
+        map.entrySet().stream().sorted(Map.Entry.comparingByKey()).forEach(e -> out.put(e.getKey(), e.getValue()));
+        return out;
+    }
+}
@@ -0,0 +1,94 @@
+package group.worldstandard.pudel.plugin.metrics;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+
+/**
+ * Read-only JMX view of {@link MusicMetrics}, registered as
+ * {@code group.worldstandard.pudel.music:type=Metrics}.
+ *
+ * <p>Attributes are the metric names of {@link MusicMetrics#attributes()}. Sources, failure
+ * reasons and repository operations show up as they are first seen, so the attribute list is
+ * rebuilt whenever a client asks for it.
+ */
+public class MusicMetricsMBean implements DynamicMBean {
+
+    private static final String OBJECT_NAME = "group.worldstandard.pudel.music:type=Metrics";
+
+    private final MusicMetrics metrics;
+    private ObjectName name;
+
+    public MusicMetricsMBean(MusicMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /** Registers the bean, replacing one left behind by an earlier load of the plugin. */
+    public void register() throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName objectName = new ObjectName(OBJECT_NAME);
+        if (server.isRegistered(objectName)) server.unregisterMBean(objectName);
+        server.registerMBean(this, objectName);
+        this.name = objectName;
+    }
+
+    public void unregister() {
+        if (name == null) return;
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+        } catch (JMException _) {
+            // Already gone
+        }
+        name = null;
+    }
+
+    @Override
+    public Object getAttribute(String attribute) throws AttributeNotFoundException {
+        Long value = metrics.attributes().get(attribute);
+        if (value == null) throw new AttributeNotFoundException(attribute);
+        return value;
+    }
+
+    @Override
+    public AttributeList getAttributes(String[] attributes) {
+        Map<String, Long> values = metrics.attributes();
+        AttributeList list = new AttributeList();
+        for (String attribute : attributes) {
+            Long value = values.get(attribute);
+            if (value != null) list.add(new Attribute(attribute, value));
+        }
+        return list;
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo() {
+        MBeanAttributeInfo[] infos = metrics.attributes().keySet().stream()
+                .map(key -> new MBeanAttributeInfo(key, Long.class.getName(), key, true, false, false))
+                .toArray(MBeanAttributeInfo[]::new);
+        return new MBeanInfo(getClass().getName(), "Pudel music plugin metrics", infos, null, null, null);
+    }
+
+    @Override
+    public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+        throw new AttributeNotFoundException("Metrics are read-only: " + attribute.getName());
+    }
+
+    @Override
+    public AttributeList setAttributes(AttributeList attributes) {
+        return new AttributeList();
+    }
+
+    @Override
+    public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+        throw new ReflectionException(new NoSuchMethodException(actionName));
+    }
+}
@@ -0,0 +1,63 @@
+package group.worldstandard.pudel.plugin.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Wall-clock time of each startup phase, in milliseconds. Phases run concurrently, so they do
+ * not add up to the time until the plugin is ready.
+ */
+public class StartupTimer {
+
+    private final long startNanos = System.nanoTime();
+    private final Map<String, Long> phases = new LinkedHashMap<>();
+    private volatile long readyMillis = -1;
+
+    public void run(String phase, Runnable work) {
+        time(phase, () -> {
+            work.run();
+            return null;
+        });
+    }
+
+    public <T> T time(String phase, Supplier<T> work) {
+        long start = System.nanoTime();
+        try {
+            return work.get();
+        } finally {
+            record(phase, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        }
+    }
+
+    /** Records the time from the start of startup until now as {@code phase}. */
+    public void mark(String phase) {
+        record(phase, elapsedMillis());
+    }
+
+    public void ready() {
+        readyMillis = elapsedMillis();
+    }
+
+    /** Time until the plugin was ready, or {@code -1} while it is still starting. */
+    public long getReadyMillis() { return readyMillis; }
+
+    public synchronized Map<String, Long> getPhases() { return new LinkedHashMap<>(phases); }
+
+    public String describe() {
+        StringJoiner parts = new StringJoiner(", ");
+        getPhases().forEach((phase, millis) -> parts.add(phase + " " + millis + " ms"));
+        String ready = readyMillis >= 0 ? "ready after " + readyMillis + " ms" : "still starting";
+        return "Music Box startup: %s (%s)".formatted(ready, parts);
+    }
+
+    private synchronized void record(String phase, long millis) {
+        phases.put(phase, millis);
+    }
+
+    private long elapsedMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+}
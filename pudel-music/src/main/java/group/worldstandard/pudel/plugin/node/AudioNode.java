@@ -0,0 +1,481 @@
+package group.worldstandard.pudel.plugin.node;
+
+import com.sedmelluq.discord.lavaplayer.player.AudioPlayer;
+import com.sedmelluq.discord.lavaplayer.player.AudioPlayerManager;
+import com.sedmelluq.discord.lavaplayer.player.DefaultAudioPlayerManager;
+import com.sedmelluq.discord.lavaplayer.player.event.AudioEventAdapter;
+import com.sedmelluq.discord.lavaplayer.source.AudioSourceManagers;
+import com.sedmelluq.discord.lavaplayer.tools.FriendlyException;
+import com.sedmelluq.discord.lavaplayer.tools.io.MessageInput;
+import com.sedmelluq.discord.lavaplayer.tools.io.MessageOutput;
+import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
+import com.sedmelluq.discord.lavaplayer.track.AudioTrackEndReason;
+import com.sedmelluq.discord.lavaplayer.track.DecodedTrackHolder;
+import com.sedmelluq.discord.lavaplayer.track.playback.AudioFrame;
+import dev.lavalink.youtube.YoutubeAudioSourceManager;
+import dev.lavalink.youtube.YoutubeSourceOptions;
+import dev.lavalink.youtube.clients.skeleton.Client;
+import group.worldstandard.pudel.plugin.audio.TrackScheduler;
+import group.worldstandard.pudel.plugin.cache.StreamUrlCache;
+import group.worldstandard.pudel.plugin.config.MusicSettings;
+import group.worldstandard.pudel.plugin.youtube.CachingYoutubeAudioSourceManager;
+import group.worldstandard.pudel.plugin.youtube.YoutubeClients;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import static group.worldstandard.pudel.plugin.node.NodeProtocol.*;
+
+/**
+ * Stand-alone playback process for the music plugin.
+ *
+ * <p>Hosts its own {@link AudioPlayerManager} and one player per guild per connected plugin
+ * instance. Tracks arrive encoded, as they are stored in the queue, and go back as Opus frames.
+ * Every connection has its own writer thread, which sends a guild's frames only against the
+ * credits the plugin grants as Discord takes them, so playback runs at the pace of the voice
+ * connection and a slow plugin only holds up its own guilds. Tracks that fail on the local cipher
+ * are retried once through the remote cipher service, as in the plugin. Sources are configured
+ * from the same {@code pudel.music.} system properties as the plugin.
+ *
+ * <pre>
+ * java -cp pudel-music.jar group.worldstandard.pudel.plugin.node.AudioNode --port=7601 --secret=...
+ * </pre>
+ *
+ * <p>Clients must present the shared secret, {@code --secret} or {@code pudel.music.nodes-secret},
+ * before anything is played. Without one the node only binds to loopback. {@link #local} starts
+ * one in-process on a free loopback port, for benchmarks and tests.
+ */
+public final class AudioNode implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(AudioNode.class);
+
+    private static final long IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+    private static final long STATS_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final AudioPlayerManager manager;
+    private final AudioPlayerManager cipherFallback;
+    private final String name;
+    private final byte[] secret;
+    private final ServerSocket server;
+    private final Set<Connection> connections = ConcurrentHashMap.newKeySet();
+    private final Thread acceptor;
+    private volatile boolean running = true;
+
+    /**
+     * @param cipherFallback manager using the remote cipher service, or {@code null} for no retry
+     * @param secret         what clients must send in their {@code HELLO}; may only be empty on loopback
+     */
+    public AudioNode(AudioPlayerManager manager, AudioPlayerManager cipherFallback, String name,
+                     InetSocketAddress bind, String secret) throws IOException {
+        boolean loopback = bind.getAddress() != null && bind.getAddress().isLoopbackAddress();
+        if (secret.isEmpty() && !loopback) {
+            throw new IllegalArgumentException("An audio node bound to " + bind + " needs a secret; only loopback binds may go without");
+        }
+        this.manager = manager;
+        this.cipherFallback = cipherFallback;
+        this.name = name;
+        this.secret = secret.getBytes(StandardCharsets.UTF_8);
+        this.server = new ServerSocket();
+        server.bind(bind);
+        this.acceptor = Thread.ofPlatform().name("pudel-node-accept").daemon(true).start(this::accept);
+    }
+
+    /** Starts a node on a free loopback port that takes any local client. */
+    public static AudioNode local(AudioPlayerManager manager, String name) throws IOException {
+        return local(manager, name, "");
+    }
+
+    /** Starts a node on a free loopback port. */
+    public static AudioNode local(AudioPlayerManager manager, String name, String secret) throws IOException {
+        return new AudioNode(manager, null, name, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), secret);
+    }
+
+    public InetSocketAddress getAddress() {
+        return new InetSocketAddress(server.getInetAddress(), server.getLocalPort());
+    }
+
+    public String getName() { return name; }
+
+    @Override
+    public void close() {
+        running = false;
+        try {
+            server.close();
+        } catch (IOException _) {
+            // Already closed
+        }
+        connections.forEach(Connection::close);
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) throw new IllegalArgumentException("Expected --name=value: " + arg);
+            options.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+        }
+        MusicSettings settings = MusicSettings.load();
+        int port = Integer.parseInt(options.getOrDefault("port", "7601"));
+        String bind = options.getOrDefault("bind", "127.0.0.1");
+        String name = options.getOrDefault("name", "node-" + port);
+        String secret = options.getOrDefault("secret", settings.nodesSecret);
+
+        AudioPlayerManager manager = createPlayerManager(settings, !settings.isLocalCipher());
+        AudioPlayerManager fallback = settings.isLocalCipher() && settings.cipherRemoteFallback
+                ? createPlayerManager(settings, true)
+                : null;
+        AudioNode node = new AudioNode(manager, fallback, name, new InetSocketAddress(bind, port), secret);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            node.close();
+            manager.shutdown();
+            if (fallback != null) fallback.shutdown();
+        }));
+        log.info("Audio node {} listening on {}{}", name, node.getAddress(), secret.isEmpty() ? " without a secret" : "");
+        node.acceptor.join();
+    }
+
+    /** The plugin's sources, without search or playlists, as the node only plays what it is sent. */
+    private static AudioPlayerManager createPlayerManager(MusicSettings settings, boolean remoteCipher) {
+        AudioPlayerManager manager = new DefaultAudioPlayerManager();
+        YoutubeSourceOptions ytk = new YoutubeSourceOptions()
+                .setAllowSearch(false)
+                .setAllowDirectPlaylistIds(false)
+                .setAllowDirectVideoIds(true);
+        if (remoteCipher) {
+            ytk.setRemoteCipher(settings.cipherRemoteUrl, settings.cipherRemotePassword, "Pudel-AudioNode");
+        }
+        Client[] clients = YoutubeClients.create().toArray(Client[]::new);
+        YoutubeAudioSourceManager youtube = settings.streamUrlCacheEnabled
+                ? new CachingYoutubeAudioSourceManager(ytk, new StreamUrlCache(settings.streamUrlCacheSize), clients)
+                : new YoutubeAudioSourceManager(ytk, clients);
+        AudioSourceManagers.registerRemoteSources(
+                manager,
+                com.sedmelluq.discord.lavaplayer.source.youtube.YoutubeAudioSourceManager.class
+        );
+        manager.registerSourceManager(youtube);
+        return manager;
+    }
+
+    private void accept() {
+        while (running) {
+            try {
+                Socket socket = server.accept();
+                socket.setTcpNoDelay(true);
+                Connection connection = new Connection(socket);
+                connections.add(connection);
+                Thread.ofVirtual().name("pudel-node-conn").start(connection::read);
+            } catch (IOException e) {
+                if (running) log.warn("Audio node accept failed: {}", e.getMessage());
+            }
+        }
+    }
+
+    // ==================== CONNECTIONS ====================
+
+    /** One plugin instance and the players it has on this node. */
+    private final class Connection {
+        private final Socket socket;
+        private final DataInputStream in;
+        private final DataOutputStream out;
+        private final Map<Long, GuildPlayer> players = new ConcurrentHashMap<>();
+        private final Queue<byte[]> events = new ConcurrentLinkedQueue<>();
+        private volatile Thread writer;
+        private volatile boolean closed = false;
+
+        Connection(Socket socket) throws IOException {
+            this.socket = socket;
+            this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 64 * 1024));
+            this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 64 * 1024));
+        }
+
+        void read() {
+            try {
+                handshake();
+                writer = Thread.ofPlatform().name("pudel-node-writer").daemon(true).priority(Thread.MAX_PRIORITY)
+                        .start(this::write);
+                while (running) {
+                    int length = readLength(in);
+                    byte op = in.readByte();
+                    long guildId = in.readLong();
+                    int body = length - HEADER_BYTES;
+                    switch (op) {
+                        case PLAY -> {
+                            int seq = in.readInt();
+                            boolean paused = in.readBoolean();
+                            int volume = in.readInt();
+                            int credits = in.readInt();
+                            byte[] track = readBytes(in, body - 13);
+                            players.computeIfAbsent(guildId, id -> new GuildPlayer(this, id))
+                                    .play(seq, paused, volume, credits, track);
+                            wake();
+                        }
+                        case CREDIT -> {
+                            int seq = in.readInt();
+                            int frames = in.readInt();
+                            GuildPlayer player = players.get(guildId);
+                            if (player != null) player.credit(seq, frames);
+                            wake();
+                        }
+                        case STOP -> {
+                            GuildPlayer player = players.get(guildId);
+                            if (player != null) player.player.stopTrack();
+                        }
+                        case PAUSE -> {
+                            boolean paused = in.readBoolean();
+                            GuildPlayer player = players.get(guildId);
+                            if (player != null) player.player.setPaused(paused);
+                        }
+                        case VOLUME -> {
+                            int volume = in.readInt();
+                            GuildPlayer player = players.get(guildId);
+                            if (player != null) player.player.setVolume(volume);
+                        }
+                        case DESTROY -> {
+                            GuildPlayer player = players.remove(guildId);
+                            if (player != null) player.player.destroy();
+                        }
+                        default -> in.skipNBytes(body);
+                    }
+                }
+            } catch (IOException _) {
+                // The plugin went away; its guilds stop here
+            } finally {
+                close();
+            }
+        }
+
+        /** Runs before the writer starts, so it may write directly. */
+        private void handshake() throws IOException {
+            readLength(in);
+            byte op = in.readByte();
+            in.readLong();
+            if (op != HELLO) throw new IOException("Expected HELLO, got op " + op);
+            int version = in.readInt();
+            if (version == VERSION && !MessageDigest.isEqual(secret, readText(in).getBytes(StandardCharsets.UTF_8))) {
+                log.warn("Refused audio node client {}: wrong secret", socket.getRemoteSocketAddress());
+                throw new IOException("Wrong secret");
+            }
+            byte[] utf8 = utf8(name);
+            writeHeader(out, HELLO, 0, 4 + textBytes(utf8));
+            out.writeInt(VERSION);
+            writeText(out, utf8);
+            out.flush();
+            if (version != VERSION) throw new IOException("Plugin speaks protocol " + version + ", node " + VERSION);
+        }
+
+        /**
+         * Sends events as they come and frames as far as each guild has credits, then waits a
+         * moment when there was nothing to send. Only this connection waits on its socket.
+         */
+        private void write() {
+            long statsDue = System.nanoTime() + STATS_NANOS;
+            try {
+                while (!closed) {
+                    boolean sent = false;
+                    for (byte[] event = events.poll(); event != null; event = events.poll()) {
+                        out.write(event);
+                        sent = true;
+                    }
+                    for (GuildPlayer player : players.values()) sent |= player.pump();
+                    if (System.nanoTime() - statsDue >= 0) {
+                        statsDue += STATS_NANOS;
+                        writeStats();
+                        sent = true;
+                    }
+                    if (sent) {
+                        out.flush();
+                    } else {
+                        LockSupport.parkNanos(IDLE_NANOS);
+                    }
+                }
+            } catch (IOException _) {
+                close();
+            }
+        }
+
+        private void writeStats() throws IOException {
+            int playing = 0;
+            for (GuildPlayer player : players.values()) {
+                if (player.player.getPlayingTrack() != null && !player.player.isPaused()) playing++;
+            }
+            writeHeader(out, STATS, 0, 8);
+            out.writeInt(players.size());
+            out.writeInt(playing);
+        }
+
+        private void wake() {
+            Thread w = writer;
+            if (w != null) LockSupport.unpark(w);
+        }
+
+        /** Queues an event message from a playback thread for the writer. */
+        void report(byte op, long guildId, int seq, byte code, byte[] text) {
+            events.add(encode(op, guildId, 5 + (text != null ? textBytes(text) : 0), o -> {
+                o.writeInt(seq);
+                o.writeByte(code);
+                if (text != null) writeText(o, text);
+            }));
+            wake();
+        }
+
+        void close() {
+            if (!connections.remove(this)) return;
+            closed = true;
+            wake();
+            try {
+                socket.close();
+            } catch (IOException _) {
+                // Already closed
+            }
+            players.values().forEach(p -> p.player.destroy());
+            players.clear();
+        }
+    }
+
+    /** A frame taken from a player, with the {@code PLAY} it belongs to. */
+    private record Outgoing(int seq, AudioFrame frame) {}
+
+    /** A guild's player on this node; tracks carry the sequence number of their {@code PLAY} as user data. */
+    private final class GuildPlayer extends AudioEventAdapter {
+        private final Connection connection;
+        private final long guildId;
+        private final AudioPlayer player;
+        private int seq; // Guarded by this, as is credits
+        private int credits;
+        private volatile AudioTrack cipherRetry;
+        private volatile boolean cipherRetried;
+
+        GuildPlayer(Connection connection, long guildId) {
+            this.connection = connection;
+            this.guildId = guildId;
+            this.player = manager.createPlayer();
+            player.addListener(this);
+        }
+
+        void play(int seq, boolean paused, int volume, int credits, byte[] encoded) {
+            AudioTrack track = decode(manager, encoded);
+            synchronized (this) {
+                cipherRetry = null;
+                cipherRetried = false;
+                if (track == null) {
+                    player.stopTrack();
+                    this.seq = seq;
+                    this.credits = 0;
+                } else {
+                    track.setUserData(seq);
+                    player.setVolume(volume);
+                    player.setPaused(paused);
+                    player.startTrack(track, false);
+                    // Set after the switch, so a frame of the old track is never sent as one of the new
+                    this.seq = seq;
+                    this.credits = credits;
+                }
+            }
+            if (track == null) {
+                connection.report(EXCEPTION, guildId, seq, (byte) FriendlyException.Severity.COMMON.ordinal(),
+                        utf8("Audio node could not decode the track"));
+                connection.report(END, guildId, seq, (byte) AudioTrackEndReason.LOAD_FAILED.ordinal(), null);
+            }
+        }
+
+        synchronized void credit(int seq, int frames) {
+            if (seq == this.seq && frames > 0) credits += frames;
+        }
+
+        /** Writes the frames this guild has credits for and its player has ready; returns whether any were. */
+        boolean pump() throws IOException {
+            boolean sent = false;
+            for (Outgoing next = take(); next != null; next = take()) {
+                byte[] data = next.frame().getData();
+                writeHeader(connection.out, FRAME, guildId, 12 + data.length);
+                connection.out.writeInt(next.seq());
+                connection.out.writeLong(next.frame().getTimecode());
+                connection.out.write(data);
+                sent = true;
+            }
+            return sent;
+        }
+
+        private synchronized Outgoing take() {
+            if (credits <= 0) return null;
+            AudioFrame frame = player.provide();
+            if (frame == null) return null;
+            credits--;
+            return new Outgoing(seq, frame);
+        }
+
+        @Override
+        public void onTrackEnd(AudioPlayer player, AudioTrack track, AudioTrackEndReason reason) {
+            // Replacing and stopping are the plugin's own doing, and it has reported those ends already
+            if (reason == AudioTrackEndReason.REPLACED || reason == AudioTrackEndReason.STOPPED) return;
+            if (!(track.getUserData() instanceof Integer trackSeq)) return;
+            AudioTrack retry = cipherRetry;
+            if (retry != null && reason == AudioTrackEndReason.LOAD_FAILED) {
+                cipherRetry = null;
+                cipherRetried = true;
+                log.warn("Local cipher failed for '{}', retrying with remote cipher", track.getInfo().title);
+                player.startTrack(retry, false);
+                return;
+            }
+            connection.report(END, guildId, trackSeq, (byte) reason.ordinal(), null);
+        }
+
+        @Override
+        public void onTrackException(AudioPlayer player, AudioTrack track, FriendlyException exception) {
+            if (!(track.getUserData() instanceof Integer trackSeq)) return;
+            if (cipherFallback != null && !cipherRetried && TrackScheduler.isCipherFailure(exception)) {
+                AudioTrack retry = reencode(track);
+                if (retry != null) {
+                    // Reported only if the retry fails as well
+                    retry.setUserData(trackSeq);
+                    cipherRetry = retry;
+                    return;
+                }
+            }
+            connection.report(EXCEPTION, guildId, trackSeq, (byte) exception.severity.ordinal(), utf8(exception.getMessage()));
+        }
+    }
+
+    // ==================== TRACKS ====================
+
+    private static AudioTrack decode(AudioPlayerManager manager, byte[] encoded) {
+        try {
+            DecodedTrackHolder holder = manager.decodeTrack(new MessageInput(new ByteArrayInputStream(encoded)));
+            return holder != null ? holder.decodedTrack : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /** The track as the cipher fallback manager decodes it, or {@code null} if it can't be moved over. */
+    private AudioTrack reencode(AudioTrack track) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            manager.encodeTrack(new MessageOutput(bytes), track);
+            return decode(cipherFallback, bytes.toByteArray());
+        } catch (IOException e) {
+            log.warn("Cipher fallback unavailable: {}", e.getMessage());
+            return null;
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package group.worldstandard.pudel.plugin.node;
+
+import com.sedmelluq.discord.lavaplayer.tools.FriendlyException;
+import com.sedmelluq.discord.lavaplayer.track.AudioTrackEndReason;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static group.worldstandard.pudel.plugin.node.NodeProtocol.*;
+
+/**
+ * The plugin's connection to one {@link AudioNode}, shared by every guild placed on it.
+ *
+ * <p>Commands are queued by the calling thread, which may be JDA's or the audio send thread, and
+ * written by one writer thread per connection; frames and events are read on one reader thread
+ * and handed to the guild's {@link RemoteAudioPlayer}. The node reports its load
+ * every second, so a connection that stays silent for {@link #READ_TIMEOUT_MS} is treated as
+ * dead, and its guilds are moved to another node.
+ */
+final class NodeClient {
+
+    private static final int CONNECT_TIMEOUT_MS = 2_000;
+    private static final int READ_TIMEOUT_MS = 5_000;
+
+    private final NodePool pool;
+    private final InetSocketAddress address;
+    private final byte[] secret;
+    private final Map<Long, RemoteAudioPlayer> players = new ConcurrentHashMap<>();
+    private final AtomicInteger placedSinceStats = new AtomicInteger();
+
+    private volatile Socket socket;
+    private volatile BlockingQueue<byte[]> outbox;
+    private volatile Thread writer;
+    private volatile String name;
+    private volatile int reportedPlaying;
+    boolean unreachableLogged = false;
+
+    NodeClient(NodePool pool, InetSocketAddress address, String secret) {
+        this.pool = pool;
+        this.address = address;
+        this.secret = utf8(secret);
+        this.name = address.getHostString() + ":" + address.getPort();
+    }
+
+    boolean isAlive() { return socket != null; }
+    String getName() { return name; }
+    InetSocketAddress getAddress() { return address; }
+    int getGuilds() { return players.size(); }
+
+    /** Playing guilds as of the node's last report, plus the guilds placed on it since. */
+    int load() { return reportedPlaying + placedSinceStats.get(); }
+
+    synchronized void connect() throws IOException {
+        if (socket != null) return;
+        Socket s = new Socket();
+        try {
+            s.setTcpNoDelay(true);
+            s.connect(address, CONNECT_TIMEOUT_MS);
+            s.setSoTimeout(READ_TIMEOUT_MS);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream(), 64 * 1024));
+            DataOutputStream o = new DataOutputStream(new BufferedOutputStream(s.getOutputStream(), 8 * 1024));
+            writeHeader(o, HELLO, 0, 4 + textBytes(secret));
+            o.writeInt(VERSION);
+            writeText(o, secret);
+            o.flush();
+
+            try {
+                readLength(in);
+            } catch (EOFException e) {
+                throw new IOException("Node closed the connection during the handshake, check pudel.music.nodes-secret", e);
+            }
+            byte op = in.readByte();
+            in.readLong();
+            if (op != HELLO) throw new IOException("Expected HELLO, got op " + op);
+            int version = in.readInt();
+            String nodeName = readText(in);
+            if (version != VERSION) throw new IOException("Node speaks protocol " + version + ", plugin " + VERSION);
+
+            this.name = nodeName;
+            this.reportedPlaying = 0;
+            this.placedSinceStats.set(0);
+            BlockingQueue<byte[]> queue = new LinkedBlockingQueue<>();
+            this.outbox = queue;
+            this.socket = s;
+            this.writer = Thread.ofPlatform().name("pudel-node-writer-" + nodeName).daemon(true).priority(Thread.MAX_PRIORITY)
+                    .start(() -> write(s, o, queue));
+            Thread.ofPlatform().name("pudel-node-" + nodeName).daemon(true).priority(Thread.MAX_PRIORITY)
+                    .start(() -> read(s, in));
+        } catch (IOException e) {
+            s.close();
+            throw e;
+        }
+    }
+
+    void close() {
+        Socket s = socket;
+        if (s != null) closeQuietly(s);
+    }
+
+    // ==================== COMMANDS ====================
+
+    void play(long guildId, RemoteAudioPlayer player, int seq, boolean paused, int volume, int credits, byte[] track) {
+        if (players.put(guildId, player) == null) placedSinceStats.incrementAndGet();
+        send(PLAY, guildId, 13 + track.length, o -> {
+            o.writeInt(seq);
+            o.writeBoolean(paused);
+            o.writeInt(volume);
+            o.writeInt(credits);
+            o.write(track);
+        });
+    }
+
+    void credit(long guildId, int seq, int frames) {
+        send(CREDIT, guildId, 8, o -> {
+            o.writeInt(seq);
+            o.writeInt(frames);
+        });
+    }
+
+    void stop(long guildId) {
+        send(STOP, guildId, 0, null);
+    }
+
+    void pause(long guildId, boolean paused) {
+        send(PAUSE, guildId, 1, o -> o.writeBoolean(paused));
+    }
+
+    void volume(long guildId, int volume) {
+        send(VOLUME, guildId, 4, o -> o.writeInt(volume));
+    }
+
+    void release(long guildId) {
+        players.remove(guildId);
+        send(DESTROY, guildId, 0, null);
+    }
+
+    /** Queues one message for the writer; dropped when the node is not connected. */
+    private void send(byte op, long guildId, int bodyBytes, Body body) {
+        BlockingQueue<byte[]> queue = outbox;
+        if (queue != null) queue.add(encode(op, guildId, bodyBytes, body));
+    }
+
+    // ==================== WRITER ====================
+
+    /**
+     * Writes queued messages, flushing once the queue runs dry. A failed write closes the socket;
+     * the reader then notices and moves the guilds, so senders need not handle it.
+     */
+    private void write(Socket s, DataOutputStream o, BlockingQueue<byte[]> queue) {
+        try {
+            while (true) {
+                o.write(queue.take());
+                for (byte[] next = queue.poll(); next != null; next = queue.poll()) o.write(next);
+                o.flush();
+            }
+        } catch (IOException _) {
+            closeQuietly(s);
+        } catch (InterruptedException _) {
+            // The connection was lost
+        }
+    }
+
+    // ==================== READER ====================
+
+    private void read(Socket s, DataInputStream in) {
+        try {
+            while (true) {
+                int length = readLength(in);
+                byte op = in.readByte();
+                long guildId = in.readLong();
+                int body = length - HEADER_BYTES;
+                switch (op) {
+                    case FRAME -> {
+                        int seq = in.readInt();
+                        long timecode = in.readLong();
+                        byte[] data = readBytes(in, body - 12);
+                        RemoteAudioPlayer player = players.get(guildId);
+                        if (player != null) player.onFrame(seq, timecode, data);
+                    }
+                    case END -> {
+                        int seq = in.readInt();
+                        AudioTrackEndReason reason = AudioTrackEndReason.values()[in.readUnsignedByte()];
+                        RemoteAudioPlayer player = players.get(guildId);
+                        if (player != null) player.onEnd(seq, reason);
+                    }
+                    case EXCEPTION -> {
+                        int seq = in.readInt();
+                        FriendlyException.Severity severity = FriendlyException.Severity.values()[in.readUnsignedByte()];
+                        String message = readText(in);
+                        RemoteAudioPlayer player = players.get(guildId);
+                        if (player != null) player.onException(seq, severity, message);
+                    }
+                    case STATS -> {
+                        in.readInt();
+                        reportedPlaying = in.readInt();
+                        placedSinceStats.set(0);
+                    }
+                    default -> in.skipNBytes(body);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            lost(s, e);
+        }
+    }
+
+    private void lost(Socket s, Exception cause) {
+        List<RemoteAudioPlayer> orphaned;
+        synchronized (this) {
+            if (socket != s) return;
+            socket = null;
+            outbox = null;
+            writer.interrupt();
+            closeQuietly(s);
+            orphaned = new ArrayList<>(players.values());
+            players.clear();
+        }
+        pool.nodeLost(this, cause, orphaned);
+    }
+
+    private static void closeQuietly(Socket s) {
+        try {
+            s.close();
+        } catch (IOException _) {
+            // Already closed
+        }
+    }
+}
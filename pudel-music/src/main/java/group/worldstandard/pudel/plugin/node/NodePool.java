@@ -0,0 +1,130 @@
+package group.worldstandard.pudel.plugin.node;
+
+import com.sedmelluq.discord.lavaplayer.player.AudioPlayerManager;
+import com.sedmelluq.discord.lavaplayer.player.DefaultAudioPlayerManager;
+import group.worldstandard.pudel.api.PluginContext;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.StringJoiner;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The audio nodes guilds play on when playback runs out of process.
+ *
+ * <p>A guild is placed on the connected node with the fewest playing guilds, counting the node's
+ * last report plus the guilds placed on it since, and stays there until that node goes away. Its
+ * track then resumes at the same position on another node. Unreachable nodes are retried every
+ * few seconds, off the timer thread.
+ */
+public class NodePool implements AutoCloseable {
+
+    private static final long RECONNECT_SECONDS = 5;
+
+    private final PluginContext context;
+    private final List<NodeClient> nodes = new ArrayList<>();
+    private final ScheduledExecutorService timer;
+    private ScheduledFuture<?> reconnect;
+
+    private final AtomicLong failovers = new AtomicLong();
+    private final AtomicLong unplaced = new AtomicLong();
+
+    /** @param secret shared secret the nodes expect; empty for nodes that take any local client */
+    public NodePool(PluginContext context, List<InetSocketAddress> addresses, String secret,
+                    ScheduledExecutorService timer) {
+        this.context = context;
+        this.timer = timer;
+        for (InetSocketAddress address : addresses) nodes.add(new NodeClient(this, address, secret));
+    }
+
+    /** Parses a comma-separated list of {@code host:port} node addresses. */
+    public static List<InetSocketAddress> parse(String addresses) {
+        List<InetSocketAddress> parsed = new ArrayList<>();
+        for (String part : addresses.split(",")) {
+            String address = part.trim();
+            if (address.isEmpty()) continue;
+            int colon = address.lastIndexOf(':');
+            if (colon <= 0) throw new IllegalArgumentException("Expected host:port, got " + address);
+            parsed.add(new InetSocketAddress(address.substring(0, colon), Integer.parseInt(address.substring(colon + 1))));
+        }
+        return parsed;
+    }
+
+    /** Connects to every node in the background and keeps reconnecting lost ones. */
+    public void start() {
+        reconnect = timer.scheduleWithFixedDelay(() -> Thread.startVirtualThread(this::connectAll),
+                0, RECONNECT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /** Connects to every node now, on the calling thread. */
+    public void connectAll() {
+        for (NodeClient node : nodes) {
+            if (node.isAlive()) continue;
+            try {
+                node.connect();
+                node.unreachableLogged = false;
+                context.log("info", "Connected to audio node " + node.getName());
+            } catch (IOException e) {
+                if (!node.unreachableLogged) {
+                    context.log("warn", "Audio node %s unreachable: %s".formatted(node.getName(), e.getMessage()));
+                    node.unreachableLogged = true;
+                }
+            }
+        }
+    }
+
+    public long getConnected() {
+        return nodes.stream().filter(NodeClient::isAlive).count();
+    }
+
+    /** A player for {@code guildId} that plays on the least loaded node. */
+    public RemoteAudioPlayer createPlayer(AudioPlayerManager manager, long guildId) {
+        if (!(manager instanceof DefaultAudioPlayerManager defaults)) {
+            throw new IllegalArgumentException("Remote playback needs a DefaultAudioPlayerManager");
+        }
+        return new RemoteAudioPlayer(defaults, this, guildId);
+    }
+
+    @Override
+    public void close() {
+        if (reconnect != null) reconnect.cancel(false);
+        nodes.forEach(NodeClient::close);
+    }
+
+    public String describe() {
+        StringJoiner perNode = new StringJoiner(", ");
+        for (NodeClient node : nodes) {
+            perNode.add(node.isAlive()
+                    ? "%s %d guilds, %d load".formatted(node.getName(), node.getGuilds(), node.load())
+                    : node.getName() + " down");
+        }
+        return "Audio nodes: %d/%d connected (%s), %d failovers, %d tracks without a node"
+                .formatted(getConnected(), nodes.size(), perNode, failovers.get(), unplaced.get());
+    }
+
+    // ==================== PLACEMENT ====================
+
+    /** The connected node with the least load, or {@code null} when none is connected. */
+    NodeClient pick() {
+        NodeClient best = nodes.stream().filter(NodeClient::isAlive)
+                .min(Comparator.comparingInt(NodeClient::load)).orElse(null);
+        if (best == null) unplaced.incrementAndGet();
+        return best;
+    }
+
+    void nodeLost(NodeClient node, Exception cause, List<RemoteAudioPlayer> orphaned) {
+        context.log("warn", "Lost audio node %s (%s), moving %d guilds".formatted(node.getName(), cause.getMessage(), orphaned.size()));
+        failovers.addAndGet(orphaned.size());
+        for (RemoteAudioPlayer player : orphaned) player.onNodeLost(node);
+    }
+
+    void log(String level, String message) {
+        context.log(level, message);
+    }
+}
@@ -0,0 +1,117 @@
+package group.worldstandard.pudel.plugin.node;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Wire format between the plugin and its audio nodes.
+ *
+ * <p>Every message is {@code [int length][byte op][long guild][body]}, big-endian, where
+ * {@code length} counts the bytes after itself. The plugin opens with {@link #HELLO} and the node
+ * answers with its own, or closes the connection when the secret does not match. Tracks travel in LavaPlayer's encoding, position included, so both sides
+ * must run the same LavaPlayer and source versions. Track ends, errors and frames carry the
+ * sequence number of the {@link #PLAY} they belong to; anything older than the guild's latest
+ * {@code PLAY} is stale and dropped. Unknown ops are skipped, so either side may add some.
+ *
+ * <p>Frames are sent against credits: {@link #PLAY} grants the first ones and {@link #CREDIT}
+ * one more for every frame the plugin has handed to Discord. A node never has more frames in
+ * flight for a guild than the plugin can buffer, and a guild nobody reads from stops where it is.
+ */
+public final class NodeProtocol {
+
+    public static final int VERSION = 2;
+    public static final int HEADER_BYTES = 1 + 8;
+    public static final int MAX_MESSAGE_BYTES = 1 << 20;
+    public static final int MAX_TEXT_BYTES = 1024;
+
+    // ==================== PLUGIN -> NODE ====================
+    /** {@code int version, text secret}; the node replies with {@code int version, text name}. */
+    public static final byte HELLO = 1;
+    /** {@code int seq, boolean paused, int volume, int credits, byte[] track} up to the end of the message. */
+    public static final byte PLAY = 2;
+    /** Empty body; stops the guild's track without an end report. */
+    public static final byte STOP = 3;
+    /** {@code boolean paused}. */
+    public static final byte PAUSE = 4;
+    /** {@code int volume}. */
+    public static final byte VOLUME = 5;
+    /** Empty body; the node drops the guild's player. */
+    public static final byte DESTROY = 6;
+    /** {@code int seq, int frames}; more frames the node may send for that {@code PLAY}. */
+    public static final byte CREDIT = 7;
+
+    // ==================== NODE -> PLUGIN ====================
+    /** {@code int seq, long timecode, byte[] opus} up to the end of the message; takes one credit. */
+    public static final byte FRAME = 16;
+    /** {@code int seq, byte AudioTrackEndReason ordinal}. */
+    public static final byte END = 17;
+    /** {@code int seq, byte Severity ordinal, text message}. */
+    public static final byte EXCEPTION = 18;
+    /** Guild {@code 0}; {@code int players, int playing}. Sent every second. */
+    public static final byte STATS = 19;
+
+    /** Writes a message body. */
+    public interface Body {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    private NodeProtocol() {}
+
+    /** A whole message as bytes, for handing to a writer thread. */
+    public static byte[] encode(byte op, long guildId, int bodyBytes, Body body) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(4 + HEADER_BYTES + bodyBytes);
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            writeHeader(out, op, guildId, bodyBytes);
+            if (body != null) body.write(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // In memory, so never
+        }
+        return bytes.toByteArray();
+    }
+
+    public static void writeHeader(DataOutputStream out, byte op, long guildId, int bodyBytes) throws IOException {
+        out.writeInt(HEADER_BYTES + bodyBytes);
+        out.writeByte(op);
+        out.writeLong(guildId);
+    }
+
+    /** Reads a message length and checks it, before the op and guild are read. */
+    public static int readLength(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < HEADER_BYTES || length > MAX_MESSAGE_BYTES) throw new IOException("Bad message length " + length);
+        return length;
+    }
+
+    /** UTF-8 bytes of {@code text}, cut to {@link #MAX_TEXT_BYTES}. */
+    public static byte[] utf8(String text) {
+        byte[] bytes = (text != null ? text : "").getBytes(StandardCharsets.UTF_8);
+        return bytes.length <= MAX_TEXT_BYTES ? bytes : Arrays.copyOf(bytes, MAX_TEXT_BYTES);
+    }
+
+    /** Bytes {@link #writeText} takes for {@code utf8}. */
+    public static int textBytes(byte[] utf8) {
+        return 2 + utf8.length;
+    }
+
+    public static void writeText(DataOutputStream out, byte[] utf8) throws IOException {
+        out.writeShort(utf8.length);
+        out.write(utf8);
+    }
+
+    public static String readText(DataInputStream in) throws IOException {
+        return new String(readBytes(in, in.readUnsignedShort()), StandardCharsets.UTF_8);
+    }
+
+    public static byte[] readBytes(DataInputStream in, int length) throws IOException {
+        if (length < 0) throw new IOException("Bad field length " + length);
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,265 @@
+package group.worldstandard.pudel.plugin.node;
+
+import com.sedmelluq.discord.lavaplayer.format.StandardAudioDataFormats;
+import com.sedmelluq.discord.lavaplayer.player.DefaultAudioPlayer;
+import com.sedmelluq.discord.lavaplayer.player.DefaultAudioPlayerManager;
+import com.sedmelluq.discord.lavaplayer.player.event.AudioEvent;
+import com.sedmelluq.discord.lavaplayer.player.event.AudioEventListener;
+import com.sedmelluq.discord.lavaplayer.player.event.PlayerPauseEvent;
+import com.sedmelluq.discord.lavaplayer.player.event.PlayerResumeEvent;
+import com.sedmelluq.discord.lavaplayer.player.event.TrackEndEvent;
+import com.sedmelluq.discord.lavaplayer.player.event.TrackExceptionEvent;
+import com.sedmelluq.discord.lavaplayer.player.event.TrackStartEvent;
+import com.sedmelluq.discord.lavaplayer.tools.FriendlyException;
+import com.sedmelluq.discord.lavaplayer.tools.io.MessageOutput;
+import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
+import com.sedmelluq.discord.lavaplayer.track.AudioTrackEndReason;
+import com.sedmelluq.discord.lavaplayer.track.playback.AudioFrame;
+import com.sedmelluq.discord.lavaplayer.track.playback.ImmutableAudioFrame;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A guild's player whose tracks play on an {@link AudioNode}.
+ *
+ * <p>State lives here and commands are forwarded, so the scheduler, views and send handler use it
+ * like a local player. Start, replace, stop and pause events fire here as soon as the command is
+ * sent; ends and errors the node reports are matched to the current track by sequence number.
+ * Frames from the node wait in a buffer of {@link #BUFFER_FRAMES} and move the local track's
+ * position as they are taken by {@link #provide()}, which is what JDA's send handler calls. Every
+ * frame taken is credited back to the node, a few at a time, so the node sends only what the
+ * buffer has room for: when JDA stops polling, e.g. while voice reconnects, the track stops on the
+ * node too instead of playing on unheard. The mutable-frame variants of {@code provide} are not
+ * forwarded.
+ */
+public class RemoteAudioPlayer extends DefaultAudioPlayer {
+
+    private static final int BUFFER_FRAMES = 25;
+    private static final int CREDIT_BATCH = 5;
+
+    /** A frame from the node, with the {@code PLAY} it belongs to. */
+    private record Buffered(int seq, AudioFrame frame) {}
+
+    private final DefaultAudioPlayerManager manager;
+    private final NodePool pool;
+    private final long guildId;
+    private final List<AudioEventListener> listeners = new CopyOnWriteArrayList<>();
+    private final BlockingQueue<Buffered> frames = new ArrayBlockingQueue<>(BUFFER_FRAMES);
+    private final AtomicInteger taken = new AtomicInteger();
+
+    private volatile NodeClient node; // Written under this
+    private volatile AudioTrack playing;
+    private volatile int seq;
+    private volatile boolean paused;
+    private volatile int volume = 100;
+
+    RemoteAudioPlayer(DefaultAudioPlayerManager manager, NodePool pool, long guildId) {
+        super(manager);
+        this.manager = manager;
+        this.pool = pool;
+        this.guildId = guildId;
+    }
+
+    // ==================== PLAYER ====================
+
+    @Override
+    public AudioTrack getPlayingTrack() { return playing; }
+
+    @Override
+    public void playTrack(AudioTrack track) { startTrack(track, false); }
+
+    @Override
+    public boolean startTrack(AudioTrack track, boolean noInterrupt) {
+        if (track == null) {
+            if (noInterrupt && playing != null) return false;
+            stopTrack();
+            return true;
+        }
+        AudioTrack previous;
+        synchronized (this) {
+            if (noInterrupt && playing != null) return false;
+            previous = playing;
+            playing = track;
+            seq++;
+            if (previous != null) frames.clear();
+            sendPlay(track);
+        }
+        if (previous != null) dispatch(new TrackEndEvent(this, previous, AudioTrackEndReason.REPLACED));
+        dispatch(new TrackStartEvent(this, track));
+        return true;
+    }
+
+    @Override
+    public void stopTrack() {
+        AudioTrack stopped;
+        synchronized (this) {
+            stopped = playing;
+            if (stopped == null) return;
+            playing = null;
+            seq++;
+            frames.clear();
+            if (node != null) node.stop(guildId);
+        }
+        dispatch(new TrackEndEvent(this, stopped, AudioTrackEndReason.STOPPED));
+    }
+
+    @Override
+    public boolean isPaused() { return paused; }
+
+    @Override
+    public void setPaused(boolean value) {
+        synchronized (this) {
+            if (paused == value) return;
+            paused = value;
+            if (node != null) node.pause(guildId, value);
+        }
+        dispatch(value ? new PlayerPauseEvent(this) : new PlayerResumeEvent(this));
+    }
+
+    @Override
+    public int getVolume() { return volume; }
+
+    @Override
+    public synchronized void setVolume(int volume) {
+        this.volume = Math.min(1000, Math.max(0, volume));
+        if (node != null) node.volume(guildId, this.volume);
+    }
+
+    @Override
+    public void destroy() {
+        stopTrack();
+        synchronized (this) {
+            if (node != null) node.release(guildId);
+            node = null;
+        }
+    }
+
+    @Override
+    public void addListener(AudioEventListener listener) { listeners.add(listener); }
+
+    @Override
+    public void removeListener(AudioEventListener listener) { listeners.remove(listener); }
+
+    @Override
+    public void checkCleanup(long threshold) {
+        // Nothing runs locally, so nothing can leak
+    }
+
+    @Override
+    public AudioFrame provide() {
+        return taken(paused ? null : frames.poll());
+    }
+
+    @Override
+    public AudioFrame provide(long timeout, TimeUnit unit) throws TimeoutException, InterruptedException {
+        return taken(paused ? null : frames.poll(timeout, unit));
+    }
+
+    private AudioFrame taken(Buffered buffered) {
+        if (buffered == null) return null;
+        AudioTrack track = playing;
+        // The tail of a track that ended on its own may still play after the next one started
+        if (track != null && buffered.seq() == seq) track.setPosition(buffered.frame().getTimecode());
+        if (taken.incrementAndGet() >= CREDIT_BATCH) credit();
+        return buffered.frame();
+    }
+
+    /** Gives the node back the buffer room freed since the last credit, for the current track. */
+    private synchronized void credit() {
+        int frames = taken.getAndSet(0);
+        if (frames > 0 && node != null && playing != null) node.credit(guildId, seq, frames);
+    }
+
+    // ==================== NODE CALLBACKS ====================
+
+    void onFrame(int frameSeq, long timecode, byte[] opus) {
+        if (frameSeq != seq) return;
+        Buffered frame = new Buffered(frameSeq,
+                new ImmutableAudioFrame(timecode, opus, volume, StandardAudioDataFormats.DISCORD_OPUS));
+        // Credits keep the buffer from filling; only a node ignoring them could overflow it
+        while (!frames.offer(frame)) frames.poll();
+    }
+
+    void onEnd(int endSeq, AudioTrackEndReason reason) {
+        AudioTrack ended;
+        synchronized (this) {
+            if (endSeq != seq || playing == null) return;
+            ended = playing;
+            playing = null;
+        }
+        dispatch(new TrackEndEvent(this, ended, reason));
+    }
+
+    void onException(int errorSeq, FriendlyException.Severity severity, String message) {
+        AudioTrack track = playing;
+        if (errorSeq != seq || track == null) return;
+        dispatch(new TrackExceptionEvent(this, track, new FriendlyException(message, severity, null)));
+    }
+
+    /** Resumes the current track on another node, at the position last played. */
+    synchronized void onNodeLost(NodeClient lost) {
+        if (node != lost) return;
+        node = null;
+        frames.clear();
+        if (playing == null) return;
+        seq++;
+        sendPlay(playing);
+    }
+
+    // ==================== INTERNALS ====================
+
+    /**
+     * Queues the track, position included, for this guild's node, placing the guild first if
+     * needed. Nothing is written on the calling thread, so holding the lock here is cheap.
+     */
+    private void sendPlay(AudioTrack track) {
+        int playSeq = seq;
+        byte[] encoded;
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            manager.encodeTrack(new MessageOutput(bytes), track);
+            encoded = bytes.toByteArray();
+        } catch (IOException e) {
+            failLater(playSeq, "Track could not be sent to an audio node: " + e.getMessage(), AudioTrackEndReason.LOAD_FAILED);
+            return;
+        }
+        if (node == null || !node.isAlive()) node = pool.pick();
+        if (node == null) {
+            // Stopped rather than failed, so the scheduler keeps the queue for when a node is back
+            failLater(playSeq, "No audio node is available", AudioTrackEndReason.STOPPED);
+            return;
+        }
+        // The new track may fill whatever the buffer has room for; frames taken from now on are its credits
+        taken.set(0);
+        node.play(guildId, this, playSeq, paused, volume, BUFFER_FRAMES - frames.size(), encoded);
+    }
+
+    /**
+     * Reports a track that could not be handed to a node. Off the calling thread, as a local player
+     * would, so a scheduler skipping to the next track does not recurse.
+     */
+    private void failLater(int failedSeq, String message, AudioTrackEndReason reason) {
+        Thread.startVirtualThread(() -> {
+            onException(failedSeq, FriendlyException.Severity.COMMON, message);
+            onEnd(failedSeq, reason);
+        });
+    }
+
+    private void dispatch(AudioEvent event) {
+        for (AudioEventListener listener : listeners) {
+            try {
+                listener.onEvent(event);
+            } catch (RuntimeException e) {
+                pool.log("warn", "Audio event listener failed in guild %d: %s".formatted(guildId, e.getMessage()));
+            }
+        }
+    }
+}
@@ -0,0 +1,236 @@
+package group.worldstandard.pudel.plugin.search;
+
+import group.worldstandard.pudel.api.database.PluginRepository;
+import group.worldstandard.pudel.plugin.entity.HistoryEntry;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-memory, per-guild prefix index over played titles and popular search queries, used to
+ * answer {@code /music search} autocomplete.
+ *
+ * <p>Every title is split into lowercase words and each word is kept in a sorted map, so a
+ * keystroke is a range lookup on the typed prefix followed by a filter on the remaining words.
+ * A guild is loaded from {@code music_history} once, in the background; after that it is only
+ * updated incrementally as tracks are played and searches are made. A guild is dropped when the
+ * bot leaves it or after {@link #IDLE_MILLIS} without plays or lookups, and reloaded on next use.
+ */
+public class TitleIndex {
+
+    /** Discord's limit for both autocomplete choices and choice name/value length. */
+    public static final int MAX_CHOICES = 25;
+    private static final int MAX_CHOICE_LENGTH = 100;
+
+    private static final int WARM_ROWS = 1000;
+    private static final int MAX_ITEMS_PER_GUILD = 5000;
+    private static final int MAX_CANDIDATES = 500;
+    public static final long IDLE_MILLIS = TimeUnit.HOURS.toMillis(6);
+
+    /** A search that led to a result counts more than a single play of a title. */
+    private static final int SEARCH_WEIGHT = 2;
+
+    public record Suggestion(String name, String value) {}
+
+    private final PluginRepository<HistoryEntry> historyRepo;
+    private final ExecutorService background;
+    private final Map<Long, GuildIndex> guilds = new ConcurrentHashMap<>();
+
+    public TitleIndex(PluginRepository<HistoryEntry> historyRepo, ExecutorService background) {
+        this.historyRepo = historyRepo;
+        this.background = background;
+    }
+
+    /** Loads the guild's recent history into the index unless it is already loaded or loading. */
+    public void warm(long guildId) {
+        guilds.computeIfAbsent(guildId, id -> {
+            GuildIndex index = new GuildIndex();
+            background.execute(() -> load(id, index));
+            return index;
+        });
+    }
+
+    /** Drops the guild's index, e.g. when the bot leaves it. */
+    public void forget(long guildId) {
+        guilds.remove(guildId);
+    }
+
+    /** Drops guilds not used for {@link #IDLE_MILLIS}; returns how many. */
+    public int evictIdle() {
+        long cutoff = System.currentTimeMillis() - IDLE_MILLIS;
+        int before = guilds.size();
+        guilds.values().removeIf(index -> index.lastUsed < cutoff);
+        return before - guilds.size();
+    }
+
+    public int getGuildCount() {
+        return guilds.size();
+    }
+
+    public void recordPlay(long guildId, String title, String url) {
+        GuildIndex index = guilds.get(guildId);
+        if (index == null || title == null || title.isBlank()) return;
+        index.add(title, choiceValue(title, url), 1);
+    }
+
+    public void recordSearch(long guildId, String query) {
+        GuildIndex index = guilds.get(guildId);
+        if (index == null || query == null || query.isBlank() || query.startsWith("http")) return;
+        String q = query.strip();
+        index.add(q, q, SEARCH_WEIGHT);
+    }
+
+    /**
+     * Returns up to {@link #MAX_CHOICES} suggestions whose words start with every typed word,
+     * most played first. An unknown guild returns nothing and starts loading.
+     */
+    public List<Suggestion> suggest(long guildId, String input) {
+        GuildIndex index = guilds.get(guildId);
+        if (index == null) {
+            warm(guildId);
+            return List.of();
+        }
+        return index.suggest(tokenize(input));
+    }
+
+    private void load(long guildId, GuildIndex index) {
+        List<HistoryEntry> rows = historyRepo.query()
+                .where("guild_id", guildId)
+                .orderByDesc("played_at")
+                .limit(WARM_ROWS)
+                .list();
+        // Oldest first, so the most recent plays end up youngest in the eviction order
+        for (HistoryEntry h : rows.reversed()) {
+            if (h.getTrackTitle() != null && !h.getTrackTitle().isBlank()) {
+                index.add(h.getTrackTitle(), choiceValue(h.getTrackTitle(), h.getTrackUrl()), 1);
+            }
+        }
+    }
+
+    private static String choiceValue(String title, String url) {
+        if (url != null && url.length() <= MAX_CHOICE_LENGTH) return url;
+        return truncate(title);
+    }
+
+    private static String truncate(String text) {
+        return text.length() > MAX_CHOICE_LENGTH ? text.substring(0, MAX_CHOICE_LENGTH) : text;
+    }
+
+    static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null) return tokens;
+        StringBuilder word = new StringBuilder();
+        for (int i = 0; i < text.length(); ) {
+            int cp = text.codePointAt(i);
+            i += Character.charCount(cp);
+            if (Character.isLetterOrDigit(cp)) {
+                word.appendCodePoint(cp);
+            } else if (!word.isEmpty()) {
+                tokens.add(word.toString().toLowerCase(Locale.ROOT));
+                word.setLength(0);
+            }
+        }
+        if (!word.isEmpty()) tokens.add(word.toString().toLowerCase(Locale.ROOT));
+        return tokens;
+    }
+
+    // ==================== GUILD INDEX ====================
+
+    private static final class Item {
+        final String label;
+        final String value;
+        final List<String> words;
+        int weight;
+
+        Item(String label, String value, List<String> words) {
+            this.label = label;
+            this.value = value;
+            this.words = words;
+        }
+
+        boolean matchesAll(List<String> prefixes) {
+            for (String p : prefixes) {
+                boolean found = false;
+                for (String w : words) {
+                    if (w.startsWith(p)) { found = true; break; }
+                }
+                if (!found) return false;
+            }
+            return true;
+        }
+    }
+
+    private static final class GuildIndex {
+        /** Items by label in access order; the eldest is evicted when the guild is full. */
+        private final LinkedHashMap<String, Item> items = new LinkedHashMap<>(256, 0.75f, true);
+        private final NavigableMap<String, Set<Item>> words = new TreeMap<>();
+        volatile long lastUsed = System.currentTimeMillis();
+
+        synchronized void add(String label, String value, int weight) {
+            lastUsed = System.currentTimeMillis();
+            String key = label.toLowerCase(Locale.ROOT);
+            Item item = items.get(key);
+            if (item == null) {
+                item = new Item(truncate(label), value, List.copyOf(new LinkedHashSet<>(tokenize(label))));
+                if (item.words.isEmpty()) return;
+                items.put(key, item);
+                for (String w : item.words) words.computeIfAbsent(w, _ -> new HashSet<>()).add(item);
+                if (items.size() > MAX_ITEMS_PER_GUILD) evictEldest();
+            }
+            item.weight += weight;
+        }
+
+        synchronized List<Suggestion> suggest(List<String> query) {
+            lastUsed = System.currentTimeMillis();
+            List<Item> matches = new ArrayList<>();
+            if (query.isEmpty()) {
+                matches.addAll(items.values());
+            } else {
+                // Range-scan on the longest typed word, which is usually the most selective
+                String anchor = query.getFirst();
+                for (String q : query) if (q.length() > anchor.length()) anchor = q;
+
+                Set<Item> seen = new HashSet<>();
+                scan:
+                for (Set<Item> bucket : words.subMap(anchor, true, anchor + Character.MAX_VALUE, false).values()) {
+                    for (Item item : bucket) {
+                        if (seen.add(item) && item.matchesAll(query)) {
+                            matches.add(item);
+                            if (matches.size() >= MAX_CANDIDATES) break scan;
+                        }
+                    }
+                }
+            }
+
+            return matches.stream()
+                    .sorted(Comparator.comparingInt((Item i) -> i.weight).reversed()
+                            .thenComparing(i -> i.label, String.CASE_INSENSITIVE_ORDER))
+                    .limit(MAX_CHOICES)
+                    .map(i -> new Suggestion(i.label, i.value))
+                    .toList();
+        }
+
+        private void evictEldest() {
+            Iterator<Item> it = items.values().iterator();
+            Item eldest = it.next();
+            it.remove();
+            for (String w : eldest.words) {
+                Set<Item> bucket = words.get(w);
+                if (bucket != null && bucket.remove(eldest) && bucket.isEmpty()) words.remove(w);
+            }
+        }
+    }
+}
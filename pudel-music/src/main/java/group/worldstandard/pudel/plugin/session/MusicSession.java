@@ -1,36 +1,71 @@
 package group.worldstandard.pudel.plugin.session;
 
 import net.dv8tion.jda.api.entities.Message;
+import net.dv8tion.jda.api.entities.messages.MessageInteractionMetadata;
 import net.dv8tion.jda.api.interactions.InteractionHook;
+import net.dv8tion.jda.api.requests.RestAction;
+import net.dv8tion.jda.api.utils.messages.MessageEditData;
 
 /**
  * Tracks the state of an active Music Box session for a user.
+ *
+ * <p>Messages are addressed through the interaction hooks that created them, so editing or
+ * deleting them never needs the {@link Message} object and no extra request to fetch it.
  */
 public class MusicSession {
 
-    public enum View { MAIN, QUEUE, HISTORY, SEARCH }
+    public enum View { MAIN, QUEUE, HISTORY, SEARCH, PLAYLISTS, STATS }
 
     public final long userId;
     public final long guildId;
-    public Message message;          // The main Music Box message (persistent)
-    public Message tempMessage;      // Temporary popup message for search results / remove menu
-    public InteractionHook tempHook; // Hook for temp message lifecycle
+    public InteractionHook hook;     // Hook whose original response is the main Music Box message
+    public InteractionHook tempHook; // Hook for temp message lifecycle (search results / remove menu)
+    public long tempMessageId;       // Temp popup sent as a follow-up on tempHook, or 0 if it is tempHook's original
     public View view = View.MAIN;
     public int page = 0;
     public String lastAction = "Opened Music Box";
+    public final SessionUpdater.Slot updates = new SessionUpdater.Slot();
+    public final long openedAt = System.currentTimeMillis();
+    public String progressKey;       // Last rendered position/pause state, for skipping no-op refreshes
 
     public MusicSession(long userId, long guildId) {
         this.userId = userId;
         this.guildId = guildId;
     }
 
+    public boolean hasMessage() {
+        return hook != null;
+    }
+
+    public RestAction<Message> editMessage(MessageEditData data) {
+        return hook.editOriginal(data);
+    }
+
+    public void deleteMessage() {
+        if (hook != null) hook.deleteOriginal().queue(null, _ -> {});
+    }
+
+    /** Whether a component interaction came from the temporary popup rather than the Music Box. */
+    public boolean isTempMessage(Message message) {
+        if (tempHook == null) return false;
+        if (tempMessageId != 0) return message.getIdLong() == tempMessageId;
+        MessageInteractionMetadata origin = message.getInteractionMetadata();
+        return origin != null && origin.getIdLong() == tempHook.getInteraction().getIdLong();
+    }
+
+    /** Forget the temporary popup without deleting it, e.g. when its own interaction removes it */
+    public void detachTemp() {
+        tempHook = null;
+        tempMessageId = 0;
+    }
+
     /** Clean up the temporary popup message if it exists */
     public void cleanupTemp() {
-        if (tempMessage != null) {
-            tempMessage.delete().queue(null, _ -> {});
-            tempMessage = null;
+        if (tempHook != null) {
+            (tempMessageId != 0 ? tempHook.deleteMessageById(tempMessageId) : tempHook.deleteOriginal())
+                    .queue(null, _ -> {});
         }
-        tempHook = null;
+        detachTemp();
     }
 }
 
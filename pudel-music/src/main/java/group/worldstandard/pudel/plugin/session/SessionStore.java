@@ -0,0 +1,139 @@
+package group.worldstandard.pudel.plugin.session;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Active Music Box sessions by user, bounded in size and expired after a period without use.
+ *
+ * <p>Entries are kept in access order, so both the size bound and the periodic {@link #sweep()}
+ * only ever look at the eldest entries. Evicted sessions are passed to the eviction callback
+ * outside the store's lock, which is where their messages and hooks get released. A failing
+ * callback is logged and skipped, so it can neither stop the other evictions nor cancel the
+ * scheduled sweep.
+ */
+public class SessionStore {
+
+    private final long ttlMs;
+    private final int maxSize;
+    private final Consumer<MusicSession> onEvict;
+    private final Consumer<String> log;
+
+    /** Insertion-ordered; an access re-inserts the entry, so iteration runs from least recently used. */
+    private final LinkedHashMap<Long, Entry> entries = new LinkedHashMap<>();
+
+    private final AtomicLong expired = new AtomicLong();
+    private final AtomicLong overflowed = new AtomicLong();
+
+    private static final class Entry {
+        final MusicSession session;
+        long lastAccess;
+
+        Entry(MusicSession session, long now) {
+            this.session = session;
+            this.lastAccess = now;
+        }
+    }
+
+    public SessionStore(long ttlMs, int maxSize, Consumer<MusicSession> onEvict, Consumer<String> log) {
+        this.ttlMs = ttlMs;
+        this.maxSize = Math.max(1, maxSize);
+        this.onEvict = onEvict;
+        this.log = log;
+    }
+
+    /** Returns the user's session and refreshes its TTL, or {@code null} if none is live. */
+    public MusicSession get(long userId) {
+        MusicSession evicted = null;
+        MusicSession found = null;
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            Entry e = entries.get(userId);
+            if (e != null) {
+                if (now - e.lastAccess > ttlMs) {
+                    entries.remove(userId);
+                    expired.incrementAndGet();
+                    evicted = e.session;
+                } else {
+                    e.lastAccess = now;
+                    entries.remove(userId);
+                    entries.put(userId, e);
+                    found = e.session;
+                }
+            }
+        }
+        if (evicted != null) evict(List.of(evicted));
+        return found;
+    }
+
+    /** Returns the user's session without counting as an access. */
+    public synchronized MusicSession peek(long userId) {
+        Entry e = entries.get(userId);
+        return e != null ? e.session : null;
+    }
+
+    /**
+     * Stores a new session for its user and returns the one it replaced, which the caller owns
+     * and cleans up. Sessions pushed out by the size bound go to the eviction callback.
+     */
+    public MusicSession put(MusicSession session) {
+        List<MusicSession> evicted = new ArrayList<>();
+        Entry previous;
+        synchronized (this) {
+            previous = entries.remove(session.userId);
+            entries.put(session.userId, new Entry(session, System.currentTimeMillis()));
+            Iterator<Entry> it = entries.values().iterator();
+            while (entries.size() > maxSize && it.hasNext()) {
+                evicted.add(it.next().session);
+                it.remove();
+                overflowed.incrementAndGet();
+            }
+        }
+        evict(evicted);
+        return previous != null ? previous.session : null;
+    }
+
+    /** Evicts every session idle for longer than the TTL. Never throws, as it runs on a schedule. */
+    public void sweep() {
+        try {
+            List<MusicSession> evicted = new ArrayList<>();
+            long now = System.currentTimeMillis();
+            synchronized (this) {
+                Iterator<Entry> it = entries.values().iterator();
+                while (it.hasNext()) {
+                    Entry e = it.next();
+                    if (now - e.lastAccess <= ttlMs) break; // access order: the rest are younger
+                    evicted.add(e.session);
+                    it.remove();
+                    expired.incrementAndGet();
+                }
+            }
+            evict(evicted);
+        } catch (RuntimeException e) {
+            log.accept("Music Box session sweep failed: " + e);
+        }
+    }
+
+    private void evict(List<MusicSession> evicted) {
+        for (MusicSession session : evicted) {
+            try {
+                onEvict.accept(session);
+            } catch (RuntimeException e) {
+                log.accept("Releasing Music Box session of user %d failed: %s".formatted(session.userId, e));
+            }
+        }
+    }
+
+    public synchronized int size() { return entries.size(); }
+    public long getExpired() { return expired.get(); }
+    public long getOverflowed() { return overflowed.get(); }
+
+    public String describe() {
+        return "Music Box sessions: %d live, %d expired, %d evicted over capacity".formatted(
+                size(), getExpired(), getOverflowed());
+    }
+}
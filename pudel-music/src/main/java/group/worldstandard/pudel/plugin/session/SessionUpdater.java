@@ -0,0 +1,101 @@
+package group.worldstandard.pudel.plugin.session;
+
+import net.dv8tion.jda.api.utils.messages.MessageEditData;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces Music Box edits so each session message is edited at most once per interval.
+ *
+ * <p>Callers request a render whenever state changes; only the latest request is kept. It runs
+ * when the interval since the previous edit has passed and that edit has completed, so bursts
+ * such as playlist imports collapse into a few edits that always show the current state.
+ * The timer only keeps time; views, which may read the database, are built on {@code renderer}.
+ */
+public class SessionUpdater {
+
+    private final ScheduledExecutorService timer;
+    private final Executor renderer;
+    private final long minIntervalMs;
+
+    private final AtomicLong editsSent = new AtomicLong();
+    private final AtomicLong editsCoalesced = new AtomicLong();
+
+    public SessionUpdater(ScheduledExecutorService timer, Executor renderer, long minIntervalMs) {
+        this.timer = timer;
+        this.renderer = renderer;
+        this.minIntervalMs = Math.max(0, minIntervalMs);
+    }
+
+    /** Schedules an edit of the session message; a render still waiting is replaced. */
+    public void request(MusicSession session, Supplier<MessageEditData> render) {
+        Slot slot = session.updates;
+        synchronized (slot) {
+            if (slot.pending != null) editsCoalesced.incrementAndGet();
+            slot.pending = render;
+            if (!slot.scheduled && !slot.inFlight) schedule(session, slot);
+        }
+    }
+
+    public long getEditsSent() { return editsSent.get(); }
+    public long getEditsCoalesced() { return editsCoalesced.get(); }
+
+    public String describe() {
+        return "Music Box updates: %d edits sent, %d coalesced".formatted(getEditsSent(), getEditsCoalesced());
+    }
+
+    // Caller holds the slot monitor
+    private void schedule(MusicSession session, Slot slot) {
+        long delay = Math.max(0, slot.lastSentAt + minIntervalMs - System.currentTimeMillis());
+        slot.scheduled = true;
+        timer.schedule(() -> {
+            try {
+                renderer.execute(() -> flush(session, slot));
+            } catch (RejectedExecutionException _) {
+                // Shutting down; leave the slot idle
+                synchronized (slot) {
+                    slot.scheduled = false;
+                }
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void flush(MusicSession session, Slot slot) {
+        Supplier<MessageEditData> render;
+        synchronized (slot) {
+            slot.scheduled = false;
+            render = slot.pending;
+            slot.pending = null;
+            if (render == null || !session.hasMessage()) return;
+            slot.inFlight = true;
+        }
+
+        try {
+            session.editMessage(render.get()).queue(_ -> completed(session, slot), _ -> completed(session, slot));
+            editsSent.incrementAndGet();
+        } catch (RuntimeException e) {
+            completed(session, slot);
+        }
+    }
+
+    private void completed(MusicSession session, Slot slot) {
+        synchronized (slot) {
+            slot.inFlight = false;
+            slot.lastSentAt = System.currentTimeMillis();
+            if (slot.pending != null && !slot.scheduled) schedule(session, slot);
+        }
+    }
+
+    /** Per-session update state, guarded by its own monitor. */
+    public static final class Slot {
+        private Supplier<MessageEditData> pending;
+        private boolean scheduled;
+        private boolean inFlight;
+        private long lastSentAt;
+    }
+}
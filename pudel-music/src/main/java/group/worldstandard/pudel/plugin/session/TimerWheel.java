@@ -0,0 +1,85 @@
+package group.worldstandard.pudel.plugin.session;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Hashed timer wheel for large numbers of coarse, one-shot timeouts.
+ *
+ * <p>A single periodic task on the shared timer advances the wheel one bucket per tick and
+ * expires whatever is due there, so scheduling and expiring a timeout are O(1) regardless of
+ * how many are pending. Timeouts further away than one revolution wait out extra rounds in
+ * their bucket. Expiry callbacks run on the timer thread and must be short.
+ */
+public class TimerWheel<T> {
+
+    private final long tickMs;
+    private final List<ArrayDeque<Timeout<T>>> buckets;
+    private final Consumer<T> onExpire;
+    private final ScheduledFuture<?> ticker;
+
+    private int cursor = 0;
+    private int pending = 0;
+
+    private static final class Timeout<T> {
+        final T item;
+        long rounds;
+
+        Timeout(T item, long rounds) {
+            this.item = item;
+            this.rounds = rounds;
+        }
+    }
+
+    public TimerWheel(ScheduledExecutorService timer, long tickMs, int wheelSize, Consumer<T> onExpire) {
+        this.tickMs = Math.max(1, tickMs);
+        this.onExpire = onExpire;
+        this.buckets = new ArrayList<>(wheelSize);
+        for (int i = 0; i < wheelSize; i++) buckets.add(new ArrayDeque<>());
+        this.ticker = timer.scheduleAtFixedRate(this::tick, this.tickMs, this.tickMs, TimeUnit.MILLISECONDS);
+    }
+
+    /** Expires {@code item} after roughly {@code delayMs}, rounded up to whole ticks. */
+    public synchronized void schedule(T item, long delayMs) {
+        long ticks = Math.max(1, (delayMs + tickMs - 1) / tickMs);
+        int size = buckets.size();
+        int slot = (int) ((cursor + ticks) % size);
+        buckets.get(slot).add(new Timeout<>(item, (ticks - 1) / size));
+        pending++;
+    }
+
+    /** Number of timeouts waiting to expire. */
+    public synchronized int size() { return pending; }
+
+    public void stop() {
+        ticker.cancel(false);
+    }
+
+    private void tick() {
+        List<T> expired = new ArrayList<>();
+        synchronized (this) {
+            cursor = (cursor + 1) % buckets.size();
+            Iterator<Timeout<T>> it = buckets.get(cursor).iterator();
+            while (it.hasNext()) {
+                Timeout<T> t = it.next();
+                if (t.rounds-- > 0) continue;
+                it.remove();
+                pending--;
+                expired.add(t.item);
+            }
+        }
+        for (T item : expired) {
+            try {
+                onExpire.accept(item);
+            } catch (RuntimeException _) {
+                // One bad callback must not stop the wheel; scheduleAtFixedRate cancels on a throw
+            }
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package group.worldstandard.pudel.plugin.stats;
+
+import group.worldstandard.pudel.api.PluginContext;
+import group.worldstandard.pudel.api.database.PluginRepository;
+import group.worldstandard.pudel.plugin.entity.GuildDailyStat;
+import group.worldstandard.pudel.plugin.entity.HistoryEntry;
+import group.worldstandard.pudel.plugin.entity.ListenerDailyStat;
+import group.worldstandard.pudel.plugin.entity.TrackDailyStat;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Per-guild, per-day play counts kept next to {@code music_history}.
+ *
+ * <p>Every history row increments one track rollup, one listener rollup and the guild's daily
+ * total on the background executor. Each rollup table is unique on its guild, day and key, so a
+ * row inserted concurrently, e.g. by another instance, makes the insert fail and the play is
+ * counted on that row instead. Reports only read the rollups of the requested days, and only
+ * their top rows plus the daily totals, so their cost does not grow with history size.
+ *
+ * <p>The counts are approximate across instances. An increment reads the row and saves it back,
+ * since repositories have no atomic update, and only the background executor orders increments.
+ * Within one instance no play is lost. Two instances bumping the same row at once can lose one
+ * play. With leases a guild's plays come from one instance at a time, so that only happens around
+ * a handover. {@code music_history} stays the exact record.
+ */
+public class ListeningStats {
+
+    /** Rollup rows read per day; a track outside a day's top rows rarely makes the weekly top. */
+    private static final int ROWS_PER_DAY = 50;
+    private static final int MIGRATION_PAGE = 1000;
+
+    public record Ranked<T>(T key, String label, int plays) {}
+
+    public record Report(List<Ranked<String>> topTracks, List<Ranked<Long>> topListeners, int totalPlays) {}
+
+    private final PluginContext context;
+    private final PluginRepository<TrackDailyStat> trackRepo;
+    private final PluginRepository<ListenerDailyStat> listenerRepo;
+    private final PluginRepository<GuildDailyStat> guildRepo;
+    private final ExecutorService background;
+
+    public ListeningStats(PluginContext context, PluginRepository<TrackDailyStat> trackRepo,
+                          PluginRepository<ListenerDailyStat> listenerRepo, PluginRepository<GuildDailyStat> guildRepo,
+                          ExecutorService background) {
+        this.context = context;
+        this.trackRepo = trackRepo;
+        this.listenerRepo = listenerRepo;
+        this.guildRepo = guildRepo;
+        this.background = background;
+    }
+
+    /** Counts a freshly written history row. Autoplay rows (user 0) count for tracks only. */
+    public void recordPlay(HistoryEntry entry) {
+        long guildId = entry.getGuildId();
+        long userId = entry.getUserId();
+        String title = entry.getTrackTitle();
+        String key = entry.getTrackUrl() != null && !entry.getTrackUrl().isBlank() ? entry.getTrackUrl() : title;
+        long day = dayOf(entry.getPlayedAt());
+
+        background.execute(() -> {
+            try {
+                incrementTrack(guildId, day, key, title);
+                if (userId != 0) incrementListener(guildId, day, userId);
+                incrementGuild(guildId, day);
+            } catch (RuntimeException e) {
+                context.log("warn", "Stats rollup failed: " + e.getMessage());
+            }
+        });
+    }
+
+    /** Top tracks and listeners over the last {@code days} days, today included. */
+    public Report report(long guildId, int days, int limit) {
+        long today = LocalDate.now(ZoneOffset.UTC).toEpochDay();
+        Map<String, Ranked<String>> tracks = new HashMap<>();
+        Map<Long, Integer> listeners = new HashMap<>();
+        int total = 0;
+
+        for (long day = today - days + 1; day <= today; day++) {
+            for (TrackDailyStat s : trackRepo.query()
+                    .where("guild_id", guildId).where("day", day)
+                    .orderByDesc("plays").limit(ROWS_PER_DAY).list()) {
+                int plays = s.getPlays();
+                tracks.merge(s.getTrackKey(), new Ranked<>(s.getTrackKey(), s.getTrackTitle(), plays),
+                        (a, b) -> new Ranked<>(a.key(), a.label(), a.plays() + b.plays()));
+            }
+            total += guildRepo.query().where("guild_id", guildId).where("day", day).limit(1).list()
+                    .stream().mapToInt(GuildDailyStat::getPlays).sum();
+            for (ListenerDailyStat s : listenerRepo.query()
+                    .where("guild_id", guildId).where("day", day)
+                    .orderByDesc("plays").limit(ROWS_PER_DAY).list()) {
+                listeners.merge(s.getUserId(), s.getPlays(), Integer::sum);
+            }
+        }
+
+        List<Ranked<String>> topTracks = tracks.values().stream()
+                .sorted(Comparator.comparingInt((Ranked<String> r) -> r.plays()).reversed())
+                .limit(limit)
+                .toList();
+        List<Ranked<Long>> topListeners = listeners.entrySet().stream()
+                .sorted(Map.Entry.<Long, Integer>comparingByValue().reversed())
+                .limit(limit)
+                .map(e -> new Ranked<>(e.getKey(), "<@" + e.getKey() + ">", e.getValue()))
+                .toList();
+        return new Report(topTracks, topListeners, total);
+    }
+
+    // ==================== ROLLUPS ====================
+
+    private void incrementTrack(long guildId, long day, String key, String title) {
+        increment(trackRepo,
+                () -> first(trackRepo.query().where("guild_id", guildId).where("day", day).where("track_key", key)
+                        .limit(1).list()),
+                () -> {
+                    TrackDailyStat stat = new TrackDailyStat();
+                    stat.setGuildId(guildId);
+                    stat.setDay(day);
+                    stat.setTrackKey(key);
+                    stat.setTrackTitle(title);
+                    stat.setPlays(1);
+                    return stat;
+                },
+                stat -> stat.setPlays(stat.getPlays() + 1));
+    }
+
+    private void incrementListener(long guildId, long day, long userId) {
+        increment(listenerRepo,
+                () -> first(listenerRepo.query().where("guild_id", guildId).where("day", day).where("user_id", userId)
+                        .limit(1).list()),
+                () -> {
+                    ListenerDailyStat stat = new ListenerDailyStat();
+                    stat.setGuildId(guildId);
+                    stat.setDay(day);
+                    stat.setUserId(userId);
+                    stat.setPlays(1);
+                    return stat;
+                },
+                stat -> stat.setPlays(stat.getPlays() + 1));
+    }
+
+    private void incrementGuild(long guildId, long day) {
+        increment(guildRepo,
+                () -> first(guildRepo.query().where("guild_id", guildId).where("day", day).limit(1).list()),
+                () -> {
+                    GuildDailyStat stat = new GuildDailyStat();
+                    stat.setGuildId(guildId);
+                    stat.setDay(day);
+                    stat.setPlays(1);
+                    return stat;
+                },
+                stat -> stat.setPlays(stat.getPlays() + 1));
+    }
+
+    /**
+     * Inserts {@code create} when {@code find} has no row, otherwise applies {@code bump} to it. An
+     * insert the unique index refuses lost a race with another writer; the play then goes onto the
+     * row that writer inserted. The bump itself is a plain read-modify-write; see the class notes.
+     */
+    private static <T> void increment(PluginRepository<T> repo, Supplier<Optional<T>> find,
+                                      Supplier<T> create, Consumer<T> bump) {
+        Optional<T> existing = find.get();
+        if (existing.isEmpty()) {
+            try {
+                repo.save(create.get());
+                return;
+            } catch (RuntimeException e) {
+                existing = find.get();
+                if (existing.isEmpty()) throw e;
+            }
+        }
+        T row = existing.get();
+        bump.accept(row);
+        repo.save(row);
+    }
+
+    private static <T> Optional<T> first(List<T> rows) {
+        return rows.isEmpty() ? Optional.empty() : Optional.of(rows.getFirst());
+    }
+
+    // ==================== MIGRATION ====================
+
+    /**
+     * Merges rollup rows that share a guild, day and key, and fills in the daily totals from the
+     * track rollups. Runs once, before the unique indexes are created, which duplicates would fail.
+     */
+    public static void mergeDuplicates(PluginRepository<TrackDailyStat> trackRepo,
+                                       PluginRepository<ListenerDailyStat> listenerRepo,
+                                       PluginRepository<GuildDailyStat> guildRepo) {
+        Map<String, TrackDailyStat> tracks = new HashMap<>();
+        Map<String, GuildDailyStat> totals = new HashMap<>();
+        for (TrackDailyStat s : all(trackRepo)) {
+            GuildDailyStat total = totals.computeIfAbsent(s.getGuildId() + ":" + s.getDay(), _ -> {
+                GuildDailyStat t = new GuildDailyStat();
+                t.setGuildId(s.getGuildId());
+                t.setDay(s.getDay());
+                t.setPlays(0);
+                return t;
+            });
+            total.setPlays(total.getPlays() + s.getPlays());
+            TrackDailyStat kept = tracks.putIfAbsent(s.getGuildId() + ":" + s.getDay() + ":" + s.getTrackKey(), s);
+            if (kept != null) {
+                kept.setPlays(kept.getPlays() + s.getPlays());
+                trackRepo.save(kept);
+                trackRepo.deleteById(s.getId());
+            }
+        }
+        totals.values().forEach(guildRepo::save);
+
+        Map<String, ListenerDailyStat> listeners = new HashMap<>();
+        for (ListenerDailyStat s : all(listenerRepo)) {
+            ListenerDailyStat kept = listeners.putIfAbsent(s.getGuildId() + ":" + s.getDay() + ":" + s.getUserId(), s);
+            if (kept != null) {
+                kept.setPlays(kept.getPlays() + s.getPlays());
+                listenerRepo.save(kept);
+                listenerRepo.deleteById(s.getId());
+            }
+        }
+    }
+
+    private static <T> List<T> all(PluginRepository<T> repo) {
+        List<T> rows = new ArrayList<>();
+        for (int offset = 0; ; offset += MIGRATION_PAGE) {
+            List<T> page = repo.query().orderBy("id").limit(MIGRATION_PAGE).offset(offset).list();
+            rows.addAll(page);
+            if (page.size() < MIGRATION_PAGE) return rows;
+        }
+    }
+
+    private static long dayOf(Long epochSecond) {
+        Instant at = epochSecond != null ? Instant.ofEpochSecond(epochSecond) : Instant.now();
+        return LocalDate.ofInstant(at, ZoneOffset.UTC).toEpochDay();
+    }
+}
@@ -2,10 +2,17 @@ package group.worldstandard.pudel.plugin.view;
 
 import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
 import group.worldstandard.pudel.api.database.PluginRepository;
+import group.worldstandard.pudel.api.database.QueryBuilder;
 import group.worldstandard.pudel.plugin.audio.GuildMusicManager;
+import group.worldstandard.pudel.plugin.audio.PlaylistImporter;
+import group.worldstandard.pudel.plugin.audio.TrackScheduler;
 import group.worldstandard.pudel.plugin.entity.HistoryEntry;
 import group.worldstandard.pudel.plugin.entity.QueueEntry;
+import group.worldstandard.pudel.plugin.entity.SavedPlaylist;
+import group.worldstandard.pudel.plugin.metrics.LatencyHistogram;
+import group.worldstandard.pudel.plugin.metrics.MusicMetrics;
 import group.worldstandard.pudel.plugin.session.MusicSession;
+import group.worldstandard.pudel.plugin.stats.ListeningStats;
 import net.dv8tion.jda.api.components.actionrow.ActionRow;
 import net.dv8tion.jda.api.components.buttons.Button;
 import net.dv8tion.jda.api.components.container.Container;
@@ -19,9 +26,18 @@ import net.dv8tion.jda.api.components.thumbnail.Thumbnail;
 import java.awt.Color;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongFunction;
+import java.util.function.LongUnaryOperator;
+import java.util.function.Supplier;
 
 /**
  * Builds Components v2 views for the Music Box plugin.
+ *
+ * <p>Queue and history views depend only on guild state, so they are cached per guild by view
+ * and page and reused until the guild's state version changes. Rows that never change are built
+ * once.
  */
 public class MusicViewBuilder {
 
@@ -30,22 +46,81 @@ public class MusicViewBuilder {
     private static final Color ACCENT_IDLE = new Color(0x2B2D31);
     private static final Color ACCENT_QUEUE = new Color(0xFFA500);
     private static final Color ACCENT_HISTORY = new Color(0x808080);
+    private static final Color ACCENT_PLAYLIST = new Color(0x5865F2);
+    private static final Color ACCENT_STATS = new Color(0xF1C40F);
 
     private final String btnPrefix;
     private final String menuPrefix;
     private final PluginRepository<QueueEntry> queueRepo;
     private final PluginRepository<HistoryEntry> historyRepo;
+    private final PluginRepository<SavedPlaylist> playlistRepo;
+    private final LongUnaryOperator stateVersion;
+    private final LongFunction<GuildMusicManager> players;
+
+    // Rows without state, built once
+    private final ActionRow navRow;
+    private final ActionRow backToPlayerRow;
+    private final ActionRow cancelRow;
+    private final ActionRow backToQueueRow;
+
+    private enum CachedView { QUEUE, HISTORY }
+    private record ViewKey(CachedView view, int page) {}
+    private record Rendered(Container container, int page) {}
+
+    /** Renders of one guild at one state version. */
+    private static final class GuildViews {
+        final long version;
+        final Map<ViewKey, Rendered> views = new ConcurrentHashMap<>();
+        /** Play time queued ahead of each queue page, filled in as pages are rendered. */
+        final Map<Integer, Long> pageStarts = new ConcurrentHashMap<>();
+
+        GuildViews(long version) { this.version = version; }
+    }
+
+    private final Map<Long, GuildViews> cache = new ConcurrentHashMap<>();
 
+    /**
+     * @param stateVersion maps a guild ID to its current state version, or a negative value when
+     *                     the guild has no player and its views should not be cached
+     * @param players      maps a guild ID to its player, or {@code null} when it has none
+     */
     public MusicViewBuilder(String btnPrefix, String menuPrefix,
                             PluginRepository<QueueEntry> queueRepo,
-                            PluginRepository<HistoryEntry> historyRepo) {
+                            PluginRepository<HistoryEntry> historyRepo,
+                            PluginRepository<SavedPlaylist> playlistRepo,
+                            LongUnaryOperator stateVersion,
+                            LongFunction<GuildMusicManager> players) {
         this.btnPrefix = btnPrefix;
         this.menuPrefix = menuPrefix;
         this.queueRepo = queueRepo;
         this.historyRepo = historyRepo;
+        this.playlistRepo = playlistRepo;
+        this.stateVersion = stateVersion;
+        this.players = players;
+
+        this.navRow = ActionRow.of(
+                Button.success(btnPrefix + "queuesong", "🎵 Queue Song"),
+                Button.primary(btnPrefix + "queueview", "📋 Queue"),
+                Button.secondary(btnPrefix + "history", "📜 History"),
+                Button.secondary(btnPrefix + "playlists", "📂 Playlists"),
+                Button.secondary(btnPrefix + "stats", "📊 Stats")
+        );
+        this.backToPlayerRow = ActionRow.of(Button.primary(btnPrefix + "back", "🔙 Back to Player"));
+        this.cancelRow = ActionRow.of(Button.primary(btnPrefix + "back", "🔙 Cancel"));
+        this.backToQueueRow = ActionRow.of(Button.primary(btnPrefix + "queueview", "🔙 Back to Queue"));
+    }
+
+    /** Drops every cached render of a guild, e.g. when its player is destroyed. */
+    public void forget(long guildId) {
+        cache.remove(guildId);
     }
 
     public Container buildMainView(GuildMusicManager mgr, MusicSession session) {
+        return buildMainView(mgr, session.lastAction);
+    }
+
+    /** Main view without per-session state, so one render can be shared by a whole guild. */
+    public Container buildMainView(GuildMusicManager mgr, String lastAction) {
         AudioTrack current = mgr.player.getPlayingTrack();
         List<ContainerChildComponent> children = new ArrayList<>();
 
@@ -71,15 +146,23 @@ public class MusicViewBuilder {
                 default -> "➡ Off";
             };
             String shuffleIcon = mgr.scheduler.shuffle ? "🔀 On" : "➡ Off";
+            String autoplayIcon = mgr.scheduler.autoplay ? "📻 On" : "➡ Off";
             String pauseIcon = mgr.player.isPaused() ? "⏸ Paused" : "▶ Playing";
 
             children.add(TextDisplay.of(
                     "⏱ " + formatTime(current.getPosition()) + " / " + formatTime(current.getDuration())
                             + "\u2003\u2003" + pauseIcon
                             + "\n🔁 Loop: " + loopIcon + "\u2003\u2003🔀 Shuffle: " + shuffleIcon
+                            + "\u2003\u2003📻 Autoplay: " + autoplayIcon
+                            + upNext(mgr)
             ));
 
-            children.add(TextDisplay.of("-# Last Action: %s".formatted(session.lastAction)));
+            children.add(TextDisplay.of("-# Last Action: %s".formatted(lastAction)));
+            PlaylistImporter.Progress importing = mgr.importProgress;
+            if (importing != null) {
+                children.add(TextDisplay.of("-# 📥 Importing **%s**: %s".formatted(
+                        importing.playlistName(), formatImportCount(importing))));
+            }
             children.add(Separator.create(true, Separator.Spacing.SMALL));
 
             boolean isPaused = mgr.player.isPaused();
@@ -87,7 +170,8 @@ public class MusicViewBuilder {
                     Button.primary(btnPrefix + "pause", isPaused ? "▶ Resume" : "⏸ Pause"),
                     Button.secondary(btnPrefix + "skip", "⏭ Skip"),
                     Button.secondary(btnPrefix + "loop", "🔁 Loop"),
-                    Button.secondary(btnPrefix + "shuffle", "🔀 Shuffle")
+                    Button.secondary(btnPrefix + "shuffle", "🔀 Shuffle"),
+                    Button.secondary(btnPrefix + "autoplay", "📻 Autoplay")
             ));
         } else {
             children.add(TextDisplay.of("# 🎵 Music Box"));
@@ -96,46 +180,67 @@ public class MusicViewBuilder {
             children.add(Separator.create(true, Separator.Spacing.SMALL));
         }
 
-        children.add(ActionRow.of(
-                Button.success(btnPrefix + "queuesong", "🎵 Queue Song"),
-                Button.primary(btnPrefix + "queueview", "📋 Queue"),
-                Button.secondary(btnPrefix + "history", "📜 History")
-        ));
+        children.add(navRow);
 
         Color accent = current != null ? ACCENT_PLAYING : ACCENT_IDLE;
         return Container.of(children).withAccentColor(accent);
     }
 
     public Container buildQueueView(MusicSession session) {
-        List<QueueEntry> queue = queueRepo.query()
+        return cached(session, CachedView.QUEUE, () -> renderQueueView(session));
+    }
+
+    private Container renderQueueView(MusicSession session) {
+        GuildMusicManager mgr = players.apply(session.guildId);
+        boolean fairMode = mgr != null && mgr.scheduler.fairQueue;
+        boolean fair = fairMode && !mgr.scheduler.shuffle;
+
+        int totalItems = (int) queueRepo.query()
                 .where("guild_id", session.guildId)
                 .where("status", "QUEUE")
-                .list();
-
-        int totalItems = queue.size();
+                .count();
         int totalPages = Math.max(1, (int) Math.ceil((double) totalItems / PAGE_SIZE));
         session.page = Math.min(session.page, totalPages - 1);
+        int start = session.page * PAGE_SIZE;
+        List<QueueEntry> queue = queuedInOrder(session.guildId, fair).limit(PAGE_SIZE).offset(start).list();
 
         List<ContainerChildComponent> children = new ArrayList<>();
         children.add(TextDisplay.of("# 📋 Queue"));
+        if (fair) children.add(TextDisplay.of("-# ⚖ Fair queue: taking turns between requesters"));
         children.add(Separator.create(true, Separator.Spacing.SMALL));
 
         if (queue.isEmpty()) {
             children.add(TextDisplay.of("_Queue is empty. Use **🎵 Queue Song** to add tracks!_"));
         } else {
-            int start = session.page * PAGE_SIZE;
-            int end = Math.min(start + PAGE_SIZE, totalItems);
+            long untilFirst = untilQueueStarts(mgr);
+            boolean paused = mgr != null && mgr.player.isPaused();
+            long now = System.currentTimeMillis();
 
+            // Start offsets are a running sum of stored durations, so nothing is decoded here
             StringBuilder sb = new StringBuilder();
-            for (int i = start; i < end; i++) {
+            long offset = untilFirst >= 0 ? pageStartOffset(session.guildId, session.page, fair) : 0;
+            for (int i = 0; i < queue.size(); i++) {
                 QueueEntry entry = queue.get(i);
                 String title = entry.getTitle();
                 if (title.length() > 60) title = title.substring(0, 57) + "...";
-                sb.append(String.format("`%d.` %s\n", i + 1, title));
+                sb.append('`').append(start + i + 1).append(".` ").append(title);
+                if (fair && entry.getUserId() != null && entry.getUserId() != TrackScheduler.AUTOPLAY_USER) {
+                    sb.append(" — <@").append(entry.getUserId()).append('>');
+                }
+                if (untilFirst >= 0) {
+                    long startsIn = untilFirst + offset;
+                    sb.append(paused
+                            ? " · ⏳ +" + formatTime(startsIn)
+                            : " · <t:" + (now + startsIn) / 1000 + ":R>");
+                }
+                sb.append('\n');
+                offset += entry.getDurationMs() != null ? entry.getDurationMs() : 0;
             }
+            if (untilFirst >= 0) pageStarts(session.guildId).put(session.page + 1, offset);
             children.add(TextDisplay.of(sb.toString()));
+            String total = mgr != null ? " • ⏱ " + formatTime(mgr.scheduler.getQueuedMillis()) : "";
             children.add(TextDisplay.of("-# Page " + (session.page + 1) + "/" + totalPages
-                    + " • " + totalItems + " tracks total"));
+                    + " • " + totalItems + " tracks total" + total));
         }
 
         children.add(Separator.create(true, Separator.Spacing.SMALL));
@@ -148,22 +253,31 @@ public class MusicViewBuilder {
                 Button.danger(btnPrefix + "clearqueue", "🧹 Clear All").withDisabled(queue.isEmpty())
         ));
         children.add(ActionRow.of(
-                Button.primary(btnPrefix + "back", "🔙 Back to Player")
+                Button.primary(btnPrefix + "back", "🔙 Back to Player"),
+                Button.success(btnPrefix + "saveplaylist", "💾 Save as Playlist").withDisabled(queue.isEmpty()),
+                Button.secondary(btnPrefix + "fairqueue", fairMode ? "⚖ Fair Queue: On" : "⚖ Fair Queue: Off")
         ));
 
         return Container.of(children).withAccentColor(ACCENT_QUEUE);
     }
 
     public Container buildHistoryView(MusicSession session) {
+        return cached(session, CachedView.HISTORY, () -> renderHistoryView(session));
+    }
+
+    private Container renderHistoryView(MusicSession session) {
+        int totalItems = (int) historyRepo.query()
+                .where("guild_id", session.guildId)
+                .count();
+        int totalPages = Math.max(1, (int) Math.ceil((double) totalItems / PAGE_SIZE));
+        session.page = Math.min(session.page, totalPages - 1);
         List<HistoryEntry> history = historyRepo.query()
                 .where("guild_id", session.guildId)
                 .orderByDesc("played_at")
+                .limit(PAGE_SIZE)
+                .offset(session.page * PAGE_SIZE)
                 .list();
 
-        int totalItems = history.size();
-        int totalPages = Math.max(1, (int) Math.ceil((double) totalItems / PAGE_SIZE));
-        session.page = Math.min(session.page, totalPages - 1);
-
         List<ContainerChildComponent> children = new ArrayList<>();
         children.add(TextDisplay.of("# 📜 History"));
         children.add(Separator.create(true, Separator.Spacing.SMALL));
@@ -171,16 +285,12 @@ public class MusicViewBuilder {
         if (history.isEmpty()) {
             children.add(TextDisplay.of("_No history yet. Play some music!_"));
         } else {
-            int start = session.page * PAGE_SIZE;
-            int end = Math.min(start + PAGE_SIZE, totalItems);
-
             StringBuilder sb = new StringBuilder();
-            for (int i = start; i < end; i++) {
-                HistoryEntry h = history.get(i);
-                String time = h.getPlayedAt().toString();
+            for (HistoryEntry h : history) {
                 String title = h.getTrackTitle();
                 if (title.length() > 50) title = title.substring(0, 47) + "...";
-                sb.append(String.format("<t:%s:S> [%s](%s)\n", time, title, h.getTrackUrl()));
+                sb.append("<t:").append(h.getPlayedAt()).append(":S> [").append(title)
+                        .append("](").append(h.getTrackUrl()).append(")\n");
             }
             children.add(TextDisplay.of(sb.toString()));
             children.add(TextDisplay.of("-# Page " + (session.page + 1) + "/" + totalPages
@@ -198,6 +308,138 @@ public class MusicViewBuilder {
         return Container.of(children).withAccentColor(ACCENT_HISTORY);
     }
 
+    public Container buildPlaylistView(MusicSession session) {
+        List<SavedPlaylist> playlists = listPlaylists(session);
+
+        List<ContainerChildComponent> children = new ArrayList<>();
+        children.add(TextDisplay.of("# 📂 Saved Playlists"));
+        children.add(Separator.create(true, Separator.Spacing.SMALL));
+
+        if (playlists.isEmpty()) {
+            children.add(TextDisplay.of("_No saved playlists. Use **💾 Save as Playlist** in the queue view!_"));
+        } else {
+            StringBuilder sb = new StringBuilder();
+            for (SavedPlaylist p : playlists) {
+                sb.append(p.getGuildId() == 0 ? "👤 " : "🏠 ")
+                        .append("**").append(p.getName()).append("**")
+                        .append(" — ").append(p.getTrackCount()).append(" tracks\n");
+            }
+            children.add(TextDisplay.of(sb.toString()));
+            children.add(TextDisplay.of("-# 👤 Only you • 🏠 Everyone in this server"));
+
+            StringSelectMenu.Builder load = StringSelectMenu.create(menuPrefix + "loadplaylist")
+                    .setPlaceholder("Select a playlist to queue...");
+            StringSelectMenu.Builder delete = StringSelectMenu.create(menuPrefix + "deleteplaylist")
+                    .setPlaceholder("Select one of your playlists to delete...");
+            boolean ownsAny = false;
+            for (SavedPlaylist p : playlists) {
+                String label = p.getName().length() > 90 ? p.getName().substring(0, 87) + "..." : p.getName();
+                load.addOption(label, String.valueOf(p.getId()), p.getTrackCount() + " tracks");
+                if (p.getUserId() == session.userId) {
+                    delete.addOption(label, String.valueOf(p.getId()));
+                    ownsAny = true;
+                }
+            }
+            children.add(ActionRow.of(load.build()));
+            if (ownsAny) children.add(ActionRow.of(delete.build()));
+        }
+
+        children.add(Separator.create(true, Separator.Spacing.SMALL));
+        children.add(backToPlayerRow);
+
+        return Container.of(children).withAccentColor(ACCENT_PLAYLIST);
+    }
+
+    public Container buildStatsView(ListeningStats.Report report, int days) {
+        List<ContainerChildComponent> children = new ArrayList<>();
+        children.add(TextDisplay.of("# 📊 This Week"));
+        children.add(Separator.create(true, Separator.Spacing.SMALL));
+
+        if (report.totalPlays() == 0) {
+            children.add(TextDisplay.of("_Nothing played in the last " + days + " days._"));
+        } else {
+            StringBuilder tracks = new StringBuilder("### 🎵 Top Tracks\n");
+            int rank = 1;
+            for (ListeningStats.Ranked<String> t : report.topTracks()) {
+                String title = t.label();
+                if (title.length() > 50) title = title.substring(0, 47) + "...";
+                tracks.append('`').append(rank++).append(".` ").append(title)
+                        .append(" — ").append(t.plays()).append(t.plays() == 1 ? " play\n" : " plays\n");
+            }
+            children.add(TextDisplay.of(tracks.toString()));
+
+            StringBuilder listeners = new StringBuilder("### 🎧 Top Listeners\n");
+            rank = 1;
+            for (ListeningStats.Ranked<Long> l : report.topListeners()) {
+                listeners.append('`').append(rank++).append(".` ").append(l.label())
+                        .append(" — ").append(l.plays()).append(l.plays() == 1 ? " play\n" : " plays\n");
+            }
+            if (!report.topListeners().isEmpty()) children.add(TextDisplay.of(listeners.toString()));
+            children.add(TextDisplay.of("-# " + report.totalPlays() + " plays in the last " + days + " days"));
+        }
+
+        children.add(Separator.create(true, Separator.Spacing.SMALL));
+        children.add(backToPlayerRow);
+
+        return Container.of(children).withAccentColor(ACCENT_STATS);
+    }
+
+    /**
+     * Operator view of {@link MusicMetrics}, followed by the one-line summaries other components
+     * log on shutdown.
+     */
+    public Container buildMetricsView(MusicMetrics metrics, List<String> summaries) {
+        List<ContainerChildComponent> children = new ArrayList<>();
+        children.add(TextDisplay.of("# 🩺 Music Plugin Stats"));
+        children.add(Separator.create(true, Separator.Spacing.SMALL));
+
+        long sent = metrics.framesSent.sum();
+        long silent = metrics.framesSilent.sum();
+        long polled = sent + silent;
+        LatencyHistogram nextTrack = metrics.getNextTrackMicros();
+        children.add(TextDisplay.of("### 🔊 Playback\n"
+                + "Players: **" + metrics.getActivePlayers() + "** • Voice connections: **" + metrics.getVoiceConnections() + "**\n"
+                + "Frames: " + sent + " sent, " + silent + " silent"
+                + (polled > 0 ? " (" + (sent * 100 / polled) + "% audio)" : "") + "\n"
+                + "nextTrack: p50 " + nextTrack.percentile(0.50) + " µs, p95 " + nextTrack.percentile(0.95) + " µs"
+                + " over " + nextTrack.getCount() + " calls"));
+
+        StringBuilder loads = new StringBuilder("### 📥 Track Loads\n");
+        metrics.getLoadLatency().forEach((source, s) -> loads.append('`').append(source).append("` ")
+                .append(s.getCount()).append(" • p50 ").append(s.percentile(0.50))
+                .append(" ms • p95 ").append(s.percentile(0.95)).append(" ms\n"));
+        metrics.getLoadFailures().forEach((reason, n) -> loads.append("❌ `").append(reason).append("` ").append(n).append('\n'));
+        if (metrics.getLoadLatency().isEmpty()) loads.append("_No loads yet._\n");
+        children.add(TextDisplay.of(loads.toString()));
+
+        StringBuilder db = new StringBuilder("### 🗄 Database\n");
+        List<Map.Entry<String, MusicMetrics.Operation>> ops = metrics.getDbOperations();
+        for (Map.Entry<String, MusicMetrics.Operation> e : ops.subList(0, Math.min(10, ops.size()))) {
+            db.append('`').append(e.getKey()).append("` ").append(e.getValue().getCalls())
+                    .append(" • p95 ").append(e.getValue().getMicros().percentile(0.95)).append(" µs\n");
+        }
+        if (ops.isEmpty()) db.append("_No calls yet._\n");
+        else if (ops.size() > 10) db.append("-# ").append(ops.size() - 10).append(" less frequent operations in JMX\n");
+        children.add(TextDisplay.of(db.toString()));
+
+        if (!summaries.isEmpty()) children.add(TextDisplay.of("-# " + String.join("\n-# ", summaries)));
+        return Container.of(children).withAccentColor(ACCENT_STATS);
+    }
+
+    /** The user's private playlists followed by the guild's shared ones (at most 25, the select menu limit). */
+    public List<SavedPlaylist> listPlaylists(MusicSession session) {
+        List<SavedPlaylist> result = new ArrayList<>(playlistRepo.query()
+                .where("user_id", session.userId)
+                .where("guild_id", 0L)
+                .limit(25)
+                .list());
+        result.addAll(playlistRepo.query()
+                .where("guild_id", session.guildId)
+                .limit(25)
+                .list());
+        return result.size() > 25 ? result.subList(0, 25) : result;
+    }
+
     public Container buildSearchView(MusicSession session, List<AudioTrack> tracks, String searchId) {
         List<ContainerChildComponent> children = new ArrayList<>();
         children.add(TextDisplay.of("# 🔍 Search Results"));
@@ -225,9 +467,7 @@ public class MusicViewBuilder {
 
         children.add(ActionRow.of(menu.build()));
         children.add(Separator.create(true, Separator.Spacing.SMALL));
-        children.add(ActionRow.of(
-                Button.primary(btnPrefix + "back", "🔙 Cancel")
-        ));
+        children.add(cancelRow);
 
         return Container.of(children).withAccentColor(ACCENT_PLAYING);
     }
@@ -250,15 +490,96 @@ public class MusicViewBuilder {
 
         children.add(ActionRow.of(menu.build()));
         children.add(Separator.create(true, Separator.Spacing.SMALL));
-        children.add(ActionRow.of(
-                Button.primary(btnPrefix + "queueview", "🔙 Back to Queue")
-        ));
+        children.add(backToQueueRow);
 
         return Container.of(children).withAccentColor(ACCENT_QUEUE);
     }
 
+    // ==================== RENDER CACHE ====================
+
+    /**
+     * Returns the cached render for the session's view and page at the guild's current state
+     * version, rendering it on a miss. The version is read before rendering, so a change made
+     * while rendering can only make the entry stale, never let stale content pass as current.
+     */
+    private Container cached(MusicSession session, CachedView view, Supplier<Container> render) {
+        long version = stateVersion.applyAsLong(session.guildId);
+        if (version < 0) return render.get();
+
+        GuildViews views = cache.compute(session.guildId,
+                (_, existing) -> existing != null && existing.version >= version ? existing : new GuildViews(version));
+        if (views.version != version) return render.get(); // raced with a newer render
+
+        ViewKey key = new ViewKey(view, session.page);
+        Rendered hit = views.views.get(key);
+        if (hit != null) {
+            session.page = hit.page();
+            return hit.container();
+        }
+
+        Container container = render.get();
+        views.views.put(key, new Rendered(container, session.page));
+        return container;
+    }
+
+    /** Page start offsets of the guild's current state version; a throwaway map when it has none. */
+    private Map<Integer, Long> pageStarts(long guildId) {
+        GuildViews views = cache.get(guildId);
+        return views != null && views.version == stateVersion.applyAsLong(guildId)
+                ? views.pageStarts
+                : new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Play time queued ahead of a queue page. Paging forward carries it over from the page before;
+     * only a page opened directly after the queue changed sums the rows ahead of it.
+     */
+    private long pageStartOffset(long guildId, int page, boolean fair) {
+        if (page == 0) return 0;
+        return pageStarts(guildId).computeIfAbsent(page, _ -> {
+            long offset = 0;
+            for (QueueEntry entry : queuedInOrder(guildId, fair).limit(page * PAGE_SIZE).list()) {
+                offset += entry.getDurationMs() != null ? entry.getDurationMs() : 0;
+            }
+            return offset;
+        });
+    }
+
+    /** QUEUE rows in play order: by fair rank in fair mode, otherwise as they were queued. */
+    private QueryBuilder<QueueEntry> queuedInOrder(long guildId, boolean fair) {
+        return queueRepo.query()
+                .where("guild_id", guildId)
+                .where("status", "QUEUE")
+                .orderBy(fair ? "fair_rank" : "id");
+    }
+
     // ==================== UTILITY ====================
 
+    private String formatImportCount(PlaylistImporter.Progress progress) {
+        return progress.total() > 0
+                ? progress.queued() + "/" + progress.total() + " tracks"
+                : progress.queued() + " tracks so far...";
+    }
+
+    /** Queue length from the scheduler's running totals, so the main view never reads the queue. */
+    private String upNext(GuildMusicManager mgr) {
+        long tracks = mgr.scheduler.getQueuedTracks();
+        if (tracks <= 0) return "";
+        return "\n📋 Up next: " + tracks + (tracks == 1 ? " track" : " tracks")
+                + " • ⏱ " + formatTime(mgr.scheduler.getQueuedMillis());
+    }
+
+    /**
+     * Milliseconds until the first queued track starts, or {@code -1} when start times can't be
+     * told: nothing is playing, the current track is a stream or loops, or the queue is shuffled.
+     */
+    private static long untilQueueStarts(GuildMusicManager mgr) {
+        if (mgr == null || mgr.scheduler.shuffle || mgr.scheduler.loopMode == 2) return -1;
+        AudioTrack current = mgr.player.getPlayingTrack();
+        if (current == null || TrackScheduler.durationOf(current) == 0) return -1;
+        return Math.max(0, current.getDuration() - current.getPosition());
+    }
+
     private String formatTime(long millis) {
         long totalSeconds = millis / 1000;
         long hours = totalSeconds / 3600;
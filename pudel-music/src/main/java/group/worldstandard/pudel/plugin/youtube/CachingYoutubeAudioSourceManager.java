@@ -0,0 +1,142 @@
+package group.worldstandard.pudel.plugin.youtube;
+
+import com.sedmelluq.discord.lavaplayer.container.matroska.MatroskaAudioTrack;
+import com.sedmelluq.discord.lavaplayer.container.mpeg.MpegAudioTrack;
+import com.sedmelluq.discord.lavaplayer.tools.io.HttpInterface;
+import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
+import com.sedmelluq.discord.lavaplayer.track.AudioTrackInfo;
+import com.sedmelluq.discord.lavaplayer.track.InternalAudioTrack;
+import com.sedmelluq.discord.lavaplayer.track.playback.LocalAudioTrackExecutor;
+import dev.lavalink.youtube.YoutubeAudioSourceManager;
+import dev.lavalink.youtube.YoutubeSourceOptions;
+import dev.lavalink.youtube.clients.skeleton.Client;
+import dev.lavalink.youtube.track.YoutubeAudioTrack;
+import dev.lavalink.youtube.track.YoutubePersistentHttpStream;
+import group.worldstandard.pudel.plugin.cache.StreamUrlCache;
+import group.worldstandard.pudel.plugin.cache.StreamUrlCache.ResolvedStream;
+import org.apache.http.Header;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpResponseInterceptor;
+import org.apache.http.client.methods.HttpRequestWrapper;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpCoreContext;
+
+import java.io.DataInput;
+import java.net.URI;
+
+/**
+ * YouTube source whose tracks reuse previously resolved stream URLs.
+ *
+ * <p>While a track is processing, CDN responses on its playback thread are observed to learn
+ * the signed {@code videoplayback} URL and container type it resolved to. The next time the
+ * same identifier plays (loop, replay, history), the cached URL is streamed directly and the
+ * player request and cipher round trips are skipped. A 403 from the CDN drops the entry and the
+ * track falls back to normal resolution.
+ */
+public class CachingYoutubeAudioSourceManager extends YoutubeAudioSourceManager {
+
+    private static final ThreadLocal<String> PROCESSING = new ThreadLocal<>();
+
+    private final StreamUrlCache cache;
+
+    public CachingYoutubeAudioSourceManager(YoutubeSourceOptions options, StreamUrlCache cache, Client... clients) {
+        super(options, clients);
+        this.cache = cache;
+        configureBuilder(builder -> builder.addInterceptorLast((HttpResponseInterceptor) this::observeResponse));
+    }
+
+    public StreamUrlCache getStreamUrlCache() { return cache; }
+
+    @Override
+    public AudioTrack buildAudioTrack(AudioTrackInfo trackInfo) {
+        return new CachingTrack(trackInfo, this);
+    }
+
+    @Override
+    public AudioTrack decodeTrack(AudioTrackInfo trackInfo, DataInput input) {
+        return new CachingTrack(trackInfo, this);
+    }
+
+    // ==================== CDN OBSERVATION ====================
+
+    private void observeResponse(HttpResponse response, HttpContext context) {
+        String identifier = PROCESSING.get();
+        if (identifier == null) return;
+
+        URI uri = requestUri(context.getAttribute(HttpCoreContext.HTTP_REQUEST));
+        if (uri == null || uri.getPath() == null || !uri.getPath().endsWith("/videoplayback")) return;
+
+        int status = response.getStatusLine().getStatusCode();
+        if (status == 403) {
+            cache.invalidate(identifier);
+        } else if (status / 100 == 2) {
+            Header type = response.getFirstHeader("Content-Type");
+            cache.put(identifier, uri, type != null ? type.getValue() : null);
+        }
+    }
+
+    private static URI requestUri(Object request) {
+        if (request instanceof HttpRequestWrapper wrapper) request = wrapper.getOriginal();
+        if (request instanceof HttpUriRequest uriRequest) return uriRequest.getURI();
+        if (request instanceof HttpRequest plain) {
+            try {
+                return URI.create(plain.getRequestLine().getUri());
+            } catch (IllegalArgumentException _) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    // ==================== TRACK ====================
+
+    private static final class CachingTrack extends YoutubeAudioTrack {
+        private final CachingYoutubeAudioSourceManager source;
+
+        CachingTrack(AudioTrackInfo trackInfo, CachingYoutubeAudioSourceManager source) {
+            super(trackInfo, source);
+            this.source = source;
+        }
+
+        @Override
+        public void process(LocalAudioTrackExecutor localExecutor) throws Exception {
+            String identifier = trackInfo.identifier;
+            PROCESSING.set(identifier);
+            try {
+                ResolvedStream cached = source.cache.get(identifier);
+                if (cached != null) {
+                    try {
+                        processCached(cached, localExecutor);
+                        return;
+                    } catch (Exception e) {
+                        // Stale or revoked URL: forget it and resolve from scratch, unless audio already went out
+                        source.cache.invalidate(identifier);
+                        if (localExecutor.getPosition() > 0) throw e;
+                    }
+                }
+                super.process(localExecutor);
+            } finally {
+                PROCESSING.remove();
+            }
+        }
+
+        private void processCached(ResolvedStream cached, LocalAudioTrackExecutor localExecutor) throws Exception {
+            try (HttpInterface httpInterface = source.getInterface()) {
+                try (YoutubePersistentHttpStream stream =
+                             new YoutubePersistentHttpStream(httpInterface, cached.uri(), cached.contentLength())) {
+                    InternalAudioTrack delegate = cached.isWebm()
+                            ? new MatroskaAudioTrack(trackInfo, stream)
+                            : new MpegAudioTrack(trackInfo, stream);
+                    processDelegate(delegate, localExecutor);
+                }
+            }
+        }
+
+        @Override
+        protected AudioTrack makeShallowClone() {
+            return new CachingTrack(trackInfo, source);
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package group.worldstandard.pudel.plugin.youtube;
+
+import com.sedmelluq.discord.lavaplayer.tools.JsonBrowser;
+import com.sedmelluq.discord.lavaplayer.tools.io.HttpClientTools;
+import com.sedmelluq.discord.lavaplayer.tools.io.HttpInterface;
+import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
+import com.sedmelluq.discord.lavaplayer.track.AudioTrackInfo;
+import dev.lavalink.youtube.YoutubeAudioSourceManager;
+import dev.lavalink.youtube.clients.ClientConfig;
+import dev.lavalink.youtube.clients.Web;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Walks a YouTube playlist one page at a time through the web client's browse continuations.
+ *
+ * <p>LavaPlayer's YouTube source only returns a playlist once every page it was configured for
+ * has been fetched, and never exposes the continuation, so it cannot hand pages over as they
+ * arrive. This reads the same browse endpoint directly, a hundred entries per request, and builds
+ * the tracks on the regular source so they play, encode and cache exactly like tracks it loaded
+ * itself. Whether more pages follow is decided by the continuation alone: a page can hold fewer
+ * playable tracks than entries once deleted or private videos are left out.
+ *
+ * <p>Requests go through the source's {@link HttpInterface}, so its proxy, route planner and
+ * YouTube headers apply, with the web client's configuration: the client version it keeps
+ * current, and the poToken and visitorData set on it.
+ */
+public final class PlaylistPager {
+
+    private static final String BROWSE_URL = "https://www.youtube.com/youtubei/v1/browse?prettyPrint=false";
+    private static final Pattern LIST_ID = Pattern.compile("[?&]list=([A-Za-z0-9_-]+)");
+
+    private final YoutubeAudioSourceManager source;
+    private final BrowseClient client = new BrowseClient();
+
+    public PlaylistPager(YoutubeAudioSourceManager source) {
+        this.source = source;
+    }
+
+    /**
+     * The playlist ID in a URL, or {@code null} when there is none or it names a mix, whose
+     * tracks are generated per request and cannot be paged.
+     */
+    public static String playlistId(String url) {
+        Matcher m = LIST_ID.matcher(url);
+        if (!m.find()) return null;
+        String id = m.group(1);
+        return id.startsWith("RD") ? null : id;
+    }
+
+    /** The pages of a playlist. Fetching is lazy; each {@link #next()} after the first costs one request. */
+    public interface Pages {
+        /** The playlist's title. */
+        String name();
+
+        /** The next page's playable tracks, or {@code null} once there is no continuation left. */
+        List<AudioTrack> next() throws IOException;
+    }
+
+    /**
+     * Pages of {@code playlistId}. The first page is fetched here, so an unreadable playlist fails
+     * before anything is queued; later pages follow its continuation until there is none.
+     */
+    public Pages pages(String playlistId) throws IOException {
+        JsonBrowser first = post("browseId", "VL" + playlistId);
+        JsonBrowser items = first.get("contents").get("twoColumnBrowseResultsRenderer").get("tabs").index(0)
+                .get("tabRenderer").get("content").get("sectionListRenderer").get("contents").index(0)
+                .get("itemSectionRenderer").get("contents").index(0)
+                .get("playlistVideoListRenderer").get("contents");
+        if (items.isNull()) throw new IOException("Playlist " + playlistId + " has no video list");
+
+        String title = first.get("metadata").get("playlistMetadataRenderer").get("title").text();
+        return new BrowsePages(title != null ? title : "Unknown", tracksOf(items), continuationOf(items));
+    }
+
+    private final class BrowsePages implements Pages {
+        private final String name;
+        private List<AudioTrack> firstPage;
+        private String continuation;
+
+        BrowsePages(String name, List<AudioTrack> firstPage, String continuation) {
+            this.name = name;
+            this.firstPage = firstPage;
+            this.continuation = continuation;
+        }
+
+        @Override public String name() { return name; }
+
+        @Override
+        public List<AudioTrack> next() throws IOException {
+            if (firstPage != null) {
+                List<AudioTrack> tracks = firstPage;
+                firstPage = null;
+                if (!tracks.isEmpty()) return tracks;
+            }
+            // Pages whose videos are all deleted or private are skipped, not taken as the end
+            while (continuation != null) {
+                JsonBrowser page = post("continuation", continuation);
+                JsonBrowser items = page.get("onResponseReceivedActions").index(0)
+                        .get("appendContinuationItemsAction").get("continuationItems");
+                continuation = continuationOf(items);
+                List<AudioTrack> tracks = tracksOf(items);
+                if (!tracks.isEmpty()) return tracks;
+            }
+            return null;
+        }
+    }
+
+    // ==================== PARSING ====================
+
+    private List<AudioTrack> tracksOf(JsonBrowser items) {
+        List<AudioTrack> tracks = new ArrayList<>();
+        for (JsonBrowser item : items.values()) {
+            JsonBrowser video = item.get("playlistVideoRenderer");
+            // Deleted and private videos stay in the list but cannot be played
+            if (video.isNull() || !video.get("isPlayable").asBoolean(false)) continue;
+            String id = video.get("videoId").text();
+            if (id == null) continue;
+            AudioTrackInfo info = new AudioTrackInfo(
+                    textOf(video.get("title")),
+                    textOf(video.get("shortBylineText")),
+                    video.get("lengthSeconds").asLong(0) * 1000,
+                    id,
+                    false,
+                    "https://www.youtube.com/watch?v=" + id,
+                    "https://i.ytimg.com/vi/" + id + "/mqdefault.jpg",
+                    null);
+            tracks.add(source.buildAudioTrack(info));
+        }
+        return tracks;
+    }
+
+    private static String continuationOf(JsonBrowser items) {
+        for (JsonBrowser item : items.values()) {
+            JsonBrowser endpoint = item.get("continuationItemRenderer").get("continuationEndpoint");
+            if (endpoint.isNull()) continue;
+            String token = endpoint.get("continuationCommand").get("token").text();
+            if (token != null) return token;
+            for (JsonBrowser command : endpoint.get("commandExecutorCommand").get("commands").values()) {
+                token = command.get("continuationCommand").get("token").text();
+                if (token != null) return token;
+            }
+        }
+        return null;
+    }
+
+    private static String textOf(JsonBrowser text) {
+        String simple = text.get("simpleText").text();
+        if (simple != null) return simple;
+        StringBuilder runs = new StringBuilder();
+        for (JsonBrowser run : text.get("runs").values()) {
+            if (run.get("text").text() != null) runs.append(run.get("text").text());
+        }
+        return runs.isEmpty() ? "Unknown" : runs.toString();
+    }
+
+    // ==================== HTTP ====================
+
+    /** Posts a browse request: the web client's context plus {@code field} at the root of the body. */
+    private JsonBrowser post(String field, String value) throws IOException {
+        try (HttpInterface httpInterface = source.getInterface()) {
+            ClientConfig config = client.config(httpInterface).withRootField(field, value).setAttributes(httpInterface);
+            HttpPost request = new HttpPost(BROWSE_URL);
+            request.setEntity(new StringEntity(config.toJsonString(), ContentType.APPLICATION_JSON));
+            try (CloseableHttpResponse response = httpInterface.execute(request)) {
+                HttpClientTools.assertSuccessWithContent(response, "playlist browse");
+                return JsonBrowser.parse(response.getEntity().getContent());
+            }
+        }
+    }
+
+    /** The web client, only to reach the configuration it builds its own requests from. */
+    private static final class BrowseClient extends Web {
+        ClientConfig config(HttpInterface httpInterface) {
+            return getBaseClientConfig(httpInterface);
+        }
+    }
+}
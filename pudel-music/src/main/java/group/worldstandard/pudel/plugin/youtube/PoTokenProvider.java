@@ -0,0 +1,265 @@
+package group.worldstandard.pudel.plugin.youtube;
+
+import group.worldstandard.pudel.api.PluginContext;
+import org.graalvm.polyglot.Context;
+import org.graalvm.polyglot.Engine;
+import org.graalvm.polyglot.Value;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Supplies YouTube poToken / visitorData pairs.
+ *
+ * <p>Tokens are cached for a TTL and refreshed in the background ahead of expiry, so callers
+ * never pay for the home page fetch, player JS download or BotGuard evaluation on their own
+ * thread. Refreshes run one at a time on the provider's own thread, so a slow fetch holds up
+ * nothing else. The player JS is only re-downloaded when its URL changes, and BotGuard runs in
+ * one sandboxed polyglot context that already evaluated that script, replaced when it rotates.
+ *
+ * <p>A failed refresh is logged and retried after {@link #RETRY_DELAY}. The last token keeps
+ * being served while it is valid; once it expires the clients are told to run without one.
+ */
+public final class PoTokenProvider implements AutoCloseable {
+
+    private static final Pattern VISITOR_DATA = Pattern.compile("\"VISITOR_DATA\":\"([^\"]+)\"");
+    private static final Pattern PLAYER_URL = Pattern.compile("\"jsUrl\":\"([^\"]+)\"");
+    private static final Duration RETRY_DELAY = Duration.ofMinutes(1);
+
+    private static final String BOTGUARD_SCRIPT =
+            "if(typeof BotGuard!=='function')throw new Error('BotGuard not found in player script');" +
+                    "new BotGuard().invoke(visitor);";
+
+    public record Token(String poToken, String visitorData, Instant expiresAt) {
+        public boolean isExpired() { return Instant.now().isAfter(expiresAt); }
+    }
+
+    private record WarmContext(Context context, String playerUrl) {}
+
+    private final HttpClient http = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_2)
+            .connectTimeout(Duration.ofSeconds(10))
+            .build();
+
+    private final PluginContext context;
+    private final String origin;
+    private final String userAgent;
+    private final Duration ttl;
+    private final Duration refreshAhead;
+    private final ScheduledExecutorService refresher = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("pudel-music-potoken").daemon(true).factory());
+    private final Consumer<Token> onRefresh;
+    // Serialises refreshes and guards the warm context; the instance monitor only guards scheduling
+    private final Object refreshLock = new Object();
+
+    private final Engine engine = Engine.newBuilder("js")
+            .option("engine.WarnInterpreterOnly", "false")
+            .build();
+    private WarmContext warm;
+
+    private volatile Token token;
+    private volatile String playerUrl;
+    private volatile String playerJs;
+    private ScheduledFuture<?> refreshTask;
+    private volatile boolean closed = false;
+
+    /**
+     * @param origin       base URL to fetch the home page and player script from, normally
+     *                     {@code https://www.youtube.com}; point it at a local stub for testing
+     * @param onRefresh    invoked with every freshly generated token, e.g. to push it into the clients,
+     *                     and with {@code null} once the last token expired without a replacement
+     */
+    public PoTokenProvider(PluginContext context, String origin, String userAgent, Duration ttl, Duration refreshAhead,
+                           Consumer<Token> onRefresh) {
+        this.context = context;
+        this.origin = origin.endsWith("/") ? origin.substring(0, origin.length() - 1) : origin;
+        this.userAgent = userAgent;
+        this.ttl = ttl;
+        this.refreshAhead = refreshAhead.compareTo(ttl) < 0 ? refreshAhead : ttl.dividedBy(2);
+        this.onRefresh = onRefresh;
+    }
+
+    /**
+     * Whether GraalJS can be loaded. It is not bundled with the plugin, so deployments that enable
+     * poTokens add it to the bot's classpath; check before constructing a provider.
+     */
+    public static boolean isAvailable() {
+        try {
+            Class.forName("org.graalvm.polyglot.Engine", false, PoTokenProvider.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException | LinkageError _) {
+            return false;
+        }
+    }
+
+    /** Generates the first token asynchronously and keeps it fresh until {@link #close()}. */
+    public void start() {
+        schedule(Duration.ZERO);
+    }
+
+    /**
+     * Returns the cached token without blocking, or {@code null} when none is valid; in that case a
+     * refresh is started in the background unless one is already due.
+     */
+    public Token current() {
+        Token t = token;
+        if (t != null && !t.isExpired()) return t;
+        refreshSoon();
+        return null;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        synchronized (this) {
+            if (refreshTask != null) refreshTask.cancel(false);
+        }
+        refresher.shutdownNow();
+        synchronized (refreshLock) {
+            if (warm != null) warm.context().close();
+            warm = null;
+        }
+        engine.close();
+    }
+
+    // ==================== REFRESH ====================
+
+    private synchronized void schedule(Duration delay) {
+        if (closed) return;
+        refreshTask = refresher.schedule(this::backgroundRefresh, delay.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    private synchronized void refreshSoon() {
+        // A task whose delay ran out is running or about to; the scheduled one is moved forward
+        if (closed || refreshTask != null && refreshTask.getDelay(TimeUnit.MILLISECONDS) <= 0) return;
+        if (refreshTask != null) refreshTask.cancel(false);
+        schedule(Duration.ZERO);
+    }
+
+    private void backgroundRefresh() {
+        if (closed) return;
+        Token t = refresh();
+        Duration untilRefresh = t == null ? RETRY_DELAY
+                : Duration.between(Instant.now(), t.expiresAt()).minus(refreshAhead);
+        schedule(untilRefresh.isNegative() ? RETRY_DELAY : untilRefresh);
+    }
+
+    /**
+     * Generates and publishes a new token. On failure the previous token is returned while still
+     * valid; otherwise it is dropped, the clients are told, and {@code null} is returned.
+     */
+    Token refresh() {
+        synchronized (refreshLock) {
+            if (closed) return token;
+            Token fresh;
+            try {
+                fresh = generate();
+            } catch (Exception e) {
+                context.log("warn", "poToken refresh failed, retrying in %d s: %s"
+                        .formatted(RETRY_DELAY.toSeconds(), e.getMessage()));
+                Token previous = token;
+                if (previous != null && !previous.isExpired()) return previous;
+                if (previous != null) {
+                    token = null;
+                    if (onRefresh != null) onRefresh.accept(null);
+                }
+                return null;
+            }
+
+            token = fresh;
+            if (onRefresh != null) onRefresh.accept(fresh);
+            return fresh;
+        }
+    }
+
+    private Token generate() throws Exception {
+        String html = fetch(origin);
+        String visitorData = match(VISITOR_DATA, html);
+        if (visitorData == null) throw new IllegalStateException("Visitor data not found");
+
+        String url = match(PLAYER_URL, html);
+        if (url == null) throw new IllegalStateException("Player URL not found");
+        url = url.startsWith("http") ? url : origin + url;
+
+        if (!url.equals(playerUrl)) {
+            playerJs = fetch(url);
+            playerUrl = url;
+        }
+
+        return new Token(executeBotGuard(visitorData), visitorData, Instant.now().plus(ttl));
+    }
+
+    // ==================== BOTGUARD ====================
+
+    /** Runs BotGuard in the warm context. Called with {@link #refreshLock} held. */
+    private String executeBotGuard(String visitorData) {
+        WarmContext ctx = warmContext();
+        try {
+            Value bindings = ctx.context().getBindings("js");
+            bindings.putMember("visitor", visitorData);
+            Value result = ctx.context().eval("js", BOTGUARD_SCRIPT);
+            if (!result.isString() || result.asString().isEmpty()) {
+                throw new IllegalStateException("BotGuard returned no token");
+            }
+            return result.asString();
+        } catch (RuntimeException e) {
+            // The script may have left the context in any state; start from a fresh one next time
+            ctx.context().close();
+            warm = null;
+            throw e;
+        }
+    }
+
+    private WarmContext warmContext() {
+        String url = playerUrl;
+        if (warm != null && warm.playerUrl().equals(url)) return warm;
+        // Player script rotated; this context evaluated an outdated one
+        if (warm != null) warm.context().close();
+        warm = null;
+        Context ctx = Context.newBuilder("js")
+                .engine(engine)
+                .allowAllAccess(false)
+                .build();
+        try {
+            ctx.eval("js", playerJs);
+        } catch (RuntimeException e) {
+            ctx.close();
+            throw e;
+        }
+        warm = new WarmContext(ctx, url);
+        return warm;
+    }
+
+    // ==================== HTTP ====================
+
+    private String fetch(String url) throws Exception {
+        HttpRequest req = HttpRequest.newBuilder()
+                .uri(URI.create(url))
+                .header("User-Agent", userAgent)
+                .timeout(Duration.ofSeconds(15))
+                .GET()
+                .build();
+
+        HttpResponse<String> res = http.send(req, HttpResponse.BodyHandlers.ofString());
+        if (res.statusCode() / 100 != 2) {
+            throw new IllegalStateException("HTTP " + res.statusCode() + " from " + url);
+        }
+        return res.body();
+    }
+
+    private static String match(Pattern pattern, String html) {
+        Matcher m = pattern.matcher(html);
+        return m.find() ? m.group(1) : null;
+    }
+}
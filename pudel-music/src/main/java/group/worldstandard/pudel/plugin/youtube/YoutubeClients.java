@@ -0,0 +1,30 @@
+package group.worldstandard.pudel.plugin.youtube;
+
+import dev.lavalink.youtube.clients.*;
+import dev.lavalink.youtube.clients.skeleton.Client;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The YouTube clients every player manager tries, in order. Each manager needs its own
+ * instances, so a fresh list is returned on every call.
+ */
+public final class YoutubeClients {
+
+    private YoutubeClients() {}
+
+    public static List<Client> create() {
+        return new ArrayList<>(List.of(
+                new MusicWithThumbnail(),
+                new WebWithThumbnail(),
+                new MWebWithThumbnail(),
+                new WebEmbeddedWithThumbnail(),
+                new AndroidMusicWithThumbnail(),
+                new AndroidVrWithThumbnail(),
+                new IosWithThumbnail(),
+                new Tv(),
+                new TvHtml5SimplyWithThumbnail()
+        ));
+    }
+}
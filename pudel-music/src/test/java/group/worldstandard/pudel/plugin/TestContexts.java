@@ -0,0 +1,29 @@
+package group.worldstandard.pudel.plugin;
+
+import group.worldstandard.pudel.api.PluginContext;
+
+import java.lang.reflect.Proxy;
+import java.util.List;
+
+/**
+ * Stand-in {@link PluginContext}s for tests.
+ */
+public final class TestContexts {
+
+    private TestContexts() {}
+
+    /** A context that appends each log call as {@code "level: message"} to {@code log}; any other call fails loudly. */
+    public static PluginContext recording(List<String> log) {
+        return (PluginContext) Proxy.newProxyInstance(PluginContext.class.getClassLoader(),
+                new Class<?>[]{PluginContext.class}, (proxy, method, args) -> switch (method.getName()) {
+                    case "log" -> {
+                        log.add(args[0] + ": " + (args.length > 1 ? args[1] : ""));
+                        yield null;
+                    }
+                    case "toString" -> "TestContext";
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == args[0];
+                    default -> throw new UnsupportedOperationException("PluginContext." + method.getName());
+                });
+    }
+}
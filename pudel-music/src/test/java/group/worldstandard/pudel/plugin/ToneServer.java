@@ -0,0 +1,95 @@
+package group.worldstandard.pudel.plugin;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Local HTTP server handing out a generated WAV tone under {@code /track/<anything>.wav}, so
+ * LavaPlayer's HTTP source can load and decode real audio without leaving the machine.
+ *
+ * <p>Every path serves the same bytes. Range requests are honoured, as LavaPlayer resumes and
+ * seeks with them.
+ *
+ * <p>Published in the module's test jar; pudel-bench's load simulator serves its tracks from it too.
+ */
+public final class ToneServer implements AutoCloseable {
+
+    private static final int SAMPLE_RATE = 48_000;
+    private static final int CHANNELS = 2;
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final byte[] wav;
+
+    public ToneServer(int seconds) throws IOException {
+        this.wav = tone(seconds, 440);
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 512);
+        server.createContext("/track/", this::serve);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    public String url(long n) {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/track/" + n + ".wav";
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void serve(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            int from = 0;
+            String range = exchange.getRequestHeaders().getFirst("Range");
+            if (range != null && range.startsWith("bytes=")) {
+                String start = range.substring(6, range.indexOf('-'));
+                from = start.isEmpty() ? 0 : (int) Math.min(Long.parseLong(start), wav.length);
+            }
+
+            exchange.getResponseHeaders().set("Content-Type", "audio/wav");
+            exchange.getResponseHeaders().set("Accept-Ranges", "bytes");
+            if (range != null) {
+                exchange.getResponseHeaders().set("Content-Range",
+                        "bytes " + from + "-" + (wav.length - 1) + "/" + wav.length);
+            }
+            boolean head = "HEAD".equals(exchange.getRequestMethod());
+            int length = wav.length - from;
+            exchange.sendResponseHeaders(range != null ? 206 : 200, head || length == 0 ? -1 : length);
+            if (!head && length > 0) {
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(wav, from, length);
+                }
+            }
+        } catch (IOException _) {
+            // Player stopped reading, e.g. the track was skipped
+        }
+    }
+
+    /** 16-bit stereo PCM sine wave with a canonical 44-byte WAV header. */
+    private static byte[] tone(int seconds, double frequency) {
+        int frames = SAMPLE_RATE * Math.max(1, seconds);
+        int dataSize = frames * CHANNELS * 2;
+        ByteBuffer buf = ByteBuffer.allocate(44 + dataSize).order(ByteOrder.LITTLE_ENDIAN);
+        buf.put("RIFF".getBytes()).putInt(36 + dataSize).put("WAVE".getBytes());
+        buf.put("fmt ".getBytes()).putInt(16).putShort((short) 1).putShort((short) CHANNELS)
+                .putInt(SAMPLE_RATE).putInt(SAMPLE_RATE * CHANNELS * 2)
+                .putShort((short) (CHANNELS * 2)).putShort((short) 16);
+        buf.put("data".getBytes()).putInt(dataSize);
+        for (int i = 0; i < frames; i++) {
+            short sample = (short) (Math.sin(2 * Math.PI * frequency * i / SAMPLE_RATE) * 8_000);
+            for (int c = 0; c < CHANNELS; c++) buf.putShort(sample);
+        }
+        return buf.array();
+    }
+}
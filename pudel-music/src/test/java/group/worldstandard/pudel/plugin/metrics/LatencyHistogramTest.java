@@ -0,0 +1,41 @@
+package group.worldstandard.pudel.plugin.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LatencyHistogramTest {
+
+    @Test
+    void reportsPercentilesAsBucketBounds() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(-1, histogram.percentile(0.5));
+
+        for (int i = 0; i < 90; i++) histogram.record(40);
+        for (int i = 0; i < 10; i++) histogram.record(300);
+
+        assertEquals(100, histogram.getCount());
+        assertEquals(50, histogram.percentile(0.50));
+        assertEquals(300, histogram.percentile(0.95)); // capped at the largest value seen
+        assertEquals(90 * 40 + 10 * 300, histogram.getSum());
+    }
+
+    @Test
+    void countsEverySampleCumulatively() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(0);
+        histogram.record(2);
+        histogram.record(3);
+        histogram.record(100_000_000);
+
+        Map<Long, Long> buckets = histogram.cumulativeBuckets();
+        assertEquals(1L, buckets.get(1L));
+        assertEquals(2L, buckets.get(2L));
+        assertEquals(3L, buckets.get(5L));
+        assertEquals(3, buckets.size()); // the overflow sample is only in the count
+        assertEquals(4, histogram.getCount());
+        assertEquals(100_000_000, histogram.percentile(1.0));
+    }
+}
@@ -0,0 +1,185 @@
+package group.worldstandard.pudel.plugin.node;
+
+import com.sedmelluq.discord.lavaplayer.player.AudioLoadResultHandler;
+import com.sedmelluq.discord.lavaplayer.player.DefaultAudioPlayerManager;
+import com.sedmelluq.discord.lavaplayer.player.event.AudioEvent;
+import com.sedmelluq.discord.lavaplayer.player.event.TrackEndEvent;
+import com.sedmelluq.discord.lavaplayer.player.event.TrackStartEvent;
+import com.sedmelluq.discord.lavaplayer.source.http.HttpAudioSourceManager;
+import com.sedmelluq.discord.lavaplayer.tools.FriendlyException;
+import com.sedmelluq.discord.lavaplayer.track.AudioPlaylist;
+import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
+import com.sedmelluq.discord.lavaplayer.track.AudioTrackEndReason;
+import com.sedmelluq.discord.lavaplayer.track.playback.AudioFrame;
+import group.worldstandard.pudel.plugin.TestContexts;
+import group.worldstandard.pudel.plugin.ToneServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** Plays tones from a local HTTP server through an in-process node, as the plugin would. */
+class AudioNodeTest {
+
+    private static final String SECRET = "test-secret";
+    private static final long GUILD = 42;
+
+    private final List<String> log = new CopyOnWriteArrayList<>();
+    private final LinkedBlockingQueue<AudioEvent> events = new LinkedBlockingQueue<>();
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor();
+    private ToneServer tones;
+    private DefaultAudioPlayerManager nodeManager;
+    private DefaultAudioPlayerManager pluginManager;
+    private AudioNode node;
+    private NodePool pool;
+
+    @BeforeEach
+    void start() throws Exception {
+        tones = new ToneServer(3);
+        nodeManager = managerWithHttp();
+        pluginManager = managerWithHttp();
+        node = AudioNode.local(nodeManager, "test-node", SECRET);
+    }
+
+    @AfterEach
+    void stop() {
+        if (pool != null) pool.close();
+        node.close();
+        nodeManager.shutdown();
+        pluginManager.shutdown();
+        timer.shutdownNow();
+        tones.close();
+    }
+
+    @Test
+    void playsFramesAtTheReadersPaceThenStops() throws Exception {
+        RemoteAudioPlayer player = connectedPlayer();
+        player.playTrack(load(1));
+        assertInstanceOf(TrackStartEvent.class, events.poll(1, TimeUnit.SECONDS));
+
+        long last = -1;
+        for (int i = 0; i < 50; i++) {
+            AudioFrame frame = nextFrame(player);
+            if (last >= 0) assertEquals(last + 20, frame.getTimecode());
+            last = frame.getTimecode();
+        }
+
+        // Longer than the plugin buffers: a node pushing on its own clock would have moved on
+        Thread.sleep(800);
+        assertEquals(last + 20, nextFrame(player).getTimecode());
+        assertEquals(last + 20, player.getPlayingTrack().getPosition());
+
+        player.stopTrack();
+        TrackEndEvent end = nextEnd(1);
+        assertEquals(AudioTrackEndReason.STOPPED, end.endReason);
+        assertNull(player.getPlayingTrack());
+    }
+
+    @Test
+    void reportsTheEndOnceEveryFrameWasTaken() throws Exception {
+        RemoteAudioPlayer player = connectedPlayer();
+        player.playTrack(load(2));
+        assertInstanceOf(TrackStartEvent.class, events.poll(1, TimeUnit.SECONDS));
+
+        int frames = 0;
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        AudioEvent event = null;
+        while (event == null && System.nanoTime() < deadline) {
+            if (player.provide() != null) {
+                frames++;
+            } else {
+                event = events.poll(5, TimeUnit.MILLISECONDS);
+            }
+        }
+        TrackEndEvent end = assertInstanceOf(TrackEndEvent.class, event);
+        assertEquals(AudioTrackEndReason.FINISHED, end.endReason);
+        assertTrue(frames >= 140, "3 s of audio is 150 frames, got " + frames);
+    }
+
+    @Test
+    void stopsTheTrackWhenTheNodeGoesAway() throws Exception {
+        RemoteAudioPlayer player = connectedPlayer();
+        player.playTrack(load(3));
+        assertInstanceOf(TrackStartEvent.class, events.poll(1, TimeUnit.SECONDS));
+        nextFrame(player);
+
+        node.close();
+        TrackEndEvent end = nextEnd(10);
+        // No other node to move to, so the scheduler keeps the queue for when one is back
+        assertEquals(AudioTrackEndReason.STOPPED, end.endReason);
+        assertEquals(0, pool.getConnected());
+        assertTrue(log.stream().anyMatch(line -> line.contains("Lost audio node test-node")), log.toString());
+    }
+
+    @Test
+    void refusesClientsWithTheWrongSecret() {
+        pool = new NodePool(TestContexts.recording(log), List.of(node.getAddress()), "wrong", timer);
+        pool.connectAll();
+        assertEquals(0, pool.getConnected());
+        assertTrue(log.stream().anyMatch(line -> line.contains("nodes-secret")), log.toString());
+    }
+
+    @Test
+    void refusesOpenBindsWithoutSecret() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new AudioNode(nodeManager, null, "open", new InetSocketAddress("0.0.0.0", 0), ""));
+    }
+
+    // ==================== HELPERS ====================
+
+    private static DefaultAudioPlayerManager managerWithHttp() {
+        DefaultAudioPlayerManager manager = new DefaultAudioPlayerManager();
+        manager.registerSourceManager(new HttpAudioSourceManager());
+        return manager;
+    }
+
+    private RemoteAudioPlayer connectedPlayer() {
+        pool = new NodePool(TestContexts.recording(log), List.of(node.getAddress()), SECRET, timer);
+        pool.connectAll();
+        assertEquals(1, pool.getConnected(), log.toString());
+        RemoteAudioPlayer player = pool.createPlayer(pluginManager, GUILD);
+        player.addListener(events::add);
+        return player;
+    }
+
+    private AudioTrack load(long n) throws Exception {
+        CompletableFuture<AudioTrack> loaded = new CompletableFuture<>();
+        pluginManager.loadItem(tones.url(n), new AudioLoadResultHandler() {
+            @Override public void trackLoaded(AudioTrack track) { loaded.complete(track); }
+            @Override public void playlistLoaded(AudioPlaylist playlist) { loaded.completeExceptionally(new AssertionError("playlist")); }
+            @Override public void noMatches() { loaded.completeExceptionally(new AssertionError("no matches")); }
+            @Override public void loadFailed(FriendlyException exception) { loaded.completeExceptionally(exception); }
+        });
+        return loaded.get(10, TimeUnit.SECONDS);
+    }
+
+    /** The next end event, skipping the exception a failed track reports first. */
+    private TrackEndEvent nextEnd(int seconds) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        for (AudioEvent event; (event = events.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) != null; ) {
+            if (event instanceof TrackEndEvent end) return end;
+        }
+        throw new AssertionError("No track end within " + seconds + " s");
+    }
+
+    /** Polls like JDA's send handler until a frame arrives. */
+    private static AudioFrame nextFrame(RemoteAudioPlayer player) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (System.nanoTime() < deadline) {
+            AudioFrame frame = player.provide();
+            if (frame != null) return frame;
+            Thread.sleep(2);
+        }
+        throw new AssertionError("No frame from the node within 5 s");
+    }
+}
@@ -0,0 +1,113 @@
+package group.worldstandard.pudel.plugin.youtube;
+
+import group.worldstandard.pudel.plugin.TestContexts;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PoTokenProviderTest {
+
+    private final List<String> log = new CopyOnWriteArrayList<>();
+    private final LinkedBlockingQueue<Object> published = new LinkedBlockingQueue<>();
+    private PoTokenStubServer stub;
+
+    @BeforeEach
+    void startStub() throws Exception {
+        stub = new PoTokenStubServer();
+    }
+
+    @AfterEach
+    void stopStub() {
+        stub.close();
+    }
+
+    private PoTokenProvider provider(Duration ttl) {
+        return new PoTokenProvider(TestContexts.recording(log), stub.origin(), "PoTokenProviderTest",
+                ttl, Duration.ZERO, token -> published.add(token != null ? token : "cleared"));
+    }
+
+    @Test
+    void generatesTokenFromBotGuardAndReusesPlayerScript() throws Exception {
+        try (PoTokenProvider provider = provider(Duration.ofHours(1))) {
+            provider.start();
+            Object first = published.poll(30, TimeUnit.SECONDS);
+            PoTokenProvider.Token token = assertInstanceOf(PoTokenProvider.Token.class, first);
+            assertEquals("stubVisitor1", token.visitorData());
+            assertEquals("po-stubVisitor1", token.poToken());
+            assertSame(token, provider.current());
+
+            PoTokenProvider.Token second = provider.refresh();
+            assertEquals("po-stubVisitor2", second.poToken());
+            assertEquals(1, stub.playerRequests(), "unchanged player script must not be downloaded again");
+
+            stub.rotatePlayer("stub0002");
+            provider.refresh();
+            assertEquals(2, stub.playerRequests());
+            assertTrue(log.isEmpty(), () -> "unexpected log: " + log);
+        }
+    }
+
+    @Test
+    void failedRefreshKeepsValidTokenAndNeverPublishesMadeUpOne() throws Exception {
+        try (PoTokenProvider provider = provider(Duration.ofHours(1))) {
+            PoTokenProvider.Token valid = provider.refresh();
+            assertNotNull(valid);
+            published.clear();
+
+            stub.setFailing(true);
+            assertSame(valid, provider.refresh());
+            assertSame(valid, provider.current());
+            assertTrue(published.isEmpty(), "a failed refresh must not publish anything");
+            assertTrue(log.stream().anyMatch(l -> l.startsWith("warn: poToken refresh failed")), () -> "log: " + log);
+        }
+    }
+
+    @Test
+    void expiredTokenIsClearedWhenRefreshFails() throws Exception {
+        try (PoTokenProvider provider = provider(Duration.ofMillis(200))) {
+            assertNotNull(provider.refresh());
+            published.clear();
+
+            stub.setFailing(true);
+            Thread.sleep(300);
+            // Expired: nothing is served, and the refresh it starts fails and clears the clients
+            assertNull(provider.current());
+            assertEquals("cleared", published.poll(30, TimeUnit.SECONDS));
+            assertNull(provider.refresh());
+            assertTrue(published.isEmpty(), "nothing left to clear");
+        }
+    }
+
+    @Test
+    void noTokenIsPublishedWhenTheFirstRefreshFails() throws Exception {
+        stub.setFailing(true);
+        try (PoTokenProvider provider = provider(Duration.ofHours(1))) {
+            assertNull(provider.current());
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+            while (log.isEmpty() && System.nanoTime() < deadline) Thread.sleep(10);
+            assertTrue(published.isEmpty());
+            assertEquals(1, log.size());
+        }
+    }
+
+    @Test
+    void currentDoesNotWaitForARunningRefresh() throws Exception {
+        try (PoTokenProvider provider = provider(Duration.ofHours(1))) {
+            stub.setDelayMillis(2000);
+            Thread refresh = Thread.startVirtualThread(provider::refresh);
+            Thread.sleep(200);
+            long start = System.nanoTime();
+            assertNull(provider.current());
+            assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(500), "current() blocked");
+            refresh.join();
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package group.worldstandard.pudel.plugin.youtube;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Minimal local stand-in for the YouTube endpoints used by {@link PoTokenProvider}.
+ *
+ * <p>Serves a home page carrying {@code VISITOR_DATA} and {@code jsUrl}, plus a tiny player
+ * script, and counts requests so refresh and caching behaviour can be observed without
+ * touching the network. {@link #setFailing(boolean)} makes every request answer 503, and
+ * {@link #setDelayMillis(long)} holds the home page back like a slow connection.
+ */
+public final class PoTokenStubServer implements AutoCloseable {
+
+    private final HttpServer server;
+    private final AtomicInteger homeRequests = new AtomicInteger();
+    private final AtomicInteger playerRequests = new AtomicInteger();
+    private volatile String playerVersion = "stub0001";
+    private volatile boolean failing = false;
+    private volatile long delayMillis = 0;
+
+    public PoTokenStubServer() throws IOException {
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", this::home);
+        server.createContext("/s/player/", this::player);
+        server.start();
+    }
+
+    public String origin() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    /** Simulates YouTube rotating its player script. */
+    public void rotatePlayer(String version) { this.playerVersion = version; }
+
+    /** Simulates YouTube being unreachable or refusing the requests. */
+    public void setFailing(boolean failing) { this.failing = failing; }
+
+    /** Simulates a slow home page fetch. */
+    public void setDelayMillis(long delayMillis) { this.delayMillis = delayMillis; }
+
+    public int homeRequests() { return homeRequests.get(); }
+    public int playerRequests() { return playerRequests.get(); }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+
+    private void home(HttpExchange exchange) throws IOException {
+        homeRequests.incrementAndGet();
+        if (delayMillis > 0) {
+            try {
+                Thread.sleep(delayMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (failing) {
+            fail(exchange);
+            return;
+        }
+        String body = "<html><script>ytcfg.set({\"VISITOR_DATA\":\"stubVisitor%d\",\"jsUrl\":\"/s/player/%s/base.js\"});</script></html>"
+                .formatted(homeRequests.get(), playerVersion);
+        respond(exchange, "text/html", body);
+    }
+
+    private void player(HttpExchange exchange) throws IOException {
+        playerRequests.incrementAndGet();
+        if (failing) {
+            fail(exchange);
+            return;
+        }
+        String body = "function BotGuard(){} BotGuard.prototype.invoke=function(v){return 'po-'+v;};";
+        respond(exchange, "text/javascript", body);
+    }
+
+    private static void fail(HttpExchange exchange) throws IOException {
+        exchange.sendResponseHeaders(503, -1);
+        exchange.close();
+    }
+
+    private static void respond(HttpExchange exchange, String type, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", type);
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}